@@ -0,0 +1,160 @@
+// AutoPlay.java
+/* Play, pause, step and speed controls beside the move bar, so a saved
+ * game can run through by itself. Playing moves the MoveTimeline, so the
+ * board follows exactly as it follows a drag, and dragging while it plays
+ * carries on from wherever the thumb was left.
+ *
+ * Timer ticks come late and late ticks add up, so they are not counted:
+ * the move due is worked out from the clock since play started (or the
+ * speed changed) and the timer is set for the next one. Faster than one
+ * move a frame (FRAME_MS) the moves due in between are folded into one
+ * jump and one repaint, so 500 moves/sec costs about 60 jumps a second of
+ * a few moves each. Every tick, the moves the next PREFETCH_FRAMES frames
+ * will show are handed to the prefetch hook, so whatever is worked out per
+ * position in the background is ready before they come up.
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import java.awt.*;
+import java.util.function.IntConsumer;
+
+class AutoPlay extends JPanel
+{
+    private static final int[] SPEEDS = {1, 2, 3, 5, 10, 20, 50, 100, 200, 500}; // moves per second on offer
+    private static final int DEFAULT_SPEED = 3; // index into SPEEDS
+    private static final int FRAME_MS = 16; // moves are shown at most this often
+    private static final int PREFETCH_FRAMES = 8; // frames ahead of the one on the board that are prefetched
+
+    private final MoveTimeline timeline;
+    private final IntConsumer prefetch; // told each move playing is about to show, a few frames early
+    private final Timer timer = new Timer(FRAME_MS, evt -> tick());
+    private final JToggleButton playBtn = new JToggleButton("Play");
+    private final JComboBox<String> speedBox = new JComboBox<>();
+    private int speed = SPEEDS[DEFAULT_SPEED]; // moves per second
+    private boolean playing;
+    private long startNanos; // when startMove was shown, moves after it are due at speed from then
+    private int startMove;
+    private int shown; // move last put on the timeline, anything else there was put by someone else
+    private int prefetched; // moves up to here have been handed to prefetch
+
+    AutoPlay(MoveTimeline timeline, IntConsumer prefetch)
+    {
+        super(new FlowLayout(FlowLayout.LEFT, 4, 6));
+        this.timeline = timeline;
+        this.prefetch = prefetch;
+        timer.setRepeats(false);
+
+        JButton backBtn = new JButton("<");
+        JButton forwardBtn = new JButton(">");
+        backBtn.setToolTipText("Back one move");
+        forwardBtn.setToolTipText("Forward one move");
+        playBtn.setToolTipText("Play the moves from here (space)");
+        for (int s : SPEEDS)
+            speedBox.addItem(s + " moves/sec");
+        speedBox.setSelectedIndex(DEFAULT_SPEED);
+        speedBox.setToolTipText("Playing speed");
+        backBtn.addActionListener(evt -> step(-1));
+        forwardBtn.addActionListener(evt -> step(1));
+        playBtn.addActionListener(evt -> setPlaying(playBtn.isSelected()));
+        speedBox.addActionListener(evt ->
+        {
+            speed = SPEEDS[speedBox.getSelectedIndex()];
+            if (isPlaying())
+                restart(shown); // the new speed counts from here
+        });
+        add(backBtn);
+        add(playBtn);
+        add(forwardBtn);
+        add(speedBox);
+    }
+
+    boolean isPlaying()
+    {
+        return playing;
+    }
+
+    // start or stop playing; from the end of the line play starts over from the first move
+    void setPlaying(boolean play)
+    {
+        playBtn.setSelected(play);
+        if (play == playing)
+            return;
+        playing = play;
+        playBtn.setText(play ? "Pause" : "Play");
+        if (play)
+        {
+            restart(timeline.getValue() >= timeline.getMaximum() ? 0 : timeline.getValue());
+            tick();
+        }
+        else
+        {
+            timer.stop();
+        }
+        fireStateChanged();
+    }
+
+    // told when playing starts or stops
+    void addChangeListener(ChangeListener listener)
+    {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    private void fireStateChanged()
+    {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class))
+            listener.stateChanged(event);
+    }
+
+    // one move back or forward, stopping play
+    private void step(int moves)
+    {
+        setPlaying(false);
+        timeline.setValue(timeline.getValue() + moves);
+    }
+
+    // play on from move at the current speed, counting time from now
+    private void restart(int move)
+    {
+        startMove = shown = prefetched = move;
+        startNanos = System.nanoTime();
+        timeline.setValue(move);
+    }
+
+    // the move due at nanos
+    private int moveAt(long nanos)
+    {
+        return startMove + (int) ((nanos - startNanos) * speed / 1_000_000_000L);
+    }
+
+    // show the move due now, hand the next frames' moves to prefetch, and wake up for the one after
+    private void tick()
+    {
+        if (timeline.getValue() != shown) // dragged somewhere else meanwhile, go on from there
+            restart(timeline.getValue());
+        int last = timeline.getMaximum();
+        long now = System.nanoTime();
+        int due = Math.min(last, moveAt(now));
+        if (due != shown)
+        {
+            shown = due;
+            timeline.setValue(due);
+        }
+        if (shown >= last)
+        {
+            setPlaying(false);
+            return;
+        }
+        long frameNanos = Math.max(FRAME_MS * 1_000_000L, 1_000_000_000L / speed);
+        for (int f = 1; f <= PREFETCH_FRAMES && prefetched < last; f++)
+        {
+            int ahead = Math.min(last, moveAt(now + f * frameNanos));
+            if (ahead > prefetched)
+                prefetch.accept(prefetched = ahead);
+        }
+        long next = startNanos + (long) ((shown - startMove + 1) * 1_000_000_000.0 / speed);
+        timer.setInitialDelay((int) Math.max(FRAME_MS, (next - now + 999_999) / 1_000_000));
+        timer.restart();
+    }
+}
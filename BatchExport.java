@@ -0,0 +1,190 @@
+// BatchExport.java
+/* Draws saved boards as pictures without opening a window (BoardImages),
+ * one file per game in the output folder, named after the board.
+ * Files are spread over a ForkJoinPool like BatchScore, each task drawing
+ * its share through its own board panels, and every file is written as it
+ * is finished, animations a frame at a time.
+ *
+ *   java GoBoard --export [--move n | --sheet [from-to] [--per n] | --gif [from-to] [--delay ms]]
+ *                [--size px] [--threads n] [--out folder] <folder or file>...
+ *
+ * The final position as a PNG unless one of --move, --sheet or --gif is
+ * given; ranges default to the whole game and end at its last move. Output
+ * goes to exports. Exits with status 1 if any file was unreadable.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+class BatchExport
+{
+    private static final int FILES_PER_TASK = 2; // drawing a game takes much longer than scoring one
+
+    private enum Kind { POSITION, SHEET, ANIMATION }
+
+    // what to draw and how big
+    private static class Options
+    {
+        Kind kind = Kind.POSITION;
+        int move = -1, from = 0, to = -1; // -1 for the end of the game
+        int perDiagram = BoardImages.PER_DIAGRAM, delay = BoardImages.DEFAULT_DELAY, side = BoardImages.DEFAULT_SIDE;
+        Path out = Paths.get("exports");
+    }
+
+    // what one or more exported files came to
+    private static class Result
+    {
+        int games, unreadable;
+        long bytes;
+        final java.util.List<String> lines = new ArrayList<>();
+
+        Result add(Result other)
+        {
+            games += other.games;
+            unreadable += other.unreadable;
+            bytes += other.bytes;
+            lines.addAll(other.lines);
+            return this;
+        }
+    }
+
+    private static class ExportTask extends RecursiveTask<Result>
+    {
+        private final java.util.List<BoardPack.Source> files;
+        private final Options options;
+
+        ExportTask(java.util.List<BoardPack.Source> files, Options options)
+        {
+            this.files = files;
+            this.options = options;
+        }
+
+        protected Result compute()
+        {
+            if (files.size() > FILES_PER_TASK)
+            {
+                int mid = files.size() / 2;
+                ExportTask left = new ExportTask(files.subList(0, mid), options);
+                left.fork();
+                Result right = new ExportTask(files.subList(mid, files.size()), options).compute();
+                return right.add(left.join());
+            }
+            Result result = new Result();
+            for (BoardPack.Source file : files)
+                export(file, options, result);
+            return result;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Options options = new Options();
+        java.util.List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--move") && i + 1 < args.length)
+                options.move = Math.max(0, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--sheet") || args[i].equals("--gif"))
+            {
+                options.kind = args[i].equals("--sheet") ? Kind.SHEET : Kind.ANIMATION;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+-\\d*"))
+                {
+                    String[] range = args[++i].split("-", -1);
+                    options.from = Integer.parseInt(range[0]);
+                    options.to = range[1].isEmpty() ? -1 : Integer.parseInt(range[1]);
+                }
+            }
+            else if (args[i].equals("--per") && i + 1 < args.length)
+                options.perDiagram = Math.max(1, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--delay") && i + 1 < args.length)
+                options.delay = Math.max(10, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--size") && i + 1 < args.length)
+                options.side = Math.max(100, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--out") && i + 1 < args.length)
+                options.out = Paths.get(args[++i]);
+            else
+                roots.add(Paths.get(args[i]));
+        }
+        if (roots.isEmpty())
+            roots.add(Paths.get("saved_boards"));
+
+        java.util.List<BoardPack.Source> files = BoardPack.find(roots); // board files, and the games in pack files
+        try
+        {
+            Files.createDirectories(options.out);
+        }
+        catch (IOException ex)
+        {
+            System.err.println(options.out + ": " + ex.getMessage());
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Result result;
+        try
+        {
+            result = pool.invoke(new ExportTask(files, options));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Collections.sort(result.lines);
+        for (String line : result.lines)
+            System.out.println(line);
+        System.out.printf("Exported %d games (%d KB) to %s on %d threads in %.2f s, %d unreadable%n",
+            result.games, result.bytes / 1024, options.out, threads, seconds, result.unreadable);
+        if (result.unreadable > 0)
+            System.exit(1);
+    }
+
+    // draw one file, adding its line to result
+    private static void export(BoardPack.Source file, Options options, Result result)
+    {
+        String name = file.name;
+        try
+        {
+            java.util.List<BoardState> history = file.read();
+            GoEngine engine = new GoEngine(history);
+            int last = history.size() - 1;
+            int to = options.to < 0 ? last : Math.min(options.to, last);
+            int from = Math.min(Math.max(options.kind == Kind.SHEET ? 1 : 0, options.from), to); // a sheet starts at the first move
+            File target;
+            switch (options.kind)
+            {
+                case SHEET:
+                    target = options.out.resolve(name + ".sheet.png").toFile();
+                    if (last == 0)
+                        throw new IOException("no moves to put in a sheet");
+                    ImageIO.write(BoardImages.sheet(engine, from, to, options.perDiagram, options.side), "png", target);
+                    break;
+                case ANIMATION:
+                    target = options.out.resolve(name + ".gif").toFile();
+                    BoardImages.animate(engine, from, to, options.delay, options.side, target);
+                    break;
+                default:
+                    int move = options.move < 0 ? last : Math.min(options.move, last);
+                    target = options.out.resolve(options.move < 0 ? name + ".png" : name + "." + move + ".png").toFile();
+                    ImageIO.write(BoardImages.position(engine, move, options.side), "png", target);
+            }
+            result.games++;
+            result.bytes += target.length();
+            result.lines.add(file.label + ": " + target + " (" + last + " moves, " + (target.length() + 1023) / 1024 + " KB)");
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            result.unreadable++;
+            result.lines.add(file.label + ": unreadable (" + ex.getMessage() + ")");
+        }
+    }
+}
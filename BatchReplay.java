@@ -0,0 +1,182 @@
+// BatchReplay.java
+/* Replays saved boards without opening a window, to check that every game
+ * in a folder is still legal and that what the files recorded (the stones
+ * taken off, the capture counters, the side to play and the keyframe boards)
+ * matches what the rules produce. Board files and the games in pack files
+ * (BoardPack.find) are spread over a ForkJoinPool, each task replaying its
+ * share through its own GoEngine.
+ *
+ *   java GoBoard --replay [--threads n] [--quiet] <folder or file>...
+ *
+ * Old serialized files are read but left unconverted. Exits with status 1
+ * if any game was illegal, inconsistent or unreadable.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class BatchReplay
+{
+    private static final int FILES_PER_TASK = 8; // split until a task has this many files or fewer
+
+    // what one or more replayed files came to
+    private static class Result
+    {
+        int games, moves, illegal, unreadable;
+        final java.util.List<String> problems = new ArrayList<>();
+
+        Result add(Result other)
+        {
+            games += other.games;
+            moves += other.moves;
+            illegal += other.illegal;
+            unreadable += other.unreadable;
+            problems.addAll(other.problems);
+            return this;
+        }
+    }
+
+    private static class ReplayTask extends RecursiveTask<Result>
+    {
+        private final java.util.List<BoardPack.Source> files;
+
+        ReplayTask(java.util.List<BoardPack.Source> files)
+        {
+            this.files = files;
+        }
+
+        protected Result compute()
+        {
+            if (files.size() > FILES_PER_TASK)
+            {
+                int mid = files.size() / 2;
+                ReplayTask left = new ReplayTask(files.subList(0, mid));
+                left.fork();
+                Result right = new ReplayTask(files.subList(mid, files.size())).compute();
+                return right.add(left.join());
+            }
+            Result result = new Result();
+            for (BoardPack.Source file : files)
+                replay(file, result);
+            return result;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        java.util.List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            else if (args[i].equals("--quiet"))
+                quiet = true;
+            else
+                roots.add(Paths.get(args[i]));
+        }
+        if (roots.isEmpty())
+            roots.add(Paths.get("saved_boards"));
+
+        java.util.List<BoardPack.Source> files = BoardPack.find(roots); // board files, and the games in pack files
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Result result;
+        try
+        {
+            result = pool.invoke(new ReplayTask(files));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (!quiet)
+        {
+            Collections.sort(result.problems);
+            for (String problem : result.problems)
+                System.out.println(problem);
+        }
+        System.out.printf("Replayed %d games (%d moves) on %d threads in %.2f s, %.0f games/sec%n",
+            result.games, result.moves, threads, seconds, seconds > 0 ? result.games / seconds : 0.0);
+        System.out.printf("%d illegal or inconsistent, %d unreadable%n", result.illegal, result.unreadable);
+        if (result.illegal > 0 || result.unreadable > 0)
+            System.exit(1);
+    }
+
+    // replay one file, adding what was found to result
+    private static void replay(BoardPack.Source file, Result result)
+    {
+        java.util.List<BoardState> history;
+        try
+        {
+            history = file.read();
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            result.unreadable++;
+            result.problems.add(file.label + ": unreadable (" + ex.getMessage() + ")");
+            return;
+        }
+        result.games++;
+        result.moves += history.size() - 1;
+        String problem = check(history);
+        if (problem != null)
+        {
+            result.illegal++;
+            result.problems.add(file.label + ": " + problem);
+        }
+    }
+
+    // null if the history follows the rules and agrees with itself, otherwise what went wrong first
+    static String check(java.util.List<BoardState> history)
+    {
+        BoardState first = history.get(0);
+        if (first.board == null)
+            return "no starting board";
+        GoEngine engine = new GoEngine(first.board.size);
+        engine.reset(first.board, first.blackTurn);
+        for (int i = 1; i < history.size(); i++)
+        {
+            BoardState state = history.get(i);
+            int color = state.moveColor;
+            if (color == 0)
+            {
+                engine.play(-1, -1, engine.isBlackTurn() ? 1 : 2);
+            }
+            else
+            {
+                if (state.lastMoveX < 0 || state.lastMoveX >= engine.size() || state.lastMoveY < 0 || state.lastMoveY >= engine.size())
+                    return "move " + i + ": off the board";
+                int check = engine.checkMove(state.lastMoveX, state.lastMoveY, color);
+                if (check == GoEngine.OCCUPIED)
+                    return "move " + i + ": point already taken";
+                if (check == GoEngine.SUICIDE)
+                    return "move " + i + ": suicide";
+                // a repeated position is let through, imported records may follow rules without superko
+                engine.play(state.lastMoveX, state.lastMoveY, color);
+            }
+
+            BoardState replayed = engine.getState(i);
+            int[] recorded = state.captured.clone();
+            int[] actual = replayed.captured.clone();
+            Arrays.sort(recorded);
+            Arrays.sort(actual);
+            if (!Arrays.equals(recorded, actual))
+                return "move " + i + ": recorded " + recorded.length + " captured stones, rules take " + actual.length;
+            if (state.blackCaptures - first.blackCaptures != replayed.blackCaptures
+                || state.whiteCaptures - first.whiteCaptures != replayed.whiteCaptures)
+                return "move " + i + ": capture counters do not add up";
+            if (state.blackTurn != replayed.blackTurn)
+                return "move " + i + ": wrong side to play";
+            if (state.board != null && !state.board.equals(engine.copyBoard()))
+                return "move " + i + ": keyframe board differs";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,202 @@
+// Bitboard.java
+/* A board of any supported size kept as two bitsets, one per colour, packed
+ * into longs: bit x * size + y is set where that colour has a stone. A
+ * 19 x 19 board is 6 longs per colour instead of 19 rows of 19 ints.
+ *
+ * Groups and liberties are worked out a whole word at a time. Growing a set
+ * of points by one step is four shifts of the bitset (by 1 for the
+ * neighbours along a column, by size for the next and previous column),
+ * masked so nothing wraps from the end of one column into the start of the
+ * next or falls off the board. A group is its seed stone grown and masked
+ * by its colour until it stops changing.
+ */
+
+import java.util.Arrays;
+
+class Bitboard
+{
+    static final int MAX_SIZE = 19;
+
+    // per size: the points on the board, the points with y > 0 and the points with y < size - 1
+    private static final long[][] ON_BOARD = new long[MAX_SIZE + 1][];
+    private static final long[][] NOT_FIRST = new long[MAX_SIZE + 1][];
+    private static final long[][] NOT_LAST = new long[MAX_SIZE + 1][];
+
+    static
+    {
+        for (int size = 2; size <= MAX_SIZE; size++)
+        {
+            int words = wordsFor(size);
+            ON_BOARD[size] = new long[words];
+            NOT_FIRST[size] = new long[words];
+            NOT_LAST[size] = new long[words];
+            for (int p = 0; p < size * size; p++)
+            {
+                long bit = 1L << p;
+                ON_BOARD[size][p >>> 6] |= bit;
+                if (p % size != 0) NOT_FIRST[size][p >>> 6] |= bit;
+                if (p % size != size - 1) NOT_LAST[size][p >>> 6] |= bit;
+            }
+        }
+    }
+
+    final int size;
+    final long[] black, white;
+    private final long[] onBoard, notFirst, notLast;
+
+    // an empty board, size from 2 to MAX_SIZE
+    Bitboard(int size)
+    {
+        if (size < 2 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Unsupported board size " + size);
+        this.size = size;
+        black = new long[wordsFor(size)];
+        white = new long[black.length];
+        onBoard = ON_BOARD[size];
+        notFirst = NOT_FIRST[size];
+        notLast = NOT_LAST[size];
+    }
+
+    // longs needed for one colour
+    static int wordsFor(int size)
+    {
+        return (size * size + 63) >>> 6;
+    }
+
+    int words()
+    {
+        return black.length;
+    }
+
+    // 0: empty, 1: black, 2: white
+    int get(int x, int y)
+    {
+        return get(x * size + y);
+    }
+
+    int get(int p)
+    {
+        return (int) (black[p >>> 6] >>> p & 1) | (int) (white[p >>> 6] >>> p & 1) << 1;
+    }
+
+    void set(int x, int y, int color)
+    {
+        set(x * size + y, color);
+    }
+
+    void set(int p, int color)
+    {
+        long bit = 1L << p;
+        black[p >>> 6] &= ~bit;
+        white[p >>> 6] &= ~bit;
+        if (color == 1) black[p >>> 6] |= bit;
+        else if (color == 2) white[p >>> 6] |= bit;
+    }
+
+    // the bitset of one colour, shared, not a copy
+    long[] stones(int color)
+    {
+        return color == 1 ? black : white;
+    }
+
+    void clear()
+    {
+        Arrays.fill(black, 0);
+        Arrays.fill(white, 0);
+    }
+
+    void copyFrom(Bitboard other)
+    {
+        if (other.size != size)
+            throw new IllegalArgumentException("Board sizes differ: " + other.size + " and " + size);
+        System.arraycopy(other.black, 0, black, 0, black.length);
+        System.arraycopy(other.white, 0, white, 0, white.length);
+    }
+
+    Bitboard copy()
+    {
+        Bitboard copy = new Bitboard(size);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    // set plus every point next to it, written to out (which must not be set)
+    void grow(long[] set, long[] out)
+    {
+        int s = size, n = set.length;
+        for (int i = 0; i < n; i++)
+        {
+            long w = set[i];
+            long before = i > 0 ? set[i - 1] : 0;
+            long after = i + 1 < n ? set[i + 1] : 0;
+            long up = (w << 1) | (before >>> 63); // y + 1
+            long down = (w >>> 1) | (after << 63); // y - 1
+            long right = (w << s) | (before >>> (64 - s)); // x + 1
+            long left = (w >>> s) | (after << (64 - s)); // x - 1
+            out[i] = (w | (up & notFirst[i]) | (down & notLast[i]) | right | left) & onBoard[i];
+        }
+    }
+
+    // grow set, which must start inside within, until it holds everything in within connected to it
+    void flood(long[] set, long[] within, long[] scratch)
+    {
+        int n = set.length;
+        boolean changed = true;
+        while (changed)
+        {
+            grow(set, scratch);
+            changed = false;
+            for (int i = 0; i < n; i++)
+            {
+                long w = scratch[i] & within[i];
+                if (w != set[i])
+                {
+                    set[i] = w;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // how many empty points touch set, growing it one word at a time and skipping words it cannot reach
+    int liberties(long[] set)
+    {
+        int s = size, n = set.length, count = 0;
+        for (int i = 0; i < n; i++)
+        {
+            long w = set[i];
+            long before = i > 0 ? set[i - 1] : 0;
+            long after = i + 1 < n ? set[i + 1] : 0;
+            if ((w | before | after) == 0)
+                continue;
+            long up = (w << 1) | (before >>> 63);
+            long down = (w >>> 1) | (after << 63);
+            long right = (w << s) | (before >>> (64 - s));
+            long left = (w >>> s) | (after << (64 - s));
+            count += Long.bitCount(((up & notFirst[i]) | (down & notLast[i]) | right | left) & onBoard[i] & ~(black[i] | white[i]));
+        }
+        return count;
+    }
+
+    static Bitboard fromArray(int[][] board)
+    {
+        Bitboard result = new Bitboard(board.length);
+        for (int x = 0; x < board.length; x++)
+            for (int y = 0; y < board.length; y++)
+                result.set(x, y, board[x][y]);
+        return result;
+    }
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof Bitboard))
+            return false;
+        Bitboard other = (Bitboard) o;
+        return size == other.size && Arrays.equals(black, other.black) && Arrays.equals(white, other.white);
+    }
+
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(black) + Arrays.hashCode(white);
+    }
+}
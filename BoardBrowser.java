@@ -0,0 +1,131 @@
+// BoardBrowser.java
+/* Sortable, filterable table of the saved boards, filled from the
+ * BoardCatalog so opening it never touches the board files. The table
+ * follows the catalog while it is on screen.
+ */
+
+import javax.swing.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.util.*;
+
+class BoardBrowser extends JPanel
+{
+    private static final String[] COLUMNS = {"Name", "Moves", "Black Captures", "White Captures", "Saved"};
+
+    private final BoardCatalog catalog = BoardCatalog.get();
+    private final CatalogModel model = new CatalogModel();
+    private final JTable table = new JTable(model);
+    private final TableRowSorter<CatalogModel> sorter = new TableRowSorter<>(model);
+    private final JTextField filterField = new JTextField();
+    private final Runnable refresh = this::refresh;
+
+    BoardBrowser()
+    {
+        super(new BorderLayout(5, 5));
+        table.setRowSorter(sorter);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(220);
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(4, SortOrder.DESCENDING))); // newest first
+
+        filterField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener()
+        {
+            public void insertUpdate(javax.swing.event.DocumentEvent evt) { applyFilter(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent evt) { applyFilter(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent evt) { applyFilter(); }
+        });
+
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 5));
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        add(filterPanel, BorderLayout.NORTH);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 300));
+        add(scrollPane, BorderLayout.CENTER);
+        refresh();
+    }
+
+    // name of the selected board, or null
+    String getSelectedName()
+    {
+        int row = table.getSelectedRow();
+        return row < 0 ? null : model.rows.get(table.convertRowIndexToModel(row)).name;
+    }
+
+    // only follow the catalog while we are on screen
+    public void addNotify()
+    {
+        super.addNotify();
+        catalog.addListener(refresh);
+        refresh();
+    }
+
+    public void removeNotify()
+    {
+        catalog.removeListener(refresh);
+        super.removeNotify();
+    }
+
+    private void refresh()
+    {
+        String selected = getSelectedName();
+        model.rows = catalog.entries();
+        model.fireTableDataChanged();
+        if (selected != null)
+        {
+            for (int i = 0; i < model.rows.size(); i++)
+            {
+                if (model.rows.get(i).name.equals(selected))
+                {
+                    int row = table.convertRowIndexToView(i);
+                    if (row >= 0) table.setRowSelectionInterval(row, row);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void applyFilter()
+    {
+        String text = filterField.getText().trim();
+        sorter.setRowFilter(text.isEmpty() ? null : RowFilter.regexFilter("(?i)" + java.util.regex.Pattern.quote(text), 0));
+    }
+
+    private static class CatalogModel extends AbstractTableModel
+    {
+        java.util.List<BoardCatalog.Entry> rows = new ArrayList<>();
+
+        public int getRowCount()
+        {
+            return rows.size();
+        }
+
+        public int getColumnCount()
+        {
+            return COLUMNS.length;
+        }
+
+        public String getColumnName(int column)
+        {
+            return COLUMNS[column];
+        }
+
+        public Class<?> getColumnClass(int column)
+        {
+            return column == 0 ? String.class : column == 4 ? Date.class : Integer.class;
+        }
+
+        public Object getValueAt(int row, int column)
+        {
+            BoardCatalog.Entry entry = rows.get(row);
+            switch (column)
+            {
+                case 0: return entry.name;
+                case 1: return entry.moves < 0 ? null : entry.moves;
+                case 2: return entry.blackCaptures;
+                case 3: return entry.whiteCaptures;
+                default: return new Date(entry.modified);
+            }
+        }
+    }
+}
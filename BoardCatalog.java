@@ -0,0 +1,345 @@
+// BoardCatalog.java
+/* An index of everything in saved_boards, kept on disk next to the boards
+ * (saved_boards/catalog.idx) so the board lists can open without listing
+ * the folder and reading every file. Boards are in the packs (BoardPack),
+ * whose indexes already say all the catalog keeps, or in .goboard files of
+ * their own from before packs, which are read; when a name is in both the
+ * newer one counts, and read gets a board from wherever that is. At
+ * startup the saved index is loaded, then a background thread compares it
+ * with the packs and the folder once (re-reading only boards whose size or
+ * time changed) and keeps it current from a WatchService. Changes are
+ * written back to disk a couple of seconds later.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+
+class BoardCatalog
+{
+    private static final int VERSION = 2;
+    private static final String INDEX_NAME = "catalog.idx";
+    private static final long SAVE_DELAY_MS = 2000;
+
+    // what we know about one saved board
+    static class Entry
+    {
+        final String name;
+        final int moves; // -1 if the file could not be read
+        final int blackCaptures, whiteCaptures;
+        final long modified; // file modification time, or when it was saved into its pack
+        final long length; // file or record size, to notice rewrites within the same millisecond
+        final long offset; // where the game starts in its file, 0 when each board has its own file
+        final String pack; // pack file the game is in, null for a board file of its own
+
+        Entry(String name, int moves, int blackCaptures, int whiteCaptures, long modified, long length, long offset, String pack)
+        {
+            this.name = name;
+            this.moves = moves;
+            this.blackCaptures = blackCaptures;
+            this.whiteCaptures = whiteCaptures;
+            this.modified = modified;
+            this.length = length;
+            this.offset = offset;
+            this.pack = pack;
+        }
+    }
+
+    private static BoardCatalog instance;
+
+    private final File dir;
+    private final File indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final java.util.List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notifyPending = new AtomicBoolean();
+    private final CountDownLatch scanned = new CountDownLatch(1); // released after the first pass over the folder
+    private volatile boolean dirty = false;
+
+    // the catalog for saved_boards, loaded and watched from the first call on
+    static synchronized BoardCatalog get()
+    {
+        if (instance == null)
+        {
+            instance = new BoardCatalog(new File("saved_boards"));
+            instance.load();
+            Thread watcher = new Thread(instance::watch, "board-catalog");
+            watcher.setDaemon(true);
+            watcher.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::saveIfDirty));
+        }
+        return instance;
+    }
+
+    private BoardCatalog(File dir)
+    {
+        this.dir = dir;
+        this.indexFile = new File(dir, INDEX_NAME);
+    }
+
+    // all boards, by name
+    java.util.List<Entry> entries()
+    {
+        java.util.List<Entry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparing(e -> e.name, String.CASE_INSENSITIVE_ORDER));
+        return list;
+    }
+
+    Entry entry(String name)
+    {
+        return entries.get(name);
+    }
+
+    boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    // whether the catalog has been checked against the folder once, before that an empty one proves nothing
+    boolean isScanned()
+    {
+        return scanned.getCount() == 0;
+    }
+
+    // wait until the catalog has been checked against the folder once
+    void awaitScan() throws InterruptedException
+    {
+        scanned.await();
+    }
+
+    // run on the event thread whenever the catalog changes
+    void addListener(Runnable listener)
+    {
+        listeners.add(listener);
+    }
+
+    void removeListener(Runnable listener)
+    {
+        listeners.remove(listener);
+    }
+
+    // the history of a saved board, out of its pack or its own file
+    java.util.List<BoardState> read(String name) throws IOException
+    {
+        BoardPack.Game packed = BoardPack.get().game(name);
+        File file = new File(dir, name + ".goboard");
+        if (inPack(packed, file))
+            return packed.read();
+        return BoardFile.read(file.toPath());
+    }
+
+    // whether the board is the packed game rather than the file, the newer of the two
+    private static boolean inPack(BoardPack.Game packed, File file)
+    {
+        return packed != null && (!file.exists() || file.lastModified() <= packed.modified);
+    }
+
+    // look at one board again after it was written or deleted
+    void update(String name)
+    {
+        BoardPack.Game packed = BoardPack.get().game(name);
+        File file = new File(dir, name + ".goboard");
+        if (inPack(packed, file))
+        {
+            entries.put(name, entry(packed));
+            changed();
+            return;
+        }
+        if (!file.exists())
+        {
+            remove(name);
+            return;
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        Entry entry;
+        try
+        {
+            java.util.List<BoardState> history = BoardFile.read(file.toPath());
+            BoardState last = history.get(history.size() - 1);
+            // reading may have converted an old file, so take the time again
+            modified = file.lastModified();
+            length = file.length();
+            entry = new Entry(name, history.size() - 1, last.blackCaptures, last.whiteCaptures, modified, length, 0, null);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            entry = new Entry(name, -1, 0, 0, modified, length, 0, null); // damaged, still listed so it can be deleted
+        }
+        entries.put(name, entry);
+        changed();
+    }
+
+    // what the pack index says, nothing to read
+    private static Entry entry(BoardPack.Game packed)
+    {
+        return new Entry(packed.name, packed.moves, packed.blackCaptures, packed.whiteCaptures, packed.modified, packed.length, packed.offset, packed.segment.path.getFileName().toString());
+    }
+
+    void remove(String name)
+    {
+        if (entries.remove(name) != null)
+            changed();
+    }
+
+    private void changed()
+    {
+        dirty = true;
+        // several changes in a row only refresh the lists once
+        if (notifyPending.compareAndSet(false, true))
+        {
+            SwingUtilities.invokeLater(() ->
+            {
+                notifyPending.set(false);
+                for (Runnable listener : listeners)
+                    listener.run();
+            });
+        }
+    }
+
+    // bring the catalog in line with the packs and the folder, reading only what changed
+    private void reconcile()
+    {
+        Map<String, BoardPack.Game> packed = new HashMap<>();
+        for (BoardPack.Game game : BoardPack.get().games())
+            packed.put(game.name, game);
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".goboard"));
+        if (files == null)
+            files = new File[0];
+        Set<String> present = new HashSet<>(packed.keySet());
+        for (File f : files)
+        {
+            String name = f.getName().substring(0, f.getName().length() - ".goboard".length());
+            present.add(name);
+            BoardPack.Game game = packed.remove(name);
+            Entry entry = entries.get(name);
+            if (inPack(game, f))
+            {
+                if (!current(entry, game))
+                    update(name);
+            }
+            else if (entry == null || entry.pack != null || entry.modified != f.lastModified() || entry.length != f.length())
+            {
+                update(name);
+            }
+        }
+        for (BoardPack.Game game : packed.values())
+            if (!current(entries.get(game.name), game))
+                update(game.name);
+        for (String name : new ArrayList<>(entries.keySet()))
+        {
+            if (!present.contains(name))
+                remove(name);
+        }
+    }
+
+    private static boolean current(Entry entry, BoardPack.Game game)
+    {
+        return entry != null && entry.pack != null && entry.modified == game.modified && entry.length == game.length
+            && entry.offset == game.offset && entry.pack.equals(game.segment.path.getFileName().toString());
+    }
+
+    private void watch()
+    {
+        try
+        {
+            reconcile();
+        }
+        finally
+        {
+            scanned.countDown(); // whatever happened, nobody waits on the first pass for ever
+        }
+        saveIfDirty();
+        try (WatchService service = FileSystems.getDefault().newWatchService())
+        {
+            if (!dir.exists()) dir.mkdir();
+            dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            long lastChange = 0;
+            while (true)
+            {
+                WatchKey key = service.poll(SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+                if (key != null)
+                {
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        {
+                            reconcile();
+                            continue;
+                        }
+                        String file = event.context().toString();
+                        if (file.endsWith(".goboard"))
+                            update(file.substring(0, file.length() - ".goboard".length()));
+                    }
+                    key.reset();
+                    lastChange = System.currentTimeMillis();
+                }
+                // write the index once things have been quiet for a moment
+                if (dirty && System.currentTimeMillis() - lastChange >= SAVE_DELAY_MS)
+                    saveIfDirty();
+            }
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            // no watching on this file system, the catalog still follows our own saves and deletes
+        }
+    }
+
+    private void load()
+    {
+        if (!indexFile.exists())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile))))
+        {
+            if (in.readInt() != VERSION)
+                return; // older index, rebuilt by reconcile
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                Entry entry = new Entry(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong(), in.readLong(), in.readBoolean() ? in.readUTF() : null);
+                entries.put(entry.name, entry);
+            }
+        }
+        catch (IOException ex)
+        {
+            entries.clear(); // damaged index, rebuilt by reconcile
+        }
+    }
+
+    private synchronized void saveIfDirty()
+    {
+        if (!dirty || !dir.exists())
+            return;
+        dirty = false;
+        File tmp = new File(dir, INDEX_NAME + ".tmp");
+        try
+        {
+            java.util.List<Entry> list = new ArrayList<>(entries.values());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                out.writeInt(VERSION);
+                out.writeInt(list.size());
+                for (Entry e : list)
+                {
+                    out.writeUTF(e.name);
+                    out.writeInt(e.moves);
+                    out.writeInt(e.blackCaptures);
+                    out.writeInt(e.whiteCaptures);
+                    out.writeLong(e.modified);
+                    out.writeLong(e.length);
+                    out.writeLong(e.offset);
+                    out.writeBoolean(e.pack != null);
+                    if (e.pack != null)
+                        out.writeUTF(e.pack);
+                }
+            }
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException ex)
+        {
+            dirty = true; // try again next time
+        }
+    }
+}
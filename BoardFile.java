@@ -0,0 +1,565 @@
+// BoardFile.java
+/* Reads and writes the .goboard format. A file is a small header followed
+ * by one record per history state, each holding only what that move
+ * changed:
+ *
+ *   "GOBD"  magic
+ *   byte    format version
+ *   byte    board size
+ *   byte    flags (FLAG_SNAPSHOTS: keyframes carry a packed board)
+ *   byte    keyframe interval the snapshots were written at
+ *   int     number of states
+ *   short   black captures, short white captures (of the first state)
+ *
+ *   per state:
+ *   byte    info: bits 0-1 stone color, bit 2 black to play next,
+ *                 bit 3 has captures, bit 4 snapshot follows,
+ *                 bit 5 played from an earlier state than the one before
+ *   short   point of the stone (x * size + y), -1 if none
+ *   int     number of the state it was played from (if bit 5)
+ *   short   capture count, then one short per captured point (if bit 3)
+ *   bytes   board packed 2 bits per point (if bit 4)
+ *
+ * Records go depth first through the tree of variations, the line that
+ * was being shown first and then the other variations at each state, so
+ * most records follow the one before and the first records read back as
+ * the line. The first state always carries a snapshot. Capture counters
+ * and hashes are rebuilt from the deltas when reading. Format version 1
+ * files are the same without bit 5, a single line. Files written by the first
+ * version (a serialized List<BoardState>) are converted the first time
+ * they are read.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+class BoardFile
+{
+    static final int VERSION = 2;
+    static final int FLAG_SNAPSHOTS = 1;
+    private static final byte[] MAGIC = {'G', 'O', 'B', 'D'};
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int INFO_BLACK_TURN = 4, INFO_CAPTURES = 8, INFO_SNAPSHOT = 16, INFO_BRANCH = 32;
+
+    // write a history and every variation off it, with a packed snapshot at every keyframe
+    static void write(Path path, java.util.List<BoardState> history) throws IOException
+    {
+        write(path, history, FLAG_SNAPSHOTS);
+    }
+
+    static void write(Path path, java.util.List<BoardState> history, int flags) throws IOException
+    {
+        write(path, history, flags, false);
+    }
+
+    // write to a temporary file next to path, force it to disk and rename it over path, so
+    // a crash leaves either the old file or the new one and never half of one
+    static void writeAtomic(Path path, java.util.List<BoardState> history) throws IOException
+    {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            write(tmp, history, FLAG_SNAPSHOTS, true);
+            try
+            {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex)
+            {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+        // make the rename itself durable, where the platform lets a folder be opened
+        Path dir = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException ex)
+        {
+            // not supported here (Windows), the rename is still atomic
+        }
+    }
+
+    private static void write(Path path, java.util.List<BoardState> history, int flags, boolean force) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            write(channel, history, flags);
+            if (force)
+                channel.force(true);
+        }
+    }
+
+    // the bytes of a board file for history, for keeping somewhere other than a file of its own (BoardPack)
+    static byte[] encode(java.util.List<BoardState> history) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        write(Channels.newChannel(bytes), history, FLAG_SNAPSHOTS);
+        return bytes.toByteArray();
+    }
+
+    // a history back from what encode gave
+    static java.util.List<BoardState> decode(byte[] bytes) throws IOException
+    {
+        In in = new In(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        if (!in.fill(4) || in.buf.get(0) != MAGIC[0] || in.buf.get(1) != MAGIC[1] || in.buf.get(2) != MAGIC[2] || in.buf.get(3) != MAGIC[3])
+            throw new IOException("Not a board file");
+        return read(in);
+    }
+
+    private static void write(WritableByteChannel channel, java.util.List<BoardState> history, int flags) throws IOException
+    {
+        BoardState first = history.get(0);
+        int size = first.board.size;
+        Tree tree = Tree.of(history);
+        Out out = new Out(channel);
+        out.need(16);
+        out.buf.put(MAGIC);
+        out.buf.put((byte) VERSION);
+        out.buf.put((byte) size);
+        out.buf.put((byte) flags);
+        out.buf.put((byte) GoEngine.KEYFRAME_INTERVAL);
+        out.buf.putInt(tree.count);
+        out.buf.putShort((short) first.blackCaptures);
+        out.buf.putShort((short) first.whiteCaptures);
+
+        // keep a running board so snapshots can be written for any state, stepping back up at each branch
+        Bitboard board = new Bitboard(size);
+        int current = -1; // record the board is at
+        for (int i = 0; i < tree.count; i++)
+        {
+            BoardState state = tree.states[i];
+            int parent = tree.parents[i];
+            for (; current != parent; current = tree.parents[current])
+                undoDelta(board, tree.states[current]);
+            if (state.board != null)
+            {
+                board.copyFrom(state.board);
+            }
+            else
+            {
+                applyDelta(board, state);
+            }
+            current = i;
+
+            boolean snapshot = i == 0 || ((flags & FLAG_SNAPSHOTS) != 0 && tree.depths[i] % GoEngine.KEYFRAME_INTERVAL == 0);
+            boolean branch = i > 0 && parent != i - 1;
+            int info = state.moveColor;
+            if (state.blackTurn) info |= INFO_BLACK_TURN;
+            if (state.captured.length > 0) info |= INFO_CAPTURES;
+            if (snapshot) info |= INFO_SNAPSHOT;
+            if (branch) info |= INFO_BRANCH;
+
+            out.need(7);
+            out.buf.put((byte) info);
+            out.buf.putShort((short) (state.lastMoveX < 0 ? -1 : state.lastMoveX * size + state.lastMoveY));
+            if (branch)
+                out.buf.putInt(parent);
+            if (state.captured.length > 0)
+            {
+                out.need(2);
+                out.buf.putShort((short) state.captured.length);
+                for (int p : state.captured)
+                {
+                    out.need(2);
+                    out.buf.putShort((short) p);
+                }
+            }
+            if (snapshot)
+                writePacked(out, board);
+        }
+        out.flush();
+    }
+
+    // read a history (the line that was shown, with every variation linked from it), converting files from the first version in place
+    static java.util.List<BoardState> read(Path path) throws IOException
+    {
+        return read(path, true);
+    }
+
+    // read a history, leaving first version files as they are unless convertLegacy is set
+    static java.util.List<BoardState> read(Path path, boolean convertLegacy) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            In in = new In(channel);
+            if (in.fill(4) && in.buf.get(0) == MAGIC[0] && in.buf.get(1) == MAGIC[1] && in.buf.get(2) == MAGIC[2] && in.buf.get(3) == MAGIC[3])
+                return read(in);
+        }
+
+        // not our header, so it should be the old serialized list
+        java.util.List<BoardState> history = readLegacy(path);
+        if (!convertLegacy)
+            return history;
+        writeAtomic(path, history);
+        return history;
+    }
+
+    private static java.util.List<BoardState> read(In in) throws IOException
+    {
+        in.require(16);
+        in.buf.position(in.buf.position() + MAGIC.length);
+        int version = in.buf.get();
+        if (version != 1 && version != VERSION)
+            throw new IOException("Unsupported board file version " + version);
+        int size = in.buf.get();
+        if (!GoEngine.isSupportedSize(size))
+            throw new IOException("Unsupported board size " + size);
+        in.buf.get(); // flags, every record says whether it has a snapshot
+        in.buf.get(); // keyframe interval of the writer
+        int count = in.buf.getInt();
+        int blackCaptures = in.buf.getShort();
+        int whiteCaptures = in.buf.getShort();
+        if (count <= 0)
+            throw new IOException("Board file has no moves");
+
+        BoardState[] states = new BoardState[Math.min(count, 1 << 12)]; // grown as records turn up, in case count is damaged
+        int[] parents = new int[states.length], depths = new int[states.length];
+        Bitboard board = new Bitboard(size);
+        int current = -1; // record the board is at
+        for (int i = 0; i < count; i++)
+        {
+            in.require(3);
+            int info = in.buf.get();
+            int point = in.buf.getShort();
+            int color = info & 3;
+            int parent = i - 1;
+            if (color == 3 || point < -1 || point >= size * size || (color != 0 && point < 0))
+                throw new IOException("Board file is damaged");
+            if ((info & INFO_BRANCH) != 0)
+            {
+                in.require(4);
+                parent = in.buf.getInt();
+                if (parent < 0 || parent >= i)
+                    throw new IOException("Board file is damaged");
+            }
+            int[] captured = GoPosition.NO_POINTS;
+            if ((info & INFO_CAPTURES) != 0)
+            {
+                in.require(2);
+                int taken = in.buf.getShort();
+                if (taken < 0 || taken >= size * size)
+                    throw new IOException("Board file is damaged");
+                captured = new int[taken];
+                for (int k = 0; k < captured.length; k++)
+                {
+                    in.require(2);
+                    captured[k] = in.buf.getShort();
+                    if (captured[k] < 0 || captured[k] >= size * size)
+                        throw new IOException("Board file is damaged");
+                }
+            }
+
+            // back up to the state this one was played from, then replay the delta, keeping the counters and hash in step
+            for (; current != parent; current = parents[current])
+                undoDelta(board, states[current]);
+            long hash = 0;
+            if (i > 0)
+            {
+                BoardState from = states[parent];
+                hash = from.hash;
+                blackCaptures = from.blackCaptures;
+                whiteCaptures = from.whiteCaptures;
+                if (color != 0)
+                {
+                    board.set(point, color);
+                    hash ^= GoPosition.key(color, point);
+                }
+                for (int p : captured)
+                {
+                    board.set(p, 0);
+                    hash ^= GoPosition.key(3 - color, p);
+                }
+                if (color == 1) blackCaptures += captured.length;
+                else if (color == 2) whiteCaptures += captured.length;
+            }
+            if ((info & INFO_SNAPSHOT) != 0)
+            {
+                readPacked(in, board);
+                hash = GoPosition.hashOf(board);
+            }
+
+            if (i == states.length)
+            {
+                states = Arrays.copyOf(states, i * 2);
+                parents = Arrays.copyOf(parents, i * 2);
+                depths = Arrays.copyOf(depths, i * 2);
+            }
+            int depth = i == 0 ? 0 : depths[parent] + 1;
+            Bitboard keyframe = depth % GoEngine.KEYFRAME_INTERVAL == 0 ? board : null;
+            int lastX = point < 0 ? -1 : point / size;
+            int lastY = point < 0 ? -1 : point % size;
+            BoardState state = new BoardState(keyframe, (info & INFO_BLACK_TURN) != 0, blackCaptures, whiteCaptures, lastX, lastY, hash);
+            state.moveColor = color;
+            state.captured = captured;
+            if (i > 0)
+            {
+                BoardState from = states[parent];
+                from.addVariation(state);
+                if (from.next == null)
+                    from.next = state; // the first variation written is the one the line went down
+            }
+            states[i] = state;
+            parents[i] = parent;
+            depths[i] = depth;
+            current = i;
+        }
+
+        // the line is the first state and the first variation of each state after it
+        java.util.List<BoardState> history = new ArrayList<>();
+        for (BoardState state = states[0]; state != null; state = state.next)
+            history.add(state);
+        return history;
+    }
+
+    // first version files: a serialized list of GoBoard$BoardState with a full board in every state
+    private static java.util.List<BoardState> readLegacy(Path path) throws IOException
+    {
+        java.util.List<BoardState> history = new ArrayList<>();
+        try (ObjectInputStream in = new LegacyInput(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            for (Object o : (java.util.List<?>) in.readObject())
+            {
+                LegacyState old = (LegacyState) o;
+                if (old.board == null || !GoEngine.isSupportedSize(old.board.length))
+                    throw new IOException("Not a board file: " + path.getFileName());
+                int size = old.board.length;
+                for (int[] column : old.board)
+                {
+                    if (column == null || column.length != size)
+                        throw new IOException("Board file is damaged");
+                    for (int cell : column)
+                        if (cell < 0 || cell > 2)
+                            throw new IOException("Board file is damaged");
+                }
+                if (old.lastMoveX < -1 || old.lastMoveX >= size || old.lastMoveY < -1 || old.lastMoveY >= size || (old.lastMoveX < 0) != (old.lastMoveY < 0))
+                    throw new IOException("Board file is damaged");
+                history.add(new BoardState(Bitboard.fromArray(old.board), old.blackTurn, old.blackCaptures, old.whiteCaptures, old.lastMoveX, old.lastMoveY, 0));
+            }
+        }
+        catch (ClassNotFoundException | ClassCastException ex)
+        {
+            throw new IOException("Not a board file: " + path.getFileName(), ex);
+        }
+        if (history.isEmpty())
+            throw new IOException("Board file has no moves");
+
+        // turn the full boards into deltas, keeping one every KEYFRAME_INTERVAL states
+        Bitboard previous = null;
+        for (int i = 0; i < history.size(); i++)
+        {
+            BoardState state = history.get(i);
+            Bitboard current = state.board;
+            int size = current.size;
+            state.hash = GoPosition.hashOf(current);
+            state.moveColor = 0;
+            state.captured = GoPosition.NO_POINTS;
+            if (previous != null)
+            {
+                if (state.lastMoveX >= 0) state.moveColor = current.get(state.lastMoveX, state.lastMoveY);
+                int count = 0;
+                int[] gone = new int[size * size];
+                for (int p = 0; p < size * size; p++)
+                    if (previous.get(p) != 0 && current.get(p) == 0) gone[count++] = p;
+                if (count > 0) state.captured = Arrays.copyOf(gone, count);
+            }
+            if (i % GoEngine.KEYFRAME_INTERVAL != 0) state.board = null;
+            previous = current;
+        }
+        return history;
+    }
+
+    // the state class of the first version, which lived inside GoBoard
+    private static class LegacyState implements Serializable
+    {
+        private static final long serialVersionUID = 6300717045326085637L;
+
+        int[][] board;
+        boolean blackTurn;
+        int blackCaptures, whiteCaptures;
+        int lastMoveX, lastMoveY;
+    }
+
+    // reads GoBoard$BoardState objects as LegacyState, they have the same fields
+    private static class LegacyInput extends ObjectInputStream
+    {
+        LegacyInput(InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException
+        {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals("GoBoard$BoardState"))
+                return ObjectStreamClass.lookup(LegacyState.class);
+            return desc;
+        }
+    }
+
+    private static void applyDelta(Bitboard board, BoardState state)
+    {
+        if (state.moveColor != 0) board.set(state.lastMoveX, state.lastMoveY, state.moveColor);
+        for (int p : state.captured) board.set(p, 0);
+    }
+
+    // board as it was before state's move
+    private static void undoDelta(Bitboard board, BoardState state)
+    {
+        for (int p : state.captured) board.set(p, 3 - state.moveColor);
+        if (state.moveColor != 0) board.set(state.lastMoveX, state.lastMoveY, 0);
+    }
+
+    // the states to write, depth first from the first state of the line: the line first at every
+    // state on it, and elsewhere the variation last followed, so records mostly follow each other.
+    // The line's states are records 0, 1, 2 ..., the indexes walk the tree in the same order
+    static class Tree
+    {
+        BoardState[] states = new BoardState[64];
+        int[] parents = new int[64], depths = new int[64]; // record each state was played from (-1 for the first), moves from the first
+        int count;
+
+        static Tree of(java.util.List<BoardState> line)
+        {
+            Tree tree = new Tree();
+            // each entry: the state, its place in the line (-1 off it), and the record of its parent
+            ArrayDeque<Object[]> stack = new ArrayDeque<>();
+            stack.push(new Object[] {line.get(0), 0, -1});
+            while (!stack.isEmpty())
+            {
+                Object[] entry = stack.pop();
+                BoardState state = (BoardState) entry[0];
+                int index = (Integer) entry[1], parent = (Integer) entry[2];
+                int record = tree.add(state, parent);
+                BoardState[] children = state.variations(line, index);
+                for (int k = children.length - 1; k >= 0; k--) // pushed backwards so the first comes off first
+                    stack.push(new Object[] {children[k], BoardState.lineIndex(line, index, children[k]), record});
+            }
+            return tree;
+        }
+
+        private int add(BoardState state, int parent)
+        {
+            if (count == states.length)
+            {
+                states = Arrays.copyOf(states, count * 2);
+                parents = Arrays.copyOf(parents, count * 2);
+                depths = Arrays.copyOf(depths, count * 2);
+            }
+            states[count] = state;
+            parents[count] = parent;
+            depths[count] = parent < 0 ? 0 : depths[parent] + 1;
+            return count++;
+        }
+    }
+
+    // 2 bits per point, 4 points per byte
+    private static void writePacked(Out out, Bitboard board) throws IOException
+    {
+        int size = board.size;
+        int bits = 0, filled = 0;
+        for (int p = 0; p < size * size; p++)
+        {
+            bits |= board.get(p) << (filled * 2);
+            if (++filled == 4)
+            {
+                out.need(1);
+                out.buf.put((byte) bits);
+                bits = 0;
+                filled = 0;
+            }
+        }
+        if (filled > 0)
+        {
+            out.need(1);
+            out.buf.put((byte) bits);
+        }
+    }
+
+    private static void readPacked(In in, Bitboard board) throws IOException
+    {
+        int size = board.size;
+        int bits = 0;
+        for (int p = 0; p < size * size; p++)
+        {
+            if (p % 4 == 0)
+            {
+                in.require(1);
+                bits = in.buf.get();
+            }
+            int stone = (bits >> ((p % 4) * 2)) & 3;
+            if (stone == 3)
+                throw new IOException("Board file is damaged");
+            board.set(p, stone);
+        }
+    }
+
+    // buffered writes into a channel
+    private static class Out
+    {
+        final WritableByteChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Out(WritableByteChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        // make room for n more bytes, writing out what is buffered if needed
+        void need(int n) throws IOException
+        {
+            if (buf.remaining() < n)
+                flush();
+        }
+
+        void flush() throws IOException
+        {
+            buf.flip();
+            while (buf.hasRemaining())
+                channel.write(buf);
+            buf.clear();
+        }
+    }
+
+    // buffered reads from a channel
+    private static class In
+    {
+        final ReadableByteChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        In(ReadableByteChannel channel)
+        {
+            this.channel = channel;
+            buf.flip(); // start empty
+        }
+
+        // try to have n bytes buffered, false at end of file
+        boolean fill(int n) throws IOException
+        {
+            if (buf.remaining() >= n)
+                return true;
+            buf.compact();
+            while (buf.position() < n)
+            {
+                if (channel.read(buf) < 0)
+                    break;
+            }
+            buf.flip();
+            return buf.remaining() >= n;
+        }
+
+        void require(int n) throws IOException
+        {
+            if (!fill(n))
+                throw new EOFException("Board file is truncated");
+        }
+    }
+}
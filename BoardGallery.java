@@ -0,0 +1,178 @@
+// BoardGallery.java
+/* The saved boards as a scrolling grid of thumbnails of their final
+ * positions, newest first, with a filter on the name. The grid is a JList
+ * with fixed cell sizes, so it lays out thousands of boards from the
+ * BoardCatalog at once without reading a file; thumbnails come from the
+ * ThumbnailCache as the cells are painted, which is only when they are on
+ * screen, and fill in as they arrive. Clicking a board opens it.
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+class BoardGallery extends JPanel
+{
+    private static final int CELL_WIDTH = ThumbnailCache.SIZE + 20, CELL_HEIGHT = ThumbnailCache.SIZE + 44;
+
+    private final BoardCatalog catalog = BoardCatalog.get();
+    private final ThumbnailCache thumbnails = ThumbnailCache.get();
+    private final DefaultListModel<BoardCatalog.Entry> model = new DefaultListModel<>();
+    private final JList<BoardCatalog.Entry> list = new JList<>(model);
+    private final JTextField filterField = new JTextField();
+    private final Runnable refresh = this::refresh;
+
+    // open is given the name of the board that was clicked
+    BoardGallery(Consumer<String> open)
+    {
+        super(new BorderLayout(5, 5));
+        list.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        list.setVisibleRowCount(-1); // as many columns as fit
+        list.setFixedCellWidth(CELL_WIDTH);
+        list.setFixedCellHeight(CELL_HEIGHT);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new Cell());
+        list.addMouseListener(new MouseAdapter()
+        {
+            public void mouseClicked(MouseEvent evt)
+            {
+                int index = list.locationToIndex(evt.getPoint());
+                if (index >= 0 && list.getCellBounds(index, index).contains(evt.getPoint()))
+                    open.accept(model.get(index).name);
+            }
+        });
+        list.addKeyListener(new KeyAdapter()
+        {
+            public void keyPressed(KeyEvent evt)
+            {
+                if (evt.getKeyCode() == KeyEvent.VK_ENTER && list.getSelectedValue() != null)
+                    open.accept(list.getSelectedValue().name);
+            }
+        });
+
+        filterField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener()
+        {
+            public void insertUpdate(javax.swing.event.DocumentEvent evt) { refresh(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent evt) { refresh(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent evt) { refresh(); }
+        });
+
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 5));
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        add(filterPanel, BorderLayout.NORTH);
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(CELL_HEIGHT / 4);
+        scrollPane.setPreferredSize(new Dimension(CELL_WIDTH * 5 + 24, CELL_HEIGHT * 3 + 8));
+        scrollPane.getViewport().addChangeListener(evt -> forgetHidden());
+        add(scrollPane, BorderLayout.CENTER);
+        thumbnails.prune();
+        refresh();
+    }
+
+    // only follow the catalog while we are on screen
+    public void addNotify()
+    {
+        super.addNotify();
+        catalog.addListener(refresh);
+        refresh();
+    }
+
+    public void removeNotify()
+    {
+        catalog.removeListener(refresh);
+        thumbnails.forgetAllBut(Collections.emptySet());
+        super.removeNotify();
+    }
+
+    private void refresh()
+    {
+        String text = filterField.getText().trim().toLowerCase();
+        java.util.List<BoardCatalog.Entry> entries = catalog.entries();
+        entries.sort((a, b) -> Long.compare(b.modified, a.modified)); // newest first
+        java.util.List<BoardCatalog.Entry> shown = new ArrayList<>();
+        for (BoardCatalog.Entry entry : entries)
+            if (text.isEmpty() || entry.name.toLowerCase().contains(text))
+                shown.add(entry);
+        BoardCatalog.Entry selected = list.getSelectedValue();
+        model.clear();
+        model.addAll(shown);
+        if (selected != null)
+        {
+            for (int i = 0; i < shown.size(); i++)
+                if (shown.get(i).name.equals(selected.name))
+                    list.setSelectedIndex(i);
+        }
+    }
+
+    // the thumbnails still waiting for cells that scrolled out of sight are not wanted any more
+    private void forgetHidden()
+    {
+        int first = list.getFirstVisibleIndex(), last = list.getLastVisibleIndex();
+        Set<String> visible = new HashSet<>();
+        for (int i = Math.max(0, first); i >= 0 && i <= last; i++)
+            visible.add(model.get(i).name);
+        thumbnails.forgetAllBut(visible);
+    }
+
+    // one board: its thumbnail (or a blank while it is drawn), name and moves
+    private class Cell extends JComponent implements ListCellRenderer<BoardCatalog.Entry>
+    {
+        private BoardCatalog.Entry entry;
+        private boolean selected;
+        private final Font nameFont = new Font("Arial", Font.BOLD, 12), movesFont = new Font("Arial", Font.PLAIN, 11);
+
+        public Component getListCellRendererComponent(JList<? extends BoardCatalog.Entry> list, BoardCatalog.Entry value, int index, boolean isSelected, boolean cellHasFocus)
+        {
+            entry = value;
+            selected = isSelected;
+            return this;
+        }
+
+        protected void paintComponent(Graphics g)
+        {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            if (selected)
+            {
+                g2.setColor(list.getSelectionBackground());
+                g2.fillRect(0, 0, getWidth(), getHeight());
+            }
+            int left = (getWidth() - ThumbnailCache.SIZE) / 2, top = 8;
+            java.awt.image.BufferedImage image = entry.moves < 0 ? null : thumbnails.request(entry, list::repaint);
+            if (image != null)
+            {
+                g2.drawImage(image, left, top, null);
+            }
+            else
+            {
+                g2.setColor(new Color(225, 225, 225));
+                g2.fillRect(left, top, ThumbnailCache.SIZE, ThumbnailCache.SIZE);
+            }
+            g2.setColor(Color.GRAY);
+            g2.drawRect(left, top, ThumbnailCache.SIZE - 1, ThumbnailCache.SIZE - 1);
+
+            g2.setColor(selected ? list.getSelectionForeground() : Color.BLACK);
+            g2.setFont(nameFont);
+            drawCentred(g2, entry.name, top + ThumbnailCache.SIZE + 16);
+            g2.setFont(movesFont);
+            drawCentred(g2, entry.moves < 0 ? "unreadable" : entry.moves + (entry.moves == 1 ? " move" : " moves"), top + ThumbnailCache.SIZE + 30);
+        }
+
+        // text centred on the cell, cut short with ... when it does not fit
+        private void drawCentred(Graphics2D g2, String text, int baseline)
+        {
+            FontMetrics fm = g2.getFontMetrics();
+            int room = getWidth() - 8;
+            if (fm.stringWidth(text) > room)
+            {
+                while (text.length() > 1 && fm.stringWidth(text + "...") > room)
+                    text = text.substring(0, text.length() - 1);
+                text += "...";
+            }
+            g2.drawString(text, (getWidth() - fm.stringWidth(text)) / 2, baseline);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+// BoardImages.java
+/* Pictures of a game without a window, drawn by the same board panel the
+ * game window uses, so they look like the board on screen: one position as
+ * an image, a run of moves as a sheet of numbered diagrams, and a stretch
+ * of the game as an animated GIF.
+ *
+ * The animation is written a frame at a time as it is drawn, so a long
+ * game never has all its frames in memory. Frames share one palette made
+ * for a board (shades from the wood to black and to white, greys and a few
+ * other colors), and after the first only the box around what changed is
+ * written, a move, its captures and the mark taken off the move before,
+ * with the unchanged points inside it left transparent so they pack down
+ * to almost nothing.
+ *
+ * Each call draws through panels of its own, so separate engines can be
+ * drawn on separate threads (BatchExport, and the game window hands a copy
+ * of its engine to a background thread).
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+import javax.imageio.metadata.*;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.JPanel;
+
+class BoardImages
+{
+    static final int DEFAULT_SIDE = 800; // pixels across a board
+    static final int PER_DIAGRAM = 50; // moves numbered in each diagram of a sheet
+    static final int DEFAULT_DELAY = 500; // milliseconds a move is shown in an animation
+    private static final int SHEET_COLUMNS = 2;
+    private static final int CAPTION = 32; // room under each diagram for its moves
+    private static final int GAP = 16;
+    private static final int LAST_FRAME_DELAY = 3000; // the final position stays up a while before it loops
+    private static final int CLEAR = 255; // palette index of the transparent color, unchanged pixels of a frame
+
+    private static final Map<Integer, byte[]> lookups = new HashMap<>(); // by wood color, every board has the same one
+
+    // the position after move of engine's line (0 for the empty board); these all move engine about
+    static BufferedImage position(GoEngine engine, int move, int side)
+    {
+        engine.jumpToMove(move);
+        return paint(GoBoard.offscreenBoard(engine), side, null);
+    }
+
+    // moves from to to (inclusive) as diagrams of perDiagram moves each, two across
+    static BufferedImage sheet(GoEngine engine, int from, int to, int perDiagram, int side)
+    {
+        int count = (to - from + perDiagram) / perDiagram;
+        int columns = Math.min(SHEET_COLUMNS, count), rows = (count + columns - 1) / columns;
+        BufferedImage sheet = new BufferedImage(columns * side + (columns + 1) * GAP, rows * (side + CAPTION) + (rows + 1) * GAP, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = sheet.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setFont(new Font("Arial", Font.BOLD, 18));
+        g2.setColor(Color.BLACK);
+        BufferedImage diagram = null;
+        for (int d = 0; d < count; d++)
+        {
+            int first = from + d * perDiagram, last = Math.min(to, first + perDiagram - 1);
+            engine.jumpToMove(last);
+            diagram = paint(GoBoard.diagramBoard(engine, numbers(engine, first, last)), side, diagram);
+            int x = GAP + (d % columns) * (side + GAP), y = GAP + (d / columns) * (side + CAPTION + GAP);
+            g2.drawImage(diagram, x, y, null);
+            String caption = first == last ? "Move " + first : "Moves " + first + "-" + last;
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(caption, x + (side - fm.stringWidth(caption)) / 2, y + side + (CAPTION + fm.getAscent()) / 2 - 2);
+        }
+        g2.dispose();
+        return sheet;
+    }
+
+    // which move put each stone on the board at last, for the moves first to last; engine is at last
+    private static int[][] numbers(GoEngine engine, int first, int last)
+    {
+        int size = engine.size();
+        int[][] numbers = new int[size][size];
+        for (int move = first; move <= last; move++)
+        {
+            BoardState state = engine.getState(move);
+            if (state.lastMoveX >= 0)
+                numbers[state.lastMoveX][state.lastMoveY] = move;
+        }
+        // a stone that was taken off and the point left empty keeps no number
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                if (engine.stoneAt(x, y) == 0)
+                    numbers[x][y] = 0;
+        return numbers;
+    }
+
+    // moves from to to, delay ms each, as a looping GIF written to file as the frames are drawn
+    static void animate(GoEngine engine, int from, int to, int delay, int side, File file) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        file.delete(); // the stream writes over the start of an old file and leaves its tail
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file))
+        {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+            JPanel panel = GoBoard.offscreenBoard(engine);
+            BufferedImage frame = null;
+            IndexColorModel palette = null;
+            byte[] lookup = null, part = null;
+            int[] shown = null; // what the frames so far add up to, before quantizing
+            for (int move = from; move <= to; move++)
+            {
+                engine.jumpToMove(move);
+                frame = paint(panel, side, frame);
+                if (palette == null)
+                {
+                    palette = palette(new Color(frame.getRGB(0, 0)));
+                    lookup = lookup(palette);
+                    shown = new int[side * side];
+                    part = new byte[side * side];
+                }
+                int[] changed = index(frame, lookup, shown, part, move == from);
+                BufferedImage image = crop(part, side, changed, palette);
+                IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+                frameMetadata(metadata, changed, move == to ? LAST_FRAME_DELAY : delay, move == from);
+                writer.writeToSequence(new IIOImage(image, null, metadata), null);
+            }
+            writer.endWriteSequence();
+        }
+        finally
+        {
+            writer.dispose();
+        }
+    }
+
+    // draw panel at side by side pixels, into image if it is the right size
+    private static BufferedImage paint(JPanel panel, int side, BufferedImage image)
+    {
+        panel.setSize(side, side);
+        if (image == null || image.getWidth() != side)
+            image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        panel.paint(g2);
+        g2.dispose();
+        return image;
+    }
+
+    // 256 colors for a board of the given wood: 64 shades each towards black, towards white and of grey, and a 4x4x4 cube
+    // whose white (already among the greys) is given up for CLEAR
+    private static IndexColorModel palette(Color wood)
+    {
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        int n = 0;
+        for (int i = 0; i < 64; i++, n++)
+        {
+            double t = i / 63.0;
+            r[n] = (byte) Math.round(wood.getRed() * (1 - t));
+            g[n] = (byte) Math.round(wood.getGreen() * (1 - t));
+            b[n] = (byte) Math.round(wood.getBlue() * (1 - t));
+        }
+        for (int i = 0; i < 64; i++, n++)
+        {
+            double t = (i + 1) / 64.0;
+            r[n] = (byte) Math.round(wood.getRed() + (255 - wood.getRed()) * t);
+            g[n] = (byte) Math.round(wood.getGreen() + (255 - wood.getGreen()) * t);
+            b[n] = (byte) Math.round(wood.getBlue() + (255 - wood.getBlue()) * t);
+        }
+        for (int i = 0; i < 64; i++, n++)
+            r[n] = g[n] = b[n] = (byte) Math.round(i * 255 / 63.0);
+        for (int i = 0; i < 64; i++, n++)
+        {
+            r[n] = (byte) ((i >> 4) * 85);
+            g[n] = (byte) ((i >> 2 & 3) * 85);
+            b[n] = (byte) ((i & 3) * 85);
+        }
+        return new IndexColorModel(8, 256, r, g, b, CLEAR);
+    }
+
+    // the nearest palette entry for every 15 bit color, worked out once for each palette
+    private static byte[] lookup(IndexColorModel palette)
+    {
+        int wood = palette.getRGB(0);
+        synchronized (lookups)
+        {
+            byte[] lookup = lookups.get(wood);
+            if (lookup != null)
+                return lookup;
+        }
+        byte[] lookup = new byte[1 << 15];
+        int[] rgbs = new int[256];
+        palette.getRGBs(rgbs);
+        for (int c = 0; c < lookup.length; c++)
+        {
+            int red = (c >> 10 << 3) + 4, green = ((c >> 5 & 31) << 3) + 4, blue = ((c & 31) << 3) + 4;
+            int best = 0, bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < CLEAR; i++)
+            {
+                int dr = (rgbs[i] >> 16 & 255) - red, dg = (rgbs[i] >> 8 & 255) - green, db = (rgbs[i] & 255) - blue;
+                int distance = 3 * dr * dr + 4 * dg * dg + 2 * db * db;
+                if (distance < bestDistance)
+                {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+            lookup[c] = (byte) best;
+        }
+        synchronized (lookups)
+        {
+            lookups.put(wood, lookup);
+        }
+        return lookup;
+    }
+
+    // frame's palette indexes into part where it differs from shown (CLEAR elsewhere), and frame into shown,
+    // returns the box that changed {x, y, width, height} (all of it if whole)
+    private static int[] index(BufferedImage frame, byte[] lookup, int[] shown, byte[] part, boolean whole)
+    {
+        Arrays.fill(part, (byte) CLEAR);
+        int side = frame.getWidth();
+        int[] rgbs = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData(); // TYPE_INT_RGB, one int a pixel
+        int left = side, top = side, right = -1, bottom = -1;
+        for (int y = 0; y < side; y++)
+        {
+            for (int x = 0, at = y * side; x < side; x++, at++)
+            {
+                int rgb = rgbs[at];
+                if (rgb != shown[at] || whole)
+                {
+                    shown[at] = rgb;
+                    part[at] = lookup[(rgb >> 9 & 0x7c00) | (rgb >> 6 & 0x3e0) | (rgb >> 3 & 0x1f)];
+                    if (x < left) left = x;
+                    if (x > right) right = x;
+                    if (y < top) top = y;
+                    bottom = y;
+                }
+            }
+        }
+        if (right < 0)
+            return new int[] {0, 0, 1, 1}; // nothing changed (a pass), one clear pixel
+        return new int[] {left, top, right - left + 1, bottom - top + 1};
+    }
+
+    // the box out of a side by side frame of indexes
+    private static BufferedImage crop(byte[] part, int side, int[] box, IndexColorModel palette)
+    {
+        BufferedImage image = new BufferedImage(box[2], box[3], BufferedImage.TYPE_BYTE_INDEXED, palette);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < box[3]; y++)
+            System.arraycopy(part, (box[1] + y) * side + box[0], pixels, y * box[2], box[2]);
+        return image;
+    }
+
+    // where the frame goes, how long it stays, and for the first one that the animation loops
+    private static void frameMetadata(IIOMetadata metadata, int[] box, int delay, boolean first) throws IIOInvalidTreeException
+    {
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", String.valueOf(box[0]));
+        descriptor.setAttribute("imageTopPosition", String.valueOf(box[1]));
+        descriptor.setAttribute("imageWidth", String.valueOf(box[2]));
+        descriptor.setAttribute("imageHeight", String.valueOf(box[3]));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose"); // later frames are drawn over this one
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "TRUE");
+        control.setAttribute("delayTime", String.valueOf(Math.max(1, delay / 10))); // hundredths of a second
+        control.setAttribute("transparentColorIndex", String.valueOf(CLEAR));
+
+        if (first)
+        {
+            IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+            extension.setAttribute("applicationID", "NETSCAPE");
+            extension.setAttribute("authenticationCode", "2.0");
+            extension.setUserObject(new byte[] {1, 0, 0}); // loop forever
+            child(root, "ApplicationExtensions").appendChild(extension);
+        }
+        metadata.setFromTree(format, root);
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name)
+    {
+        for (int i = 0; i < parent.getLength(); i++)
+            if (parent.item(i).getNodeName().equals(name))
+                return (IIOMetadataNode) parent.item(i);
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        parent.appendChild(node);
+        return node;
+    }
+}
@@ -0,0 +1,786 @@
+// BoardPack.java
+/* Saved boards packed many to a file instead of a file per board, which
+ * with tens of thousands of games made saved_boards slow to list and to
+ * back up. Games are appended to segment files in saved_boards/packs
+ * (pack-0001.wpk and on), each game deflated on its own, and every segment
+ * ends with an index of where its games are, so one game is read by
+ * looking it up and inflating just its bytes out of the memory-mapped
+ * segment.
+ *
+ *   segment: int MAGIC, int VERSION, the records, the index, the footer
+ *   record:  int RECORD_MAGIC, byte flags (FLAG_DELETED), long time saved,
+ *            int moves, int black captures, int white captures,
+ *            int board file length, int CRC32 of the data, int data length,
+ *            UTF name, data (the board file, BoardFile.encode, deflated)
+ *   index:   per record: long offset, int length, byte flags, long time
+ *            saved, int moves, int black captures, int white captures, UTF name
+ *   footer:  long index offset, int records, int INDEX_MAGIC
+ *
+ * A save writes its record where the index was, writes the index again
+ * after it and forces the segment to disk. A segment whose footer does not
+ * check out (a crash in the middle of that) gets its index back from the
+ * records, which carry everything the index holds. Saving a name again or
+ * deleting it only sets FLAG_DELETED, in the record and in the index, and
+ * compact rewrites the segments that are mostly deleted records. A new
+ * segment is started once the last one reaches SEGMENT_SIZE bytes or
+ * SEGMENT_GAMES games, which keeps rewriting an index cheap.
+ *
+ * Boards in .goboard files of their own are still read (BoardCatalog);
+ *
+ *   java GoBoard --pack [folder]
+ *
+ * moves them all into packs and compacts, with the program closed.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+
+class BoardPack
+{
+    static final int VERSION = 1;
+    static final String EXTENSION = ".wpk";
+    private static final int MAGIC = 0x5750414B; // "WPAK"
+    private static final int RECORD_MAGIC = 0x57524543; // "WREC"
+    private static final int INDEX_MAGIC = 0x57494458; // "WIDX"
+    private static final int HEADER = 8, FOOTER = 16;
+    private static final int RECORD_FIXED = 37; // record bytes before the name
+    private static final int FLAG_DELETED = 1;
+    private static final long SEGMENT_SIZE = 64L << 20;
+    private static final int SEGMENT_GAMES = 4096;
+    private static final double COMPACT_WASTE = 0.5; // a segment is rewritten once this much of it is deleted games
+    private static final int PACK_BATCH = 256; // board files moved into a pack at a time
+
+    private static BoardPack instance;
+
+    // one game as the index of its segment has it
+    static class Game
+    {
+        final String name;
+        final Segment segment;
+        final long offset;
+        final int length; // of the whole record
+        final long modified; // when it was saved
+        final int moves, blackCaptures, whiteCaptures;
+        volatile boolean deleted;
+        long entryAt; // where its index entry is, for marking it deleted
+
+        Game(String name, Segment segment, long offset, int length, long modified, int moves, int blackCaptures, int whiteCaptures, boolean deleted)
+        {
+            this.name = name;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.modified = modified;
+            this.moves = moves;
+            this.blackCaptures = blackCaptures;
+            this.whiteCaptures = whiteCaptures;
+            this.deleted = deleted;
+        }
+
+        java.util.List<BoardState> read() throws IOException
+        {
+            return segment.read(this);
+        }
+    }
+
+    // a game ready to be appended: its record, and the game it will be once it has a place
+    private static class Record
+    {
+        final byte[] bytes;
+        final String name;
+        final long modified;
+        final int moves, blackCaptures, whiteCaptures;
+
+        Record(String name, java.util.List<BoardState> history, long modified) throws IOException
+        {
+            this.name = name;
+            this.modified = modified;
+            BoardState last = history.get(history.size() - 1);
+            moves = history.size() - 1;
+            blackCaptures = last.blackCaptures;
+            whiteCaptures = last.whiteCaptures;
+
+            byte[] raw = BoardFile.encode(history);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream data = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished())
+                data.write(chunk, 0, deflater.deflate(chunk));
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(data.toByteArray());
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(data.size() + RECORD_FIXED + 2 + name.length() * 3);
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeInt(RECORD_MAGIC);
+            out.writeByte(0);
+            out.writeLong(modified);
+            out.writeInt(moves);
+            out.writeInt(blackCaptures);
+            out.writeInt(whiteCaptures);
+            out.writeInt(raw.length);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(data.size());
+            out.writeUTF(name);
+            data.writeTo(out);
+            out.flush();
+            bytes = record.toByteArray();
+        }
+    }
+
+    // one pack file and its index
+    static class Segment
+    {
+        final Path path;
+        final int number;
+        final java.util.List<Game> games = new ArrayList<>(); // in file order, deleted ones too
+        long end; // where the records stop and the index starts
+        long deletedBytes;
+        private MappedByteBuffer map;
+
+        private Segment(Path path, int number)
+        {
+            this.path = path;
+            this.number = number;
+        }
+
+        // read the index of a segment, or get it back from the records; repair writes a rebuilt index out
+        static Segment open(Path path, boolean repair) throws IOException
+        {
+            Segment segment = new Segment(path, number(path));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                long size = channel.size();
+                ByteBuffer header = readAt(channel, 0, HEADER);
+                if (header.getInt() != MAGIC)
+                    throw new IOException(path + " is not a pack file");
+                if (header.getInt() != VERSION)
+                    throw new IOException(path + " is from another version");
+                if (!segment.readIndex(channel, size))
+                {
+                    segment.scan(channel, size);
+                    if (repair)
+                        segment.rewriteIndex();
+                }
+            }
+            return segment;
+        }
+
+        // the index the footer points to, false if anything about it is off
+        private boolean readIndex(FileChannel channel, long size) throws IOException
+        {
+            if (size < HEADER + FOOTER)
+                return false;
+            ByteBuffer footer = readAt(channel, size - FOOTER, FOOTER);
+            long indexAt = footer.getLong();
+            int count = footer.getInt();
+            if (footer.getInt() != INDEX_MAGIC || indexAt < HEADER || indexAt > size - FOOTER || count < 0)
+                return false;
+            ByteBuffer index = readAt(channel, indexAt, (int) (size - FOOTER - indexAt));
+            java.util.List<Game> read = new ArrayList<>(count);
+            try
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    long entryAt = indexAt + index.position();
+                    long offset = index.getLong();
+                    int length = index.getInt();
+                    boolean deleted = (index.get() & FLAG_DELETED) != 0;
+                    long modified = index.getLong();
+                    int moves = index.getInt(), blackCaptures = index.getInt(), whiteCaptures = index.getInt();
+                    if (offset < HEADER || offset + length > indexAt)
+                        return false;
+                    Game game = new Game(readUTF(index), this, offset, length, modified, moves, blackCaptures, whiteCaptures, deleted);
+                    game.entryAt = entryAt + 12;
+                    read.add(game);
+                }
+            }
+            catch (RuntimeException | UTFDataFormatException ex)
+            {
+                return false; // ran off the end, a damaged index
+            }
+            games.addAll(read);
+            end = indexAt;
+            for (Game game : games)
+                if (game.deleted)
+                    deletedBytes += game.length;
+            return true;
+        }
+
+        // go through the records one by one, up to the first that is not whole
+        private void scan(FileChannel channel, long size) throws IOException
+        {
+            games.clear();
+            deletedBytes = 0;
+            long at = HEADER;
+            while (at + RECORD_FIXED + 2 <= size)
+            {
+                ByteBuffer head = readAt(channel, at, RECORD_FIXED + 2);
+                if (head.getInt() != RECORD_MAGIC)
+                    break;
+                boolean deleted = (head.get() & FLAG_DELETED) != 0;
+                long modified = head.getLong();
+                int moves = head.getInt(), blackCaptures = head.getInt(), whiteCaptures = head.getInt();
+                head.getInt(); // board file length
+                int crc = head.getInt(), dataLength = head.getInt(), nameLength = head.getShort() & 0xffff;
+                long length = RECORD_FIXED + 2L + nameLength + dataLength;
+                if (dataLength < 0 || at + length > size)
+                    break;
+                ByteBuffer rest = readAt(channel, at + RECORD_FIXED, 2 + nameLength + dataLength);
+                String name;
+                try
+                {
+                    name = readUTF(rest);
+                }
+                catch (UTFDataFormatException ex)
+                {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(rest);
+                if ((int) check.getValue() != crc)
+                    break;
+                Game game = new Game(name, this, at, (int) length, modified, moves, blackCaptures, whiteCaptures, deleted);
+                games.add(game);
+                if (deleted)
+                    deletedBytes += length;
+                at += length;
+            }
+            end = at;
+        }
+
+        // the game's history out of the mapped segment, inflating only its record
+        java.util.List<BoardState> read(Game game) throws IOException
+        {
+            ByteBuffer record = map(game.offset + game.length).duplicate();
+            record.position((int) game.offset).limit((int) (game.offset + game.length));
+            if (record.getInt() != RECORD_MAGIC)
+                throw new IOException("Damaged game " + game.name + " in " + path);
+            record.position(record.position() + 1 + 8 + 12); // flags, time, moves and captures
+            int rawLength = record.getInt(), crc = record.getInt(), dataLength = record.getInt();
+            String name = readUTF(record);
+            if (!name.equals(game.name) || dataLength != record.remaining())
+                throw new IOException("Damaged game " + game.name + " in " + path);
+            ByteBuffer data = record.slice();
+            CRC32 check = new CRC32();
+            check.update(data.duplicate());
+            if ((int) check.getValue() != crc)
+                throw new IOException("Damaged game " + game.name + " in " + path);
+            Inflater inflater = new Inflater();
+            try
+            {
+                inflater.setInput(data);
+                byte[] raw = new byte[rawLength];
+                int done = 0;
+                while (done < rawLength && !inflater.finished())
+                {
+                    int n = inflater.inflate(raw, done, rawLength - done);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    done += n;
+                }
+                if (done != rawLength)
+                    throw new IOException("Damaged game " + game.name + " in " + path);
+                return BoardFile.decode(raw);
+            }
+            catch (DataFormatException ex)
+            {
+                throw new IOException("Damaged game " + game.name + " in " + path, ex);
+            }
+            finally
+            {
+                inflater.end();
+            }
+        }
+
+        // the segment mapped at least up to end
+        private synchronized MappedByteBuffer map(long end) throws IOException
+        {
+            if (map == null || map.capacity() < end)
+            {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+                {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            return map;
+        }
+
+        long size()
+        {
+            return end + FOOTER + games.size() * 40L; // near enough, the names are not counted
+        }
+
+        // write records where the index is, then the index after them, and force it all to disk
+        java.util.List<Game> append(java.util.List<Record> records) throws IOException
+        {
+            java.util.List<Game> added = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                long at = end;
+                for (Record record : records)
+                {
+                    writeAt(channel, at, ByteBuffer.wrap(record.bytes));
+                    added.add(new Game(record.name, this, at, record.bytes.length, record.modified, record.moves, record.blackCaptures, record.whiteCaptures, false));
+                    at += record.bytes.length;
+                }
+                games.addAll(added);
+                end = at;
+                writeIndex(channel);
+            }
+            return added;
+        }
+
+        private void rewriteIndex() throws IOException
+        {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                writeIndex(channel);
+            }
+        }
+
+        private void writeIndex(FileChannel channel) throws IOException
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(games.size() * 48 + FOOTER);
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Game game : games)
+            {
+                game.entryAt = end + out.size() + 12;
+                out.writeLong(game.offset);
+                out.writeInt(game.length);
+                out.writeByte(game.deleted ? FLAG_DELETED : 0);
+                out.writeLong(game.modified);
+                out.writeInt(game.moves);
+                out.writeInt(game.blackCaptures);
+                out.writeInt(game.whiteCaptures);
+                out.writeUTF(game.name);
+            }
+            out.writeLong(end);
+            out.writeInt(games.size());
+            out.writeInt(INDEX_MAGIC);
+            out.flush();
+            writeAt(channel, end, ByteBuffer.wrap(bytes.toByteArray()));
+            channel.truncate(end + bytes.size());
+            channel.force(true);
+        }
+
+        // set the deleted flag of a game in its record and its index entry
+        void markDeleted(Game game) throws IOException
+        {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                writeAt(channel, game.offset + 4, ByteBuffer.wrap(new byte[] {FLAG_DELETED}));
+                writeAt(channel, game.entryAt, ByteBuffer.wrap(new byte[] {FLAG_DELETED}));
+                channel.force(true);
+            }
+            game.deleted = true;
+            deletedBytes += game.length;
+        }
+
+        // the live games copied into a new file that replaces this one, null if none were left and it was deleted
+        Segment compact() throws IOException
+        {
+            java.util.List<Game> live = new ArrayList<>();
+            for (Game game : games)
+                if (!game.deleted)
+                    live.add(game);
+            if (live.isEmpty())
+            {
+                Files.delete(path);
+                return null;
+            }
+            MappedByteBuffer source = map(end); // kept by the old games, which may still be being read
+            Segment copy = new Segment(path, number);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try
+            {
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                {
+                    writeAt(channel, 0, header());
+                    long at = HEADER;
+                    for (Game game : live)
+                    {
+                        ByteBuffer record = source.duplicate();
+                        record.position((int) game.offset).limit((int) (game.offset + game.length));
+                        writeAt(channel, at, record);
+                        copy.games.add(new Game(game.name, copy, at, game.length, game.modified, game.moves, game.blackCaptures, game.whiteCaptures, false));
+                        at += game.length;
+                    }
+                    copy.end = at;
+                    copy.writeIndex(channel);
+                }
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally
+            {
+                Files.deleteIfExists(tmp);
+            }
+            return copy;
+        }
+
+        static Segment create(Path path, int number) throws IOException
+        {
+            Segment segment = new Segment(path, number);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+            {
+                writeAt(channel, 0, header());
+                segment.end = HEADER;
+                segment.writeIndex(channel);
+            }
+            return segment;
+        }
+
+        private static ByteBuffer header()
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            return header;
+        }
+
+        private static int number(Path path)
+        {
+            String name = path.getFileName().toString().replaceAll("\\D", "");
+            return name.isEmpty() ? 0 : Integer.parseInt(name);
+        }
+    }
+
+    // a saved game for the command line tools, in a board file of its own or in a pack
+    static class Source
+    {
+        final String name;
+        final String label; // the file, and the name in it for a pack
+        private final Path file;
+        private final Game game;
+
+        private Source(Path file, Game game)
+        {
+            this.file = file;
+            this.game = game;
+            this.name = game != null ? game.name : file.getFileName().toString().replaceFirst("\\.goboard$", "");
+            this.label = game != null ? file + ":" + game.name : file.toString();
+        }
+
+        // read it, without converting old board files
+        java.util.List<BoardState> read() throws IOException
+        {
+            return game != null ? game.read() : BoardFile.read(file, false);
+        }
+    }
+
+    private final Path dir;
+    private final java.util.List<Segment> segments = new ArrayList<>();
+    private final Map<String, Game> live = new HashMap<>(); // name -> the game saved last under it
+
+    // the packs of saved_boards, opened on the first call
+    static synchronized BoardPack get()
+    {
+        if (instance == null)
+        {
+            instance = new BoardPack(Paths.get("saved_boards", "packs"));
+            instance.open();
+        }
+        return instance;
+    }
+
+    private BoardPack(Path dir)
+    {
+        this.dir = dir;
+    }
+
+    private void open()
+    {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(EXTENSION));
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            try
+            {
+                segments.add(Segment.open(file.toPath(), true));
+            }
+            catch (IOException ex)
+            {
+                System.err.println("Skipping pack " + file + ": " + ex.getMessage()); // left alone, not written to
+            }
+        }
+        segments.sort(Comparator.comparingInt(s -> s.number));
+        for (Segment segment : segments)
+        {
+            for (Game game : segment.games)
+            {
+                if (game.deleted)
+                    continue;
+                // a crash between saving a game again and marking the old one leaves two, the later one counts
+                Game older = live.put(game.name, game);
+                if (older != null)
+                    markQuietly(older);
+            }
+        }
+    }
+
+    synchronized Game game(String name)
+    {
+        return live.get(name);
+    }
+
+    synchronized java.util.List<Game> games()
+    {
+        return new ArrayList<>(live.values());
+    }
+
+    java.util.List<BoardState> read(String name) throws IOException
+    {
+        Game game = game(name);
+        if (game == null)
+            throw new FileNotFoundException("No saved board " + name);
+        return game.read();
+    }
+
+    // save a game under name, in place of any game saved under it before
+    Game write(String name, java.util.List<BoardState> history) throws IOException
+    {
+        Map<String, java.util.List<BoardState>> one = new HashMap<>();
+        one.put(name, history);
+        return write(one).get(0);
+    }
+
+    // save several games with one index write per segment, returns them in the order given
+    java.util.List<Game> write(Map<String, java.util.List<BoardState>> histories) throws IOException
+    {
+        long now = System.currentTimeMillis();
+        java.util.List<Record> records = new ArrayList<>(histories.size());
+        for (Map.Entry<String, java.util.List<BoardState>> e : histories.entrySet())
+            records.add(new Record(e.getKey(), e.getValue(), now)); // compressing needs no lock
+        java.util.List<Game> added = new ArrayList<>();
+        synchronized (this)
+        {
+            int from = 0;
+            while (from < records.size())
+            {
+                Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (segment == null || segment.size() >= SEGMENT_SIZE || segment.games.size() >= SEGMENT_GAMES)
+                    segment = newSegment();
+                int to = from;
+                long size = segment.size();
+                while (to < records.size() && (to == from || (size < SEGMENT_SIZE && segment.games.size() + to - from < SEGMENT_GAMES)))
+                    size += records.get(to++).bytes.length;
+                added.addAll(segment.append(records.subList(from, to)));
+                from = to;
+            }
+            // only once the new ones are on disk
+            for (Game game : added)
+            {
+                Game older = live.put(game.name, game);
+                if (older != null)
+                    older.segment.markDeleted(older);
+            }
+        }
+        return added;
+    }
+
+    // mark a game deleted, false if there was none by that name
+    synchronized boolean delete(String name) throws IOException
+    {
+        Game game = live.get(name);
+        if (game == null)
+            return false;
+        game.segment.markDeleted(game);
+        live.remove(name);
+        return true;
+    }
+
+    // rewrite the segments that are mostly deleted games (all that have any if all is set), returns the names of the games moved
+    synchronized java.util.List<String> compact(boolean all)
+    {
+        java.util.List<String> moved = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++)
+        {
+            Segment segment = segments.get(i);
+            if (segment.deletedBytes == 0 || (!all && segment.deletedBytes < segment.size() * COMPACT_WASTE))
+                continue;
+            Segment copy;
+            try
+            {
+                copy = segment.compact();
+            }
+            catch (IOException ex)
+            {
+                continue; // still mapped somewhere that will not let it be replaced (Windows), next time
+            }
+            if (copy == null)
+            {
+                segments.remove(i--);
+                continue;
+            }
+            segments.set(i, copy);
+            for (Game game : copy.games)
+            {
+                live.put(game.name, game);
+                moved.add(game.name);
+            }
+        }
+        return moved;
+    }
+
+    private Segment newSegment() throws IOException
+    {
+        Files.createDirectories(dir);
+        int number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+        Segment segment = Segment.create(dir.resolve(String.format("pack-%04d%s", number, EXTENSION)), number);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void markQuietly(Game game)
+    {
+        try
+        {
+            game.segment.markDeleted(game);
+        }
+        catch (IOException ex)
+        {
+            // still hidden behind the later one, marked again next time
+        }
+    }
+
+    // the saved games under the roots: .goboard files, and the live games of any pack files
+    static java.util.List<Source> find(java.util.List<Path> roots)
+    {
+        java.util.List<Source> found = new ArrayList<>();
+        for (Path root : roots)
+        {
+            java.util.List<Path> files = new ArrayList<>();
+            try (Stream<Path> walk = Files.walk(root))
+            {
+                walk.filter(p -> (p.getFileName().toString().endsWith(".goboard") || p.getFileName().toString().endsWith(EXTENSION)) && Files.isRegularFile(p)).forEach(files::add);
+            }
+            catch (IOException | UncheckedIOException ex)
+            {
+                System.err.println(root + ": " + ex.getMessage());
+            }
+            for (Path file : files)
+            {
+                if (file.getFileName().toString().endsWith(".goboard"))
+                {
+                    found.add(new Source(file, null));
+                    continue;
+                }
+                try
+                {
+                    for (Game game : Segment.open(file, false).games)
+                        if (!game.deleted)
+                            found.add(new Source(file, game));
+                }
+                catch (IOException ex)
+                {
+                    System.err.println(file + ": " + ex.getMessage());
+                }
+            }
+        }
+        found.sort(Comparator.comparing(s -> s.label));
+        return found;
+    }
+
+    // move the board files of a folder into its packs, then compact them
+    public static void main(String[] args)
+    {
+        File folder = new File(args.length > 0 ? args[0] : "saved_boards");
+        BoardPack pack = new BoardPack(folder.toPath().resolve("packs"));
+        pack.open();
+        File[] files = folder.listFiles((d, name) -> name.endsWith(".goboard"));
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files);
+        long start = System.nanoTime(), before = 0;
+        int moved = 0, unreadable = 0;
+        try
+        {
+            for (int from = 0; from < files.length; from += PACK_BATCH)
+            {
+                Map<String, java.util.List<BoardState>> batch = new LinkedHashMap<>();
+                java.util.List<File> batchFiles = new ArrayList<>();
+                for (File file : Arrays.asList(files).subList(from, Math.min(files.length, from + PACK_BATCH)))
+                {
+                    String name = file.getName().substring(0, file.getName().length() - ".goboard".length());
+                    Game packed = pack.game(name);
+                    if (packed != null && packed.modified >= file.lastModified())
+                    {
+                        batchFiles.add(file); // saved again since, the file is left over
+                        continue;
+                    }
+                    try
+                    {
+                        batch.put(name, BoardFile.read(file.toPath(), false));
+                        batchFiles.add(file);
+                        before += file.length();
+                    }
+                    catch (IOException | RuntimeException ex)
+                    {
+                        unreadable++;
+                        System.out.println(file + ": unreadable, left as it is (" + ex.getMessage() + ")");
+                    }
+                }
+                moved += pack.write(batch).size();
+                for (File file : batchFiles)
+                    file.delete(); // the packed copy is on disk
+            }
+            pack.compact(true);
+        }
+        catch (IOException ex)
+        {
+            System.err.println("Packing failed: " + ex.getMessage());
+            System.exit(1);
+        }
+        long after = 0;
+        for (Segment segment : pack.segments)
+            after += segment.path.toFile().length();
+        System.out.printf("Packed %d boards (%d KB as files) into %d pack files, %d KB in all, in %.2f s, %d unreadable%n",
+            moved, before / 1024, pack.segments.size(), after / 1024, (System.nanoTime() - start) / 1e9, unreadable);
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long at, int length) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining())
+        {
+            if (channel.read(buf, at + buf.position()) < 0)
+                throw new EOFException("Pack file is truncated");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeAt(FileChannel channel, long at, ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining())
+            at += channel.write(buf, at);
+    }
+
+    // a string as DataOutputStream.writeUTF put it
+    private static String readUTF(ByteBuffer buf) throws UTFDataFormatException
+    {
+        byte[] bytes = new byte[2 + (buf.getShort(buf.position()) & 0xffff)];
+        buf.get(bytes);
+        try
+        {
+            return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+        }
+        catch (UTFDataFormatException ex)
+        {
+            throw ex;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex); // not from a byte array
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// BoardSaver.java
+/* Saves boards on a background thread so a slow disk never holds up the
+ * window. A save takes a copy of the history on the event thread, then the
+ * writer thread appends it to the packs (BoardPack, forced to disk before
+ * the older copy is marked deleted), drops the board's own file if it had
+ * one from before packs, and tells the catalog and the position index.
+ * Saves and deletes are done one at a time in the order asked, each
+ * followed by compacting any pack that has become mostly deleted games;
+ * asking to save a board that is still waiting in the queue only replaces
+ * what will be written. Whatever is queued when the program exits is
+ * written before it goes.
+ */
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+class BoardSaver
+{
+    private static final long EXIT_WAIT_SECONDS = 30;
+
+    // one waiting save, the latest history for a name and everyone waiting on it
+    private static class Job
+    {
+        final String name;
+        java.util.List<BoardState> history;
+        final java.util.List<Consumer<IOException>> callbacks = new ArrayList<>();
+
+        Job(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static BoardSaver instance;
+
+    private final File dir;
+    private final Map<String, Job> waiting = new HashMap<>(); // name -> save not started yet
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "board-saver");
+        thread.setDaemon(true); // the shutdown hook waits for it instead
+        return thread;
+    });
+
+    static synchronized BoardSaver get()
+    {
+        if (instance == null)
+        {
+            instance = new BoardSaver(new File("saved_boards"));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::finish));
+        }
+        return instance;
+    }
+
+    private BoardSaver(File dir)
+    {
+        this.dir = dir;
+    }
+
+    // save history as name in the background; done runs on the event thread with null or the error
+    void save(String name, java.util.List<BoardState> history, Consumer<IOException> done)
+    {
+        java.util.List<BoardState> snapshot = new ArrayList<>(history); // the line changes as moves are played, states only gain variations
+        synchronized (waiting)
+        {
+            Job job = waiting.get(name);
+            if (job == null)
+            {
+                job = new Job(name);
+                waiting.put(name, job);
+                Job queued = job;
+                writer.execute(() -> write(queued));
+            }
+            job.history = snapshot;
+            if (done != null)
+                job.callbacks.add(done);
+        }
+    }
+
+    private void write(Job job)
+    {
+        java.util.List<BoardState> history;
+        java.util.List<Consumer<IOException>> callbacks;
+        synchronized (waiting)
+        {
+            waiting.remove(job.name); // later saves of this name queue up again
+            history = job.history;
+            callbacks = new ArrayList<>(job.callbacks);
+        }
+        IOException error = null;
+        Metrics.SaveBoardEvent event = new Metrics.SaveBoardEvent();
+        event.begin();
+        long bytes = 0;
+        try
+        {
+            if (!dir.exists()) dir.mkdir();
+            bytes = BoardPack.get().write(job.name, history).length;
+            Files.deleteIfExists(new File(dir, job.name + ".goboard").toPath()); // from before packs, out of date now
+            BoardCatalog.get().update(job.name);
+            PositionIndex.get().add(job.name, history);
+            OpeningTree.get().add(job.name, history);
+            compact();
+        }
+        catch (IOException ex)
+        {
+            error = ex;
+        }
+        catch (RuntimeException ex)
+        {
+            error = new IOException(ex.toString(), ex);
+        }
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.name = job.name;
+            event.historySize = history.size();
+            event.bytes = bytes;
+            event.commit();
+        }
+        IOException result = error;
+        for (Consumer<IOException> callback : callbacks)
+            SwingUtilities.invokeLater(() -> callback.accept(result));
+    }
+
+    // delete a saved board in the background, after any save of it still waiting; done as for save
+    void delete(String name, Consumer<IOException> done)
+    {
+        writer.execute(() ->
+        {
+            IOException error = null;
+            try
+            {
+                boolean found = BoardPack.get().delete(name); // only marked, compacting takes it out
+                File file = new File(dir, name + ".goboard");
+                if (file.exists())
+                {
+                    Files.delete(file.toPath()); // a board from before packs
+                    found = true;
+                }
+                if (!found)
+                    throw new FileNotFoundException("No saved board " + name);
+                BoardCatalog.get().update(name);
+                compact();
+            }
+            catch (IOException ex)
+            {
+                error = ex;
+            }
+            IOException result = error;
+            if (done != null)
+                SwingUtilities.invokeLater(() -> done.accept(result));
+        });
+    }
+
+    // rewrite the packs that are mostly deleted games, the games in them move
+    private void compact()
+    {
+        for (String moved : BoardPack.get().compact(false))
+            BoardCatalog.get().update(moved);
+    }
+
+    // let the queue run dry before the program exits
+    private void finish()
+    {
+        writer.shutdown();
+        try
+        {
+            writer.awaitTermination(EXIT_WAIT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
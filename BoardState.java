@@ -0,0 +1,95 @@
+// BoardState.java
+/* One entry in a game's history: what the move changed (the stone put down
+ * and the stones taken off) plus the counters after it. Every
+ * GoEngine.KEYFRAME_INTERVAL states also keep a full copy of the board.
+ *
+ * States form a tree of variations. Each one knows the state it was
+ * played from and the moves played from it, so lines that branch off
+ * share every state before the branch. The variations array is never
+ * changed once set, only replaced, so a thread saving the game can walk
+ * the tree while moves are still being played.
+ */
+
+import java.util.Arrays;
+
+class BoardState 
+{
+    static final BoardState[] NO_STATES = {};
+
+    Bitboard board; // full board on keyframes only, null otherwise
+    boolean blackTurn;
+    int blackCaptures, whiteCaptures;
+    int lastMoveX, lastMoveY;
+    long hash; // zobrist hash of board
+    int moveColor; // color of the stone put on lastMoveX, lastMoveY, 0 if none was placed
+    int[] captured; // points (x * size + y) taken off by this move
+    BoardState parent; // state this move was played from, null for the first
+    BoardState next; // variation the line last went down from here, null if none
+    volatile BoardState[] variations = NO_STATES; // moves played from here, in the order they were first played
+
+    BoardState(Bitboard b, boolean turn, int bc, int wc, int lmx, int lmy, long h) 
+    {
+        if (b != null) 
+            board = b.copy();
+        blackTurn = turn;
+        blackCaptures = bc;
+        whiteCaptures = wc;
+        lastMoveX = lmx;
+        lastMoveY = lmy;
+        hash = h;
+        moveColor = 0;
+        captured = GoPosition.NO_POINTS;
+    }
+
+    // rough heap this state takes: the object, its arrays and its keyframe (not its variations)
+    int estimatedBytes() 
+    {
+        int bytes = 64 + 16 + 4 * variations.length;
+        if (captured.length > 0) 
+            bytes += 16 + 4 * captured.length;
+        if (board != null) 
+            bytes += 24 + 2 * (16 + 8 * board.words());
+        return bytes;
+    }
+
+    // the variation from here that played this move (x < 0 a pass) and left turn to play, null if none did
+    BoardState variation(int x, int y, int color, boolean turn) 
+    {
+        for (BoardState child : variations) 
+            if (child.lastMoveX == x && child.lastMoveY == y && child.moveColor == color && child.blackTurn == turn) 
+                return child;
+        return null;
+    }
+
+    void addVariation(BoardState child) 
+    {
+        BoardState[] old = variations;
+        BoardState[] grown = Arrays.copyOf(old, old.length + 1);
+        grown[old.length] = child;
+        child.parent = this;
+        variations = grown;
+    }
+
+    // the variations in the order they are written out: first the line's next move, when this is move index
+    // of line (-1 when off it), otherwise the variation last followed
+    BoardState[] variations(java.util.List<BoardState> line, int index) 
+    {
+        BoardState[] all = variations;
+        BoardState first = index < 0 ? next : index + 1 < line.size() ? line.get(index + 1) : null;
+        if (first == null || (index < 0 && !Arrays.asList(all).contains(first))) 
+            return all; // (next may have been played after all was read, on another thread)
+        BoardState[] ordered = new BoardState[all.length + 1];
+        ordered[0] = first;
+        int count = 1;
+        for (BoardState child : all) 
+            if (child != first) 
+                ordered[count++] = child;
+        return count == ordered.length ? ordered : Arrays.copyOf(ordered, count);
+    }
+
+    // where child comes in line, given this is move index of it (-1 when off it)
+    static int lineIndex(java.util.List<BoardState> line, int index, BoardState child) 
+    {
+        return index >= 0 && index + 1 < line.size() && line.get(index + 1) == child ? index + 1 : -1;
+    }
+}
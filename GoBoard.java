@@ -27,70 +27,114 @@ public class GoBoard
 	// main
 	public static void main(String[] args) 
     {
+        // command line tools, no window
+        if (args.length > 0 && args[0].equals("--replay")) 
+        {
+            BatchReplay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--score")) 
+        {
+            BatchScore.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--export")) 
+        {
+            BatchExport.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--pack")) 
+        {
+            BoardPack.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        Metrics.startRecording(); // the last half hour, for bug reports
+        BoardCatalog.get(); // start indexing saved_boards in the background
+        PositionIndex.get();
+        OpeningTree.get();
         SwingUtilities.invokeLater(() -> 
         {
             JFrame frame = new JFrame("Weiqi Opening Experimenter");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setSize(400, 200);
+            frame.setSize(400, 250);
             frame.setLocationRelativeTo(null);
 
             JPanel panel = new JPanel();
-            panel.setLayout(new GridLayout(3, 1, 10, 10));
+            panel.setLayout(new GridLayout(4, 1, 10, 10));
 
             JButton newBoardBtn = new JButton("New Board");
             JButton oldBoardsBtn = new JButton("Old Boards");
+            JButton importBtn = new JButton("Import SGF");
             JButton settingsBtn = new JButton("Settings");
 
-            newBoardBtn.addActionListener(e -> new GoBoard());
+            newBoardBtn.addActionListener(e -> GoBoard.newBoard(frame));
             oldBoardsBtn.addActionListener(e -> {
-                File dir = new File("saved_boards");
-                if (!dir.exists() || dir.listFiles() == null || dir.listFiles().length == 0) {
-                    JOptionPane.showMessageDialog(frame, "No saved boards found.");
-                    return;
-                }
-                File[] files = dir.listFiles((d, name) -> name.endsWith(".goboard"));
-                if (files == null || files.length == 0) {
+                BoardCatalog catalog = BoardCatalog.get();
+                if (catalog.isScanned() && catalog.isEmpty()) { // still reading old boards: the gallery fills in as they turn up
                     JOptionPane.showMessageDialog(frame, "No saved boards found.");
                     return;
                 }
-                String[] names = new String[files.length];
-                for (int i = 0; i < files.length; i++) {
-                    names[i] = files[i].getName().replace(".goboard", "");
-                }
-                String selected = (String) JOptionPane.showInputDialog(frame, "Select a board to load:", "Old Boards", JOptionPane.PLAIN_MESSAGE, null, names, names[0]);
-                if (selected != null) {
-                    GoBoard.loadBoardFromFile(selected);
-                }
+                JDialog gallery = new JDialog(frame, "Old Boards", false);
+                gallery.add(new BoardGallery(name -> {
+                    gallery.dispose();
+                    GoBoard.loadBoardFromFile(name);
+                }));
+                gallery.pack();
+                gallery.setLocationRelativeTo(frame);
+                gallery.setVisible(true);
             });
+            importBtn.addActionListener(e -> GoBoard.importSgf(frame));
             settingsBtn.addActionListener(e -> GoBoard.showStaticSettingsDialog(frame));
 
             panel.add(newBoardBtn);
             panel.add(oldBoardsBtn);
+            panel.add(importBtn);
             panel.add(settingsBtn);
 
             frame.add(panel);
             frame.setVisible(true);
+            offerRecovery(frame);
         });
     }
     
-    private final int SIZE = 19; // 19 x 19 traditional board
-    private int[][] board = new int[SIZE][SIZE]; // 0: empty, 1: black, 2: white
-    private boolean blackTurn = true; // black plays first
-    private int lastMoveX = -1, lastMoveY = -1, lastMoveColor = 0; // need to track last moves
-    private int blackCaptures = 0; // prisoners
-    private int whiteCaptures = 0; // prisoners
+    private final int boardSize; // lines across, taken from the engine
+    private GoEngine engine; // rules and history, everything here just shows it
+    private MoveJournal journal; // every move of a live game, so a crash does not lose it
     private JLabel blackBanner; // banner label at top
     private JLabel whiteBanner; // banner label at top
     private JLabel moveNumberLabel; // label that displays move number, constantly updated
+    private ScoreEstimator scorer; // live count for the banners, follows every move and jump
+    private double komi = ScoreEstimator.DEFAULT_KOMI;
+    private boolean areaScoring = true; // false counts by territory
+    private boolean markingDead = false; // clicks mark groups dead instead of playing
+    private MoveSearch search; // suggestions for the position on the board, null when they are off
+    private javax.swing.Timer searchTimer; // repaints the suggestions while the search refines them
+    private InfluenceMap influence; // heatmaps of the positions shown, worked out in the background
+    private boolean showInfluence = false;
+    private java.util.List<OpeningTree.Continuation> openingMoves; // moves saved games played from here, null when not shown
+    private int openingGames; // saved games that reached the position on the board
+    private boolean variationsShown = false; // markers for the moves played from here are on the board
+    private static boolean showMetrics = false; // performance overlay on every board, F3
+    private final Metrics.Samples moveTimes = new Metrics.Samples(256); // click to board updated, for the overlay
+    private long lastPaintNanos; // how long the last paint of the board took
+    private double averagePaintNanos;
+    private javax.swing.Timer metricsTimer; // keeps the overlay current while it is shown
+    private int[][] diagramNumbers; // move numbers drawn on the stones in place of the last move's, for diagrams
     
-    private java.util.List<BoardState> history = new ArrayList<>(); // list of board state
-    private int historyIndex = 0; // to track for slider
     private GoBoardPanel boardPanel; // go board object
-    private JSlider moveSlider; // slider that can view between moves
-    private JButton resetBoardBtn, returnHomeBtn, settingsBtn; // necessary jbuttons for function
+    private MoveTimeline moveSlider; // timeline that can view between moves
+    private AutoPlay autoPlay; // plays the line on the timeline by itself
+    private JButton resetBoardBtn, returnHomeBtn, findBtn, exportBtn, settingsBtn; // necessary jbuttons for function
+    private JToggleButton markDeadBtn; // switches dead stone marking on and off
+    private JToggleButton suggestBtn; // switches move suggestions on and off
+    private JToggleButton influenceBtn; // switches the influence heatmap on and off
+    private JToggleButton openingsBtn; // switches the opening tree moves on and off
     private JFrame frame; // holding frame
     private boolean viewOnly = false; // for saved boards
+    private String savedName; // name a saved board was opened from, for saving its new variations
     private static Color defaultBoardColor = new Color(222, 184, 135); // default for all new boards
+    private static final int IMPORT_BATCH = 256; // imported games written to the packs at a time
     private Color boardColor = defaultBoardColor; // instance color
     
     // colors
@@ -112,7 +156,13 @@ public class GoBoard
 	// constructor
     public GoBoard() 
     {
-        this(null, false);
+        this(GoEngine.DEFAULT_SIZE);
+    }
+
+	// new game on a board of size lines (one of GoEngine.SIZES)
+    public GoBoard(int size) 
+    {
+        this(null, false, size);
         this.boardColor = defaultBoardColor;
     }
 
@@ -122,16 +172,59 @@ public class GoBoard
         this(loadedHistory, true);
     }
 
+	// overloaded constructor #3, only the board panel with no window, for drawing off screen
+    private GoBoard(GoEngine engine) 
+    {
+        this.viewOnly = true;
+        this.engine = engine;
+        this.boardSize = engine.size();
+        scorer = new ScoreEstimator(boardSize);
+        boardPanel = new GoBoardPanel();
+        boardPanel.setSize(boardPanel.getPreferredSize());
+    }
+
+    // a board panel showing whatever position engine is at, to paint into an image (benchmarks and tools)
+    static JPanel offscreenBoard(GoEngine engine) 
+    {
+        return new GoBoard(engine).boardPanel;
+    }
+
+    // the same, with numbers[x][y] drawn on the stones where it is above 0 (a diagram of a run of moves)
+    static JPanel diagramBoard(GoEngine engine, int[][] numbers) 
+    {
+        GoBoard board = new GoBoard(engine);
+        board.diagramNumbers = numbers;
+        return board.boardPanel;
+    }
+
+    // ask which size the new board should be, then open it
+    static void newBoard(Component parent) 
+    {
+        String[] choices = new String[GoEngine.SIZES.length];
+        for (int i = 0; i < choices.length; i++) 
+        {
+            int size = GoEngine.SIZES[GoEngine.SIZES.length - 1 - i]; // biggest first
+            choices[i] = size + " x " + size;
+        }
+        int choice = JOptionPane.showOptionDialog(parent, "Board size:", "New Board", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        if (choice >= 0) 
+            new GoBoard(GoEngine.SIZES[GoEngine.SIZES.length - 1 - choice]);
+    }
+
 	// overloaded constructor #2
     private GoBoard(java.util.List<BoardState> loadedHistory, boolean viewOnly) 
+    {
+        this(loadedHistory, viewOnly, GoEngine.DEFAULT_SIZE);
+    }
+
+	// overloaded constructor #4, size is only used for a new game, a loaded one keeps its own
+    private GoBoard(java.util.List<BoardState> loadedHistory, boolean viewOnly, int size) 
     {
         this.viewOnly = viewOnly;
         this.boardColor = defaultBoardColor;
         openBoards.add(this);
         frame = new JFrame(viewOnly ? "Weiqi (Go) Board (View Only)" : "Weiqi (Go) Board");
         frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-        frame.setSize(850, 950);
-        frame.setLocationRelativeTo(null);
 
         JPanel mainPanel = new JPanel(new BorderLayout());
         JPanel bannerPanel = new JPanel(new BorderLayout());
@@ -159,31 +252,57 @@ public class GoBoard
         bannerPanel.add(whiteBanner, BorderLayout.CENTER);
         bannerPanel.add(moveNumberLabel, BorderLayout.EAST);
 
+        // if loading, restore state, otherwise just reset for new board
+        if (loadedHistory != null && !loadedHistory.isEmpty()) 
+        {
+            engine = new GoEngine(loadedHistory);
+        } 
+        // empty board for a new game
+        else 
+        {
+            engine = new GoEngine(size);
+        }
+        boardSize = engine.size(); // the panel is laid out for it
+        scorer = new ScoreEstimator(boardSize);
+
         // board panel
         boardPanel = new GoBoardPanel();
 
         // move slider
-        moveSlider = new JSlider(0, 0, 0);
-        moveSlider.setMajorTickSpacing(1);
-        moveSlider.setPaintTicks(true);
-        moveSlider.setPaintLabels(true);
-        moveSlider.setSnapToTicks(true);
+        moveSlider = new MoveTimeline();
         moveSlider.addChangeListener(evt -> 
         {
-            if (moveSlider.getValue() != historyIndex) 
+            if (moveSlider.getValue() != engine.getHistoryIndex()) 
             {
                 jumpToMove(moveSlider.getValue());
             }
         });
-        bottomPanel.add(moveSlider, BorderLayout.NORTH);
+        autoPlay = new AutoPlay(moveSlider, this::prefetch);
+        autoPlay.addChangeListener(evt -> restartSearch()); // suggestions wait while the game plays itself
+        JPanel timelinePanel = new JPanel(new BorderLayout());
+        timelinePanel.add(autoPlay, BorderLayout.WEST);
+        timelinePanel.add(moveSlider, BorderLayout.CENTER);
+        bottomPanel.add(timelinePanel, BorderLayout.NORTH);
 
         // necessary control buttons
         resetBoardBtn = new JButton("Reset Board");
         returnHomeBtn = new JButton("Return to Home");
+        findBtn = new JButton("Find Position");
+        exportBtn = new JButton("Export");
         settingsBtn = new JButton("Settings");
+        markDeadBtn = new JToggleButton("Mark Dead");
+        suggestBtn = new JToggleButton("Suggest");
+        influenceBtn = new JToggleButton("Influence");
+        openingsBtn = new JToggleButton("Openings");
 
         if (!viewOnly) controlPanel.add(resetBoardBtn);
         controlPanel.add(returnHomeBtn);
+        controlPanel.add(findBtn);
+        controlPanel.add(exportBtn);
+        controlPanel.add(markDeadBtn);
+        controlPanel.add(suggestBtn);
+        controlPanel.add(influenceBtn);
+        controlPanel.add(openingsBtn);
         controlPanel.add(settingsBtn);
         bottomPanel.add(controlPanel, BorderLayout.SOUTH);
 
@@ -192,42 +311,26 @@ public class GoBoard
         mainPanel.add(boardPanel, BorderLayout.CENTER);
         mainPanel.add(bottomPanel, BorderLayout.SOUTH);
         frame.add(mainPanel);
+        frame.pack(); // sized around the board, which sizes itself to the screen
+        frame.setLocationRelativeTo(null);
         frame.setVisible(true);
 
-        // if loading, restore state, otherwise just reset for new board
-        if (loadedHistory != null && !loadedHistory.isEmpty()) 
+        if (!viewOnly && loadedHistory == null) 
         {
-            history = loadedHistory;
-            BoardState last = history.get(history.size() - 1);
-            for (int i = 0; i < SIZE; i++)
-                System.arraycopy(last.board[i], 0, board[i], 0, SIZE);
-            blackTurn = last.blackTurn;
-            blackCaptures = last.blackCaptures;
-            whiteCaptures = last.whiteCaptures;
-            lastMoveX = last.lastMoveX;
-            lastMoveY = last.lastMoveY;
-            historyIndex = history.size() - 1;
-        } 
-        // full reset of all variables
-        else 
-        {
-            for (int i = 0; i < SIZE; i++)
-                for (int j = 0; j < SIZE; j++)
-                    board[i][j] = 0;
-            blackTurn = true;
-            lastMoveX = -1;
-            lastMoveY = -1;
-            lastMoveColor = 0;
-            blackCaptures = 0;
-            whiteCaptures = 0;
-            history = new ArrayList<>();
-            historyIndex = 0;
-            saveHistory();
+            try 
+            {
+                journal = MoveJournal.create(boardSize);
+                engine.setJournal(journal);
+            } 
+            catch (IOException ex) 
+            {
+                // play on without crash recovery
+            }
         }
         updateSlider();
         updateMoveNumberLabel();
         updateBanners();
-        moveSlider.setValue(history.size() - 1);
+        moveSlider.setValue(engine.historySize() - 1);
         boardPanel.repaint();
 
         // button actions
@@ -236,7 +339,7 @@ public class GoBoard
 			// action listener for reset
             resetBoardBtn.addActionListener(evt -> 
             {
-                if (history.size() >= 11) 
+                if (engine.historySize() >= 11) 
                 {
                     int result = JOptionPane.showConfirmDialog(boardPanel, "Save board before resetting?", "Save Board", JOptionPane.YES_NO_CANCEL_OPTION);
                     if (result == JOptionPane.YES_OPTION) 
@@ -257,23 +360,14 @@ public class GoBoard
                     }
                 }
                 
-                for (int i = 0; i < SIZE; i++)
-                    for (int j = 0; j < SIZE; j++)
-                        board[i][j] = 0;
-                blackTurn = true;
-                lastMoveX = -1;
-                lastMoveY = -1;
-                lastMoveColor = 0;
-                blackCaptures = 0;
-                whiteCaptures = 0;
-                history = new ArrayList<>();
-                historyIndex = 0;
-                saveHistory();
+                engine.reset(null, true);
+                scorer.clearDead();
                 updateBanners();
+                positionChanged();
                 updateSlider();
                 updateMoveNumberLabel();
-                moveSlider.setValue(history.size() - 1); // always go to latest move
-                boardPanel.repaint();
+                moveSlider.setValue(engine.historySize() - 1); // always go to latest move
+                boardPanel.repaintChanges();
             });
         }
 
@@ -282,7 +376,7 @@ public class GoBoard
         {
             if (!viewOnly) 
             {
-                if (history.size() >= 11) 
+                if (engine.historySize() >= 11) 
                 {
                     int result = JOptionPane.showConfirmDialog(boardPanel, "Save board before returning to home?", "Save Board", JOptionPane.YES_NO_CANCEL_OPTION);
                     if (result == JOptionPane.YES_OPTION) 
@@ -290,7 +384,7 @@ public class GoBoard
                         String name = JOptionPane.showInputDialog(boardPanel, "Enter a name for this board:", "Board " + System.currentTimeMillis());
                         if (name != null && !name.trim().isEmpty()) 
                         {
-                            saveBoardToFile(name.trim());
+                            saveBoardToFile(name.trim(), true);
                             frame.dispose();
                         } 
                         else 
@@ -300,21 +394,96 @@ public class GoBoard
                     } 
                     else if (result == JOptionPane.NO_OPTION) 
                     {
+                        discardJournal();
                         frame.dispose();
                     } // else (Cancel) do nothing
                 } 
                 else 
                 {
+                    discardJournal();
                     frame.dispose();
                 }
             } 
-            else 
+            else if (saveVariations()) 
             {
                 frame.dispose();
             }
         });
         
+        findBtn.addActionListener(evt -> findPosition());
+        exportBtn.addActionListener(evt -> 
+        {
+            JPopupMenu menu = new JPopupMenu();
+            JMenuItem sgfItem = new JMenuItem("SGF...");
+            JMenuItem moveItem = new JMenuItem("Diagram of This Move...");
+            JMenuItem sheetItem = new JMenuItem("Diagram Sheet...");
+            JMenuItem gifItem = new JMenuItem("Animated GIF...");
+            sgfItem.addActionListener(e -> exportSgf());
+            moveItem.addActionListener(e -> exportPicture(0));
+            sheetItem.addActionListener(e -> exportPicture(1));
+            gifItem.addActionListener(e -> exportPicture(2));
+            sheetItem.setEnabled(engine.historySize() > 1);
+            menu.add(sgfItem);
+            menu.add(moveItem);
+            menu.add(sheetItem);
+            menu.add(gifItem);
+            menu.show(exportBtn, 0, exportBtn.getHeight());
+        });
         settingsBtn.addActionListener(evt -> showSettingsDialog());
+        markDeadBtn.addActionListener(evt -> 
+        {
+            markingDead = markDeadBtn.isSelected();
+            boardPanel.setHover(-1, -1);
+            boardPanel.repaintChanges(); // territory is only shown while marking
+        });
+        influence = new InfluenceMap(() -> boardPanel.repaint());
+        influenceBtn.addActionListener(evt -> 
+        {
+            showInfluence = influenceBtn.isSelected();
+            boardPanel.repaint();
+        });
+        openingsBtn.addActionListener(evt -> 
+        {
+            openingMoves = null;
+            if (openingsBtn.isSelected()) 
+                refreshOpenings();
+            updateMoveNumberLabel();
+            boardPanel.repaint();
+        });
+        searchTimer = new javax.swing.Timer(500, evt -> 
+        {
+            updateMoveNumberLabel();
+            boardPanel.repaint();
+        });
+        metricsTimer = new javax.swing.Timer(500, evt -> boardPanel.repaintMetrics());
+        if (showMetrics) 
+            metricsTimer.start();
+        boardPanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "metrics");
+        boardPanel.getActionMap().put("metrics", new AbstractAction() 
+        {
+            public void actionPerformed(ActionEvent evt) 
+            {
+                setShowMetrics(!showMetrics);
+            }
+        });
+        boardPanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "play");
+        boardPanel.getActionMap().put("play", new AbstractAction() 
+        {
+            public void actionPerformed(ActionEvent evt) 
+            {
+                autoPlay.setPlaying(!autoPlay.isPlaying());
+            }
+        });
+        suggestBtn.addActionListener(evt -> 
+        {
+            restartSearch();
+            if (suggestBtn.isSelected()) 
+                searchTimer.start();
+            else 
+                searchTimer.stop();
+            updateMoveNumberLabel();
+            boardPanel.repaint();
+        });
 
         // add window listener for save-on-close
         frame.addWindowListener(new WindowAdapter() 
@@ -324,7 +493,7 @@ public class GoBoard
             {
                 if (!viewOnly) 
                 {
-                    if (history.size() >= 11) 
+                    if (engine.historySize() >= 11) 
                     {
                         int result = JOptionPane.showConfirmDialog(frame, "Save board?", "Save Board", JOptionPane.YES_NO_CANCEL_OPTION);
                         if (result == JOptionPane.YES_OPTION) 
@@ -332,82 +501,126 @@ public class GoBoard
                             String name = JOptionPane.showInputDialog(frame, "Enter a name for this board:", "Board " + System.currentTimeMillis());
                             if (name != null && !name.trim().isEmpty()) 
                             {
-                                saveBoardToFile(name.trim());
+                                saveBoardToFile(name.trim(), true);
                                 frame.dispose();
                             }
                         } 
                         else if (result == JOptionPane.NO_OPTION) 
                         {
+                            discardJournal();
                             frame.dispose();
                         } // else (cancel) do nothing
                     } 
                     else 
                     {
+                        discardJournal();
                         frame.dispose();
                     }
                 } 
-                else 
+                else if (saveVariations()) 
                 {
                     frame.dispose();
                 }
                 openBoards.remove(GoBoard.this);
             }
+
+            public void windowClosed(WindowEvent evt) 
+            {
+                autoPlay.setPlaying(false);
+                searchTimer.stop();
+                metricsTimer.stop();
+                influence.shutdown();
+                if (search != null) 
+                    search.stop();
+            }
         });
     }
 
 	// update every move
     private void updateBanners() 
     {
-        blackBanner.setText(" Black Captures: " + blackCaptures + " ");
-        whiteBanner.setText(" White Captures: " + whiteCaptures + " ");
+        ScoreEstimator.Score score = scorer.score(engine.copyBoard(), engine.getBlackCaptures(), engine.getWhiteCaptures(), komi, areaScoring);
+        blackBanner.setText(" Black Captures: " + engine.getBlackCaptures() + "   Score: " + ScoreEstimator.Score.format(score.black()) + " ");
+        whiteBanner.setText(" White Captures: " + engine.getWhiteCaptures() + "   Score: " + ScoreEstimator.Score.format(score.white()) + " ");
+        blackBanner.setToolTipText(score.result() + (areaScoring ? ", area" : ", territory") + " scoring, komi " + ScoreEstimator.Score.format(komi));
+        whiteBanner.setToolTipText(blackBanner.getToolTipText());
     }
 
 	// update every move
     private void updateMoveNumberLabel() 
     {
-        moveNumberLabel.setText("Move: " + historyIndex);
+        String text = "Move: " + engine.getHistoryIndex();
+        if (openingMoves != null) 
+            text += "   in " + openingGames + (openingGames == 1 ? " saved game" : " saved games");
+        BoardState state = engine.getState(engine.getHistoryIndex());
+        if (state.parent != null && state.parent.variations.length > 1) 
+        {
+            BoardState[] siblings = state.parent.variations;
+            text += "   variation " + (Arrays.asList(siblings).indexOf(state) + 1) + " of " + siblings.length;
+        }
+        if (search != null) // how fast the suggestions are being worked out
+            text += String.format("   %,d playouts (%,.0f/s)", search.playouts(), search.playoutsPerSecond());
+        moveNumberLabel.setText(text);
+    }
+
+	// the position on the board changed: start the suggestions over and bring the heatmap up to date
+    private void positionChanged() 
+    {
+        restartSearch();
+        if (openingMoves != null) 
+            refreshOpenings();
+        if (showInfluence || openingMoves != null || variationsShown || engine.variations(engine.getHistoryIndex()).length > 1) 
+            boardPanel.repaint(); // these cover the whole board
+    }
+
+    // look the position up in the opening tree, a few microseconds
+    private void refreshOpenings() 
+    {
+        Bitboard board = engine.copyBoard();
+        OpeningTree tree = OpeningTree.get();
+        openingMoves = tree.continuations(board);
+        openingGames = tree.frequency(board);
+        updateMoveNumberLabel();
     }
 
-	// make sure saved
-    private void saveHistory() 
+	// throw away the search of the old position, and start one on the new position if suggestions are on
+    private void restartSearch() 
     {
-        int[][] boardCopy = new int[SIZE][SIZE];
-        for (int i = 0; i < SIZE; i++)
-            System.arraycopy(board[i], 0, boardCopy[i], 0, SIZE);
-        if (historyIndex < history.size() - 1) 
+        if (search != null) 
+            search.stop();
+        search = null;
+        if (suggestBtn.isSelected() && !autoPlay.isPlaying()) 
         {
-            history = history.subList(0, historyIndex + 1);
+            search = new MoveSearch(engine, komi);
+            search.start(); // on the search threads, which move over from the old position
         }
-        history.add(new BoardState(boardCopy, blackTurn, blackCaptures, whiteCaptures, lastMoveX, lastMoveY));
-        historyIndex = history.size() - 1;
     }
-	
+
+	// get ready for auto play to show move idx: the heatmap is worked out in the background ahead of it
+    private void prefetch(int idx) 
+    {
+        if (showInfluence && idx < engine.historySize()) 
+            influence.prefetch(engine.getState(idx).hash, engine.boardAt(idx));
+    }
+
 	// when opening old boards
     private void jumpToMove(int idx) 
     {
-        if (idx < 0 || idx >= history.size()) 
+        if (idx < 0 || idx >= engine.historySize()) 
 			return;
 			
-        BoardState state = history.get(idx);
-        for (int i = 0; i < SIZE; i++)
-            System.arraycopy(state.board[i], 0, board[i], 0, SIZE);
-        blackTurn = state.blackTurn;
-        blackCaptures = state.blackCaptures;
-        whiteCaptures = state.whiteCaptures;
-        lastMoveX = state.lastMoveX;
-        lastMoveY = state.lastMoveY;
-        historyIndex = idx;
+        engine.jumpToMove(idx);
         updateBanners();
         updateMoveNumberLabel();
-        boardPanel.repaint();
+        positionChanged();
+        boardPanel.repaintChanges();
     }
 
 	// update the move slider
     private void updateSlider() 
     {
-        moveSlider.setMaximum(history.size() - 1);
-        moveSlider.setValue(historyIndex);
-        moveSlider.setLabelTable(moveSlider.createStandardLabels(1));
+        moveSlider.setMaximum(engine.historySize() - 1);
+        moveSlider.setValue(engine.getHistoryIndex());
     }
 
 	// full settings code
@@ -417,35 +630,28 @@ public class GoBoard
 
         // tab to delete board 
         JPanel deletePanel = new JPanel(new BorderLayout());
-        File dir = new File("saved_boards");
-        File[] files = dir.exists() ? dir.listFiles((d, name) -> name.endsWith(".goboard")) : new File[0];
-        DefaultListModel<String> model = new DefaultListModel<>();
-        if (files != null) for (File f : files) model.addElement(f.getName().replace(".goboard", ""));
-        JList<String> boardList = new JList<>(model);
-        JScrollPane scrollPane = new JScrollPane(boardList);
+        BoardBrowser browser = new BoardBrowser(); // from the catalog, no folder listing
         JButton deleteBtn = new JButton("Delete Selected Board");
-        deletePanel.add(scrollPane, BorderLayout.CENTER);
+        deletePanel.add(browser, BorderLayout.CENTER);
         deletePanel.add(deleteBtn, BorderLayout.SOUTH);
         
         // button action listener
         deleteBtn.addActionListener(evt -> 
         {
-            String selected = boardList.getSelectedValue();
+            String selected = browser.getSelectedName();
             if (selected != null) 
             {
                 int confirm = JOptionPane.showConfirmDialog(frame, "Are you sure you want to delete '" + selected + "'?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) 
                 {
-                    File f = new File("saved_boards", selected + ".goboard");
-                    if (f.exists() && f.delete()) 
+                    // marked deleted in its pack, after any save of it still waiting
+                    BoardSaver.get().delete(selected, ex -> 
                     {
-                        JOptionPane.showMessageDialog(frame, "Board deleted.");
-                        model.removeElement(selected);
-                    } 
-                    else 
-                    {
-                        JOptionPane.showMessageDialog(frame, "Failed to delete board.");
-                    }
+                        if (ex == null) 
+                            JOptionPane.showMessageDialog(frame, "Board deleted.");
+                        else 
+                            JOptionPane.showMessageDialog(frame, "Failed to delete board: " + ex.getMessage());
+                    });
                 }
             }
         });
@@ -467,9 +673,29 @@ public class GoBoard
         }
         tabbedPane.addTab("Change Board Color", colorPanel);
 
+        // tab for the rules the banners count by, this board only
+        JPanel scoringPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        ButtonGroup rulesGroup = new ButtonGroup();
+        JRadioButton areaBtn = new JRadioButton("Area (stones and territory)", areaScoring);
+        JRadioButton territoryBtn = new JRadioButton("Territory (territory and prisoners)", !areaScoring);
+        rulesGroup.add(areaBtn);
+        rulesGroup.add(territoryBtn);
+        JSpinner komiSpinner = new JSpinner(new SpinnerNumberModel(komi, -50.0, 50.0, 0.5));
+        JPanel komiPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        komiPanel.add(new JLabel("Komi:"));
+        komiPanel.add(komiSpinner);
+        scoringPanel.add(areaBtn);
+        scoringPanel.add(territoryBtn);
+        scoringPanel.add(komiPanel);
+        tabbedPane.addTab("Scoring", scoringPanel);
+
         int result = JOptionPane.showConfirmDialog(frame, tabbedPane, "Settings", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
         if (result == JOptionPane.OK_OPTION) 
         {
+            areaScoring = areaBtn.isSelected();
+            komi = ((Number) komiSpinner.getValue()).doubleValue();
+            updateBanners();
+            restartSearch(); // komi changes who is winning
             for (int i = 0; i < colorButtons.length; i++) 
             {
                 if (colorButtons[i].isSelected()) 
@@ -489,66 +715,93 @@ public class GoBoard
 	// the actual board
     class GoBoardPanel extends JPanel 
     {
-        private final int MARGIN = 40; // increased margin to accommodate labels
-        private final int GRID_SIZE = 32; // individual grid size
-        private final int STONE_SIZE = 24; // individual stone size
+        // everything scales with the grid, these are the sizes at the original 32 pixel grid
+        private final int BASE_GRID = 32; // grid size the proportions below are taken from
+        private final double MARGIN = 40.0 / BASE_GRID; // margin around the grid, room for the labels
+        private final double STONE = 24.0 / BASE_GRID; // stone diameter
         private final String[] LETTERS = {"A", "B", "C", "D", "E", "F", "G", "H", "J", "K", "L", "M", "N", "O", "P", "Q", "R", "S", "T"}; // skipped 'I', traditional Go coords
+        private final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 14); // coordinates, at BASE_GRID
+        private final Font NUMBER_FONT = new Font("Arial", Font.BOLD, 12); // move number on the last stone, at BASE_GRID
+        private final Font METRICS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11); // performance overlay, in board pixels
         private int hoverX = -1, hoverY = -1; // to store hover coordinates, have hover effect
 
+        // current geometry, worked out from the panel size
+        private int gridSize = BASE_GRID; // distance between lines
+        private int stoneSize = 24; // stone diameter
+        private int originX, originY; // where the top left line crossing is
+        private Font numberFont = NUMBER_FONT; // NUMBER_FONT at the current grid size
+        private Font deviceNumberFont = NUMBER_FONT; // numberFont in device pixels, for drawing into the layers and overlays
+        private Font metricsFont = METRICS_FONT; // METRICS_FONT in device pixels
+
+        // cached layers: the empty board (color, grid, labels, star points) and the stones on top of it
+        private java.awt.image.BufferedImage boardLayer, stoneLayer;
+        private Color layerColor; // board color the board layer was drawn with
+        private double layerScale; // device pixels per board pixel the layers were drawn at
+        private final int[][] drawn = new int[boardSize][boardSize]; // stone drawn in each cell of the stone layer
+        private int markX = -1, markY = -1, markNumber = -1; // move number drawn in the stone layer
+
         public GoBoardPanel() 
         {
-            setPreferredSize(new Dimension(MARGIN * 2 + GRID_SIZE * (SIZE - 1), MARGIN * 2 + GRID_SIZE * (SIZE - 1)));
+            // about two thirds of the screen height, never smaller than the original board
+            int grid = BASE_GRID;
+            if (!GraphicsEnvironment.isHeadless()) 
+                grid = Math.max(BASE_GRID, (int) (Toolkit.getDefaultToolkit().getScreenSize().height * 0.68 / (boardSize - 1 + 2 * MARGIN)));
+            int side = (int) Math.ceil(grid * (boardSize - 1 + 2 * MARGIN));
+            setPreferredSize(new Dimension(side, side));
             
             addMouseListener(new MouseAdapter() 
             {
                 // overrides
                 public void mouseClicked(MouseEvent evt) 
                 {
-                    if (viewOnly) return;
-                    if (historyIndex != history.size() - 1) 
+                    long start = System.nanoTime();
+                    if (markingDead) 
                     {
-                        moveSlider.setValue(history.size() - 1); // Always go to latest move if user clicks
+                        layoutBoard();
+                        int x = Math.round((float)(evt.getX() - originX) / gridSize);
+                        int y = Math.round((float)(evt.getY() - originY) / gridSize);
+                        if (x >= 0 && x < boardSize && y >= 0 && y < boardSize && scorer.toggleDead(engine.copyBoard(), x, y)) 
+                        {
+                            updateBanners();
+                            repaintChanges();
+                        }
                         return;
                     }
-                    int x = Math.round((float)(evt.getX() - MARGIN) / GRID_SIZE);
-                    int y = Math.round((float)(evt.getY() - MARGIN) / GRID_SIZE);
-                    if (x >= 0 && x < SIZE && y >= 0 && y < SIZE && board[x][y] == 0) 
+                    // playing anywhere but the end of the line branches off a variation, saved boards too
+                    layoutBoard();
+                    int x = Math.round((float)(evt.getX() - originX) / gridSize);
+                    int y = Math.round((float)(evt.getY() - originY) / gridSize);
+                    if (x >= 0 && x < boardSize && y >= 0 && y < boardSize && engine.stoneAt(x, y) == 0) 
                     {
-                        int color = blackTurn ? 1 : 2;
+                        int color = engine.isBlackTurn() ? 1 : 2;
                         
                         // check if move is valid - remember, you cannot place in a "suicide" spot- capturing yourself
-                        if (!isValidMove(x, y, color)) 
+                        // and you cannot bring back a position that was already on the board (ko)
+                        int check = engine.checkMove(x, y, color);
+                        if (check != GoEngine.LEGAL) 
                         {
-                            JOptionPane.showMessageDialog(frame, "Invalid move (suicide).", "Invalid Move", JOptionPane.ERROR_MESSAGE);
+                            String reason = check == GoEngine.KO ? "Invalid move (ko)." : "Invalid move (suicide).";
+                            JOptionPane.showMessageDialog(frame, reason, "Invalid Move", JOptionPane.ERROR_MESSAGE);
                             return; // invalid move, don't place stone
                         }
                         
-                        // place the stone
-                        board[x][y] = color;
-                        lastMoveX = x;
-                        lastMoveY = y;
-                        lastMoveColor = color;
-                        
-                        // remove captured stones
-                        int captured = removeCapturedStones(x, y, 3 - color);
-                        if (color == 1) blackCaptures += captured;
-                        else whiteCaptures += captured;
+                        // place the stone and remove captured stones
+                        autoPlay.setPlaying(false); // a move of their own stops the game playing itself
+                        engine.play(x, y, color);
+                        scorer.clearDead(); // marks were for the position before this move
                         
                         updateBanners();
-                        blackTurn = !blackTurn;
-                        saveHistory();
-                        updateSlider();
+                        positionChanged();
+                        updateSlider(); // the line may run on past the move, down a variation played before
                         updateMoveNumberLabel();
-                        moveSlider.setValue(history.size() - 1); // for slider, always go to latest move after a move
-                        repaint();
+                        repaintChanges();
+                        moveTimes.add(System.nanoTime() - start);
                     }
                 }
 
                 public void mouseExited(MouseEvent evt) 
                 {
-                    hoverX = -1;
-                    hoverY = -1;
-                    repaint();
+                    setHover(-1, -1);
                 }
             });
 
@@ -557,268 +810,766 @@ public class GoBoard
             {
                 public void mouseMoved(MouseEvent evt) 
                 {
-                    if (viewOnly) return;
+                    if (markingDead) return;
 
-                    int x = Math.round((float)(evt.getX() - MARGIN) / GRID_SIZE);
-                    int y = Math.round((float)(evt.getY() - MARGIN) / GRID_SIZE);
+                    layoutBoard();
+                    int x = Math.round((float)(evt.getX() - originX) / gridSize);
+                    int y = Math.round((float)(evt.getY() - originY) / gridSize);
 
-                    if (x >= 0 && x < SIZE && y >= 0 && y < SIZE && board[x][y] == 0) 
-                    {
-                        hoverX = x;
-                        hoverY = y;
-                    } 
+                    if (x >= 0 && x < boardSize && y >= 0 && y < boardSize && engine.stoneAt(x, y) == 0) 
+                        setHover(x, y);
                     else 
-                    {
-                        hoverX = -1;
-                        hoverY = -1;
-                    }
-                    repaint();
+                        setHover(-1, -1);
                 }
             });
         }
 
-		// graw the actual board and stones and coordinates
+        // move the hover stone, repainting only the two cells involved
+        void setHover(int x, int y) 
+        {
+            if (x == hoverX && y == hoverY) 
+                return;
+            repaintCell(hoverX, hoverY);
+            hoverX = x;
+            hoverY = y;
+            repaintCell(hoverX, hoverY);
+        }
+
+        // repaint the cells whose stones or move number no longer match the engine
+        void repaintChanges() 
+        {
+            for (int i = 0; i < boardSize; i++) 
+                for (int j = 0; j < boardSize; j++) 
+                    if (drawn[i][j] != cellAt(i, j)) 
+                        repaintCell(i, j);
+            int[] mark = currentMark();
+            if (mark[0] != markX || mark[1] != markY || mark[2] != markNumber) 
+            {
+                repaintCell(markX, markY);
+                repaintCell(mark[0], mark[1]);
+            }
+            repaintCell(hoverX, hoverY); // the hover color follows the turn
+        }
+
+        // what the stone layer shows at x, y: the stone, 4 if it is marked dead, and the territory owner times 8 while marking
+        private int cellAt(int x, int y) 
+        {
+            int cell = engine.stoneAt(x, y);
+            if (cell != 0 && scorer.isDead(x, y)) 
+                cell |= 4;
+            if (markingDead) 
+                cell |= scorer.ownerAt(x, y) << 3;
+            return cell;
+        }
+
+        private void repaintCell(int x, int y) 
+        {
+            if (x >= 0 && y >= 0) 
+                repaint(originX + x * gridSize - gridSize / 2, originY + y * gridSize - gridSize / 2, gridSize, gridSize);
+        }
+
+        // x, y and number of the move to mark, -1s when there is none
+        private int[] currentMark() 
+        {
+            int historyIndex = engine.getHistoryIndex();
+            if (historyIndex > 0 && diagramNumbers == null) 
+            {
+                BoardState state = engine.getState(historyIndex);
+                if (state.lastMoveX >= 0) 
+                    return new int[] {state.lastMoveX, state.lastMoveY, historyIndex};
+            }
+            return new int[] {-1, -1, -1};
+        }
+
+        // fit the grid to the panel, centred, keeping the original proportions
+        private void layoutBoard() 
+        {
+            int w = getWidth(), h = getHeight();
+            int grid = Math.max(4, (int) (Math.min(w, h) / (boardSize - 1 + 2 * MARGIN)));
+            if (grid == gridSize && originX == (w - grid * (boardSize - 1)) / 2 && originY == (h - grid * (boardSize - 1)) / 2) 
+                return;
+            gridSize = grid;
+            stoneSize = (int) Math.round(grid * STONE);
+            originX = (w - grid * (boardSize - 1)) / 2;
+            originY = (h - grid * (boardSize - 1)) / 2;
+            numberFont = NUMBER_FONT.deriveFont(NUMBER_FONT.getSize2D() * grid / BASE_GRID);
+        }
+
+		// draw the actual board and stones and coordinates from the cached layers
         protected void paintComponent(Graphics g) 
         {
+            long start = System.nanoTime();
+            Metrics.PaintEvent event = new Metrics.PaintEvent();
+            event.begin();
             super.paintComponent(g);
             Graphics2D g2 = (Graphics2D) g;
+            int w = getWidth(), h = getHeight();
+            java.awt.geom.AffineTransform transform = g2.getTransform();
+            double scale = transform.getScaleX(); // above 1 on high-DPI screens, so the layers are made in device pixels
+            if (boardLayer == null || layerScale != scale || boardLayer.getWidth() != (int) Math.ceil(w * scale) 
+                || boardLayer.getHeight() != (int) Math.ceil(h * scale)) 
+            {
+                layoutBoard();
+                layerScale = scale;
+                deviceNumberFont = numberFont.deriveFont((float) (numberFont.getSize2D() * scale));
+                metricsFont = METRICS_FONT.deriveFont((float) device(METRICS_FONT.getSize2D()));
+                boardLayer = newLayer(w, h, scale, java.awt.image.BufferedImage.TYPE_INT_RGB);
+                stoneLayer = newLayer(w, h, scale, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+                layerColor = null;
+                for (int[] column : drawn) 
+                    Arrays.fill(column, 0);
+                markX = markY = markNumber = -1;
+            }
+            if (!boardColor.equals(layerColor)) 
+            {
+                layerColor = boardColor;
+                drawBoardLayer(w, h);
+            }
+            updateStoneLayer();
+
+            // copy pixel for pixel, no scaling on the way
+            g2.setTransform(java.awt.geom.AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+            g2.drawImage(boardLayer, 0, 0, null);
+            if (showInfluence) 
+                drawInfluence(g2);
+            g2.drawImage(stoneLayer, 0, 0, null);
+            BoardState[] variations = frame != null ? engine.variations(engine.getHistoryIndex()) : BoardState.NO_STATES; // not in pictures
+            variationsShown = variations.length > 1;
+            if (variationsShown) 
+                drawVariations(g2, variations);
+            if (openingMoves != null) 
+                drawOpenings(g2);
+            if (search != null) 
+                drawSuggestions(g2);
+
+            // draw faint stone on hover
+            if (hoverX != -1 && hoverY != -1) 
+            {
+                java.awt.image.BufferedImage sprite = StoneSprites.get(engine.isBlackTurn() ? 1 : 2, device(stoneSize));
+                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f)); // 50% transparent
+                g2.drawImage(sprite, device(originX + hoverX * gridSize) - sprite.getWidth() / 2, device(originY + hoverY * gridSize) - sprite.getHeight() / 2, null);
+                g2.setComposite(AlphaComposite.SrcOver);
+            }
+            if (showMetrics) 
+                drawMetrics(g2);
+            g2.setTransform(transform);
+
+            event.end();
+            if (event.shouldCommit()) 
+            {
+                event.boardSize = boardSize;
+                event.stones = Metrics.stones(engine.copyBoard());
+                event.historySize = engine.historySize();
+                event.width = w;
+                event.height = h;
+                event.commit();
+            }
+            lastPaintNanos = System.nanoTime() - start;
+            averagePaintNanos = averagePaintNanos == 0 ? lastPaintNanos : averagePaintNanos * 0.9 + lastPaintNanos * 0.1;
+        }
+
+        // where the performance overlay goes, in the top left corner over the coordinates
+        private Rectangle metricsBounds() 
+        {
+            return new Rectangle(4, 4, 250, 62);
+        }
+
+        void repaintMetrics() 
+        {
+            Rectangle r = metricsBounds();
+            repaint(r.x, r.y, r.width, r.height);
+        }
+
+        // paint time of the last frame, click to board updated for recent moves, and the history's heap
+        private void drawMetrics(Graphics2D g2) 
+        {
+            Rectangle r = metricsBounds();
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setColor(new Color(0, 0, 0, 170));
+            g2.fillRect(device(r.x), device(r.y), device(r.width), device(r.height));
+            g2.setColor(Color.WHITE);
+            g2.setFont(metricsFont);
+            String[] lines = 
+            {
+                String.format("paint %.2f ms (avg %.2f)", lastPaintNanos / 1e6, averagePaintNanos / 1e6),
+                moveTimes.size() == 0 ? "move  -" 
+                    : String.format("move  p50 %.2f  p99 %.2f ms", moveTimes.percentile(50) / 1e6, moveTimes.percentile(99) / 1e6),
+                String.format("history %,d KB, line of %,d", engine.historyBytes() >> 10, engine.historySize()),
+                Metrics.isRecording() ? "recording (Settings to save)" : "not recording"
+            };
+            for (int i = 0; i < lines.length; i++) 
+                g2.drawString(lines[i], device(r.x + 6), device(r.y + 14 + i * 14));
+        }
+
+        // the heatmap for the position on the board, one pixel per point scaled up smoothly so each pixel centres on its point
+        private void drawInfluence(Graphics2D g2) 
+        {
+            long hash = engine.getState(engine.getHistoryIndex()).hash;
+            java.awt.image.BufferedImage map = influence.request(hash, engine::copyBoard);
+            if (map == null || map.getWidth() != boardSize) 
+                return; // not worked out yet
+            Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            int left = device(originX - gridSize / 2.0), top = device(originY - gridSize / 2.0);
+            int side = device(gridSize * boardSize);
+            g2.drawImage(map, left, top, side, side, null);
+            if (interpolation != null) 
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+
+        // the moves played from here when there is more than one, lettered in the order they were played,
+        // the one the line goes on with in dark; clicking one follows it
+        private void drawVariations(Graphics2D g2, BoardState[] variations) 
+        {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setFont(deviceNumberFont);
+            FontMetrics fm = g2.getFontMetrics();
+            int d = device(stoneSize * 0.6);
+            int idx = engine.getHistoryIndex();
+            BoardState line = idx + 1 < engine.historySize() ? engine.getState(idx + 1) : null;
+            for (int i = 0; i < variations.length; i++) 
+            {
+                BoardState v = variations[i];
+                if (v.moveColor == 0) 
+                    continue; // passing is not drawn
+                int cx = device(originX + v.lastMoveX * gridSize);
+                int cy = device(originY + v.lastMoveY * gridSize);
+                g2.setColor(v == line ? new Color(60, 60, 60, 210) : new Color(210, 110, 30, 200));
+                g2.fillOval(cx - d / 2, cy - d / 2, d, d);
+                g2.setColor(Color.WHITE);
+                String letter = String.valueOf((char) ('A' + i % 26));
+                g2.drawString(letter, cx - fm.stringWidth(letter) / 2, cy + fm.getAscent() / 2 - device(2.0 * gridSize / BASE_GRID));
+            }
+        }
+
+        // the moves saved games played from here, with how many played each
+        private void drawOpenings(Graphics2D g2) 
+        {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setFont(deviceNumberFont);
+            FontMetrics fm = g2.getFontMetrics();
+            int d = device(stoneSize * 0.8);
+            for (OpeningTree.Continuation c : openingMoves) 
+            {
+                int cx = device(originX + c.x * gridSize);
+                int cy = device(originY + c.y * gridSize);
+                g2.setColor(new Color(140, 60, 170, 180));
+                g2.fillRoundRect(cx - d / 2, cy - d / 2, d, d, d / 3, d / 3);
+                g2.setColor(Color.WHITE);
+                String count = String.valueOf(c.count);
+                g2.drawString(count, cx - fm.stringWidth(count) / 2, cy + fm.getAscent() / 2 - device(2.0 * gridSize / BASE_GRID));
+            }
+        }
+
+        // the best few moves with their win rates, the best in blue
+        private void drawSuggestions(Graphics2D g2) 
+        {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setFont(deviceNumberFont);
+            FontMetrics fm = g2.getFontMetrics();
+            int d = device(stoneSize);
+            boolean best = true;
+            for (MoveSearch.Candidate c : search.candidates(5)) 
+            {
+                if (c.x < 0) 
+                    continue; // passing is not drawn
+                int cx = device(originX + c.x * gridSize);
+                int cy = device(originY + c.y * gridSize);
+                g2.setColor(best ? new Color(40, 110, 220, 190) : new Color(40, 160, 90, 170));
+                g2.fillOval(cx - d / 2, cy - d / 2, d, d);
+                g2.setColor(Color.WHITE);
+                String rate = String.valueOf(Math.round(c.winRate * 100));
+                g2.drawString(rate, cx - fm.stringWidth(rate) / 2, cy + fm.getAscent() / 2 - device(2.0 * gridSize / BASE_GRID));
+                best = false;
+            }
+        }
+
+        // board pixels to layer pixels
+        private int device(double v) 
+        {
+            return (int) Math.round(v * layerScale);
+        }
+
+        private java.awt.image.BufferedImage newLayer(int w, int h, double scale, int type) 
+        {
+            return new java.awt.image.BufferedImage(Math.max(1, (int) Math.ceil(w * scale)), Math.max(1, (int) Math.ceil(h * scale)), type);
+        }
+
+        // background, coordinates, grid and star points, only redrawn when the color or size changes
+        private void drawBoardLayer(int w, int h) 
+        {
+            Graphics2D g2 = boardLayer.createGraphics();
+            g2.scale(layerScale, layerScale);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            double unit = (double) gridSize / BASE_GRID; // original pixel offsets below are multiplied by this
+            int end = gridSize * (boardSize - 1);
             
             // draw board background
             g2.setColor(boardColor);
-            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.fillRect(0, 0, w, h);
             
             // draw coordinates
             g2.setColor(Color.BLACK);
-            g2.setFont(new Font("Arial", Font.PLAIN, 14));
+            g2.setFont(LABEL_FONT.deriveFont((float) (LABEL_FONT.getSize2D() * unit)));
             FontMetrics fm = g2.getFontMetrics();
             
             // draw column letters (A-T, skipping I)
-            for (int i = 0; i < SIZE; i++) 
+            for (int i = 0; i < boardSize; i++) 
             {
                 String letter = LETTERS[i];
-                int x = MARGIN + i * GRID_SIZE;
+                int x = originX + i * gridSize;
                 // draw at top
-                g2.drawString(letter, x - fm.stringWidth(letter)/2, MARGIN - 10);
+                g2.drawString(letter, x - fm.stringWidth(letter)/2, originY - (int) (10 * unit));
                 // draw at bottom
-                g2.drawString(letter, x - fm.stringWidth(letter)/2, MARGIN + (SIZE-1) * GRID_SIZE + 25);
+                g2.drawString(letter, x - fm.stringWidth(letter)/2, originY + end + (int) (25 * unit));
             }
             
-            // draw row numbers (1-19)
-            for (int i = 0; i < SIZE; i++) 
+            // draw row numbers (1 up to the board size)
+            for (int i = 0; i < boardSize; i++) 
             {
-                String number = String.valueOf(SIZE - i);
+                String number = String.valueOf(boardSize - i);
+                int y = originY + i * gridSize + fm.getAscent()/2;
                 // draw on left
-                g2.drawString(number, MARGIN - fm.stringWidth(number) - 10, MARGIN + i * GRID_SIZE + fm.getAscent()/2);
+                g2.drawString(number, originX - fm.stringWidth(number) - (int) (10 * unit), y);
                 // draw on right
-                g2.drawString(number, MARGIN + (SIZE-1) * GRID_SIZE + 15, MARGIN + i * GRID_SIZE + fm.getAscent()/2);
+                g2.drawString(number, originX + end + (int) (15 * unit), y);
             }
             
             // draw grid lines
             g2.setColor(Color.BLACK);
-            for (int i = 0; i < SIZE; i++) 
+            g2.setStroke(new BasicStroke((float) Math.max(1, unit)));
+            for (int i = 0; i < boardSize; i++) 
             {
-                int x = MARGIN + i * GRID_SIZE;
-                g2.drawLine(MARGIN, x, MARGIN + GRID_SIZE * (SIZE - 1), x);
-                g2.drawLine(x, MARGIN, x, MARGIN + GRID_SIZE * (SIZE - 1));
+                g2.drawLine(originX, originY + i * gridSize, originX + end, originY + i * gridSize);
+                g2.drawLine(originX + i * gridSize, originY, originX + i * gridSize, originY + end);
             }
             
-            // draw star points - nine of them
-            int[] star = {3, 9, 15};
+            // draw star points - nine on 19 x 19, the corners and the centre on smaller boards
+            int edge = boardSize < 13 ? 2 : 3;
+            int[] star = {edge, boardSize / 2, boardSize - 1 - edge};
+            int r = (int) Math.round(4 * unit);
             for (int i : star) 
             {
                 for (int j : star) 
                 {
-                    int cx = MARGIN + i * GRID_SIZE;
-                    int cy = MARGIN + j * GRID_SIZE;
-                    g2.fillOval(cx - 4, cy - 4, 8, 8);
+                    if (boardSize < 19 && (i == boardSize / 2) != (j == boardSize / 2)) 
+                        continue; // no side stars
+                    int cx = originX + i * gridSize;
+                    int cy = originY + j * gridSize;
+                    g2.fillOval(cx - r, cy - r, 2 * r, 2 * r);
                 }
             }
-            
-            // draw stones and move number on the current stone
-            int currentMoveX = -1, currentMoveY = -1;
-            if (historyIndex > 0) 
-            {
-                BoardState state = history.get(historyIndex);
-                currentMoveX = state.lastMoveX;
-                currentMoveY = state.lastMoveY;
-            }
-            for (int i = 0; i < SIZE; i++) 
+            g2.dispose();
+        }
+
+        // bring the stone layer up to date, copying in sprites only for the cells that changed
+        private void updateStoneLayer() 
+        {
+            int[] mark = currentMark();
+            boolean markMoved = mark[0] != markX || mark[1] != markY || mark[2] != markNumber;
+            Graphics2D g2 = null;
+            int half = device(gridSize / 2.0);
+            for (int i = 0; i < boardSize; i++) 
             {
-                for (int j = 0; j < SIZE; j++) 
+                for (int j = 0; j < boardSize; j++) 
                 {
-                    if (board[i][j] != 0) 
+                    int cell = cellAt(i, j);
+                    int stone = cell & 3, owner = cell >> 3;
+                    boolean marked = markMoved && ((i == markX && j == markY) || (i == mark[0] && j == mark[1]));
+                    if (cell == drawn[i][j] && !marked) 
+                        continue;
+                    if (g2 == null) 
                     {
-                        int cx = MARGIN + i * GRID_SIZE;
-                        int cy = MARGIN + j * GRID_SIZE;
-                        g2.setColor(board[i][j] == 1 ? Color.BLACK : Color.WHITE);
-                        g2.fillOval(cx - STONE_SIZE / 2, cy - STONE_SIZE / 2, STONE_SIZE, STONE_SIZE);
-                        g2.setColor(Color.BLACK);
-                        g2.drawOval(cx - STONE_SIZE / 2, cy - STONE_SIZE / 2, STONE_SIZE, STONE_SIZE);
-                        // draw move number if this is the current stone
-                        if (i == currentMoveX && j == currentMoveY) 
-                        {
-                            g2.setFont(new Font("Arial", Font.BOLD, 12));
-                            g2.setColor(board[i][j] == 1 ? Color.WHITE : Color.BLACK);
-                            String num = String.valueOf(historyIndex);
-                            FontMetrics stoneFm = g2.getFontMetrics();
-                            int tx = cx - stoneFm.stringWidth(num) / 2;
-                            int ty = cy + stoneFm.getAscent() / 2 - 2;
-                            g2.drawString(num, tx, ty);
-                        }
+                        g2 = stoneLayer.createGraphics();
+                        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    }
+                    drawn[i][j] = cell;
+                    int cx = device(originX + i * gridSize);
+                    int cy = device(originY + j * gridSize);
+
+                    // clear the cell, stones never reach past it
+                    g2.setComposite(AlphaComposite.Clear);
+                    g2.fillRect(cx - half, cy - half, 2 * half, 2 * half);
+                    g2.setComposite(AlphaComposite.SrcOver);
+                    if (stone != 0) 
+                    {
+                        // dead stones fade out, they are counted as taken off
+                        java.awt.image.BufferedImage sprite = StoneSprites.get(stone, device(stoneSize));
+                        if ((cell & 4) != 0) 
+                            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.4f));
+                        g2.drawImage(sprite, cx - sprite.getWidth() / 2, cy - sprite.getHeight() / 2, null);
+                        g2.setComposite(AlphaComposite.SrcOver);
+                    }
+                    // small square of the owner's color on territory
+                    if (owner != 0) 
+                    {
+                        int square = device(gridSize / 3.0);
+                        g2.setColor(owner == 1 ? Color.BLACK : Color.WHITE);
+                        g2.fillRect(cx - square / 2, cy - square / 2, square, square);
+                    }
+                    if (stone == 0 || (cell & 4) != 0) 
+                        continue;
+                    // draw move number if this is the current stone, or every numbered stone of a diagram
+                    int number = diagramNumbers != null ? diagramNumbers[i][j] : i == mark[0] && j == mark[1] ? mark[2] : 0;
+                    if (number > 0) 
+                    {
+                        g2.setFont(deviceNumberFont);
+                        g2.setColor(stone == 1 ? Color.WHITE : Color.BLACK);
+                        String num = String.valueOf(number);
+                        FontMetrics stoneFm = g2.getFontMetrics();
+                        int tx = cx - stoneFm.stringWidth(num) / 2;
+                        int ty = cy + stoneFm.getAscent() / 2 - device(2.0 * gridSize / BASE_GRID);
+                        g2.drawString(num, tx, ty);
                     }
                 }
             }
+            markX = mark[0];
+            markY = mark[1];
+            markNumber = mark[2];
+            if (g2 != null) 
+                g2.dispose();
+        }
+    }
 
-            // draw faint stone on hover
-            if (hoverX != -1 && hoverY != -1) 
-            {
-                int cx = MARGIN + hoverX * GRID_SIZE;
-                int cy = MARGIN + hoverY * GRID_SIZE;
-                Color stoneColor = blackTurn ? Color.BLACK : Color.WHITE;
-                g2.setColor(new Color(stoneColor.getRed(), stoneColor.getGreen(), stoneColor.getBlue(), 128)); // 50% transparent
-                g2.fillOval(cx - STONE_SIZE / 2, cy - STONE_SIZE / 2, STONE_SIZE, STONE_SIZE);
-            }
+	// save the boards to a file, in the background so the window never waits on the disk
+    private void saveBoardToFile(String name) 
+    {
+        saveBoardToFile(name, false);
+    }
+
+    // closing: the board is going away, so its journal can go once the save is safely on disk
+    private void saveBoardToFile(String name, boolean closing) 
+    {
+        MoveJournal finished = closing ? journal : null;
+        BoardSaver.get().save(name, engine.getHistory(), ex -> 
+        {
+            if (ex != null) 
+                JOptionPane.showMessageDialog(null, "Failed to save board \"" + name + "\": " + ex.getMessage());
+            else if (finished != null) 
+                finished.discard(); // on failure it stays, and is offered again next time
+        });
+    }
+
+    // a saved board that had variations played on it is closing: offer to save them, false if cancelled
+    private boolean saveVariations() 
+    {
+        if (engine.statesAdded() == 0) 
+            return true;
+        int result = JOptionPane.showConfirmDialog(frame, "Save the new variations?", "Save Board", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (result == JOptionPane.YES_OPTION) 
+        {
+            String name = savedName != null ? savedName : JOptionPane.showInputDialog(frame, "Enter a name for this board:", "Board " + System.currentTimeMillis());
+            if (name == null || name.trim().isEmpty()) 
+                return false; // cancel closing if no name given
+            saveBoardToFile(name.trim());
+            return true;
         }
+        return result == JOptionPane.NO_OPTION;
     }
 
-	// when captured, remove it from the board
-    private int removeCapturedStones(int x, int y, int color) 
+    // the game was closed without saving on purpose, nothing to recover
+    private void discardJournal() 
     {
-        int totalCaptured = 0;
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        boolean[][] visited = new boolean[SIZE][SIZE];
-        for (int[] d : dirs) 
+        if (journal != null) 
+            journal.discard();
+    }
+
+    // offer back games from journals that were never closed (the program crashed or was killed)
+    static void offerRecovery(Component parent) 
+    {
+        java.util.List<MoveJournal.Unfinished> games = MoveJournal.findUnfinished();
+        if (games.isEmpty()) 
+            return;
+        String message = games.size() == 1 
+            ? "An unsaved game (" + (games.get(0).history.size() - 1) + " moves) was found from last time. Restore it?" 
+            : games.size() + " unsaved games were found from last time. Restore them?";
+        int result = JOptionPane.showConfirmDialog(parent, message + "\n(No discards them, Cancel asks again next time.)", "Restore Games", JOptionPane.YES_NO_CANCEL_OPTION);
+        for (MoveJournal.Unfinished game : games) 
         {
-            int nx = x + d[0], ny = y + d[1];
-            if (nx >= 0 && nx < SIZE && ny >= 0 && ny < SIZE && board[nx][ny] == color && !visited[nx][ny]) 
+            if (result == JOptionPane.YES_OPTION) 
             {
-                if (!hasLiberty(nx, ny, color, visited, new boolean[SIZE][SIZE])) 
+                GoBoard board = new GoBoard(game.history, false);
+                try 
                 {
-                    totalCaptured += removeGroup(nx, ny, color);
-                }
-            }
-        }
-        
-        return totalCaptured;
-    }
-
-	// check if a stone still has a liberty
-    private boolean hasLiberty(int x, int y, int color, boolean[][] visited, boolean[][] checked) 
-    {
-        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) 
-			return false;
-        if (checked[x][y]) 
-			return false;
-        checked[x][y] = true;
-        if (board[x][y] == 0) 
-			return true;
-        if (board[x][y] != color) 
-			return false;
-        visited[x][y] = true;
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        for (int[] d : dirs) 
-        {
-            int nx = x + d[0], ny = y + d[1];
-            if (nx >= 0 && nx < SIZE && ny >= 0 && ny < SIZE) 
-            {
-                if (board[nx][ny] == 0) 
-					return true;
-                if (board[nx][ny] == color && !visited[nx][ny]) 
+                    board.journal = MoveJournal.reopen(game.path);
+                    board.engine.setJournal(board.journal);
+                } 
+                catch (IOException ex) 
                 {
-                    if (hasLiberty(nx, ny, color, visited, checked)) 
-						return true;
+                    // restored, but without a journal from here on
                 }
+            } 
+            else if (result == JOptionPane.NO_OPTION) 
+            {
+                game.path.toFile().delete();
             }
         }
-        return false;
     }
 
-	// when capturing a group (aka a group has no more liberties)
-    private int removeGroup(int x, int y, int color) 
+    // the performance overlay on or off on every board
+    static void setShowMetrics(boolean show) 
     {
-        int count = 0;
-        Stack<Point> stack = new Stack<>();
-        stack.push(new Point(x, y));
-        board[x][y] = 0;
-        count++;
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        while (!stack.isEmpty()) 
+        showMetrics = show;
+        for (GoBoard gb : openBoards) 
         {
-            Point p = stack.pop();
-            for (int[] d : dirs) 
+            if (show) gb.metricsTimer.start();
+            else gb.metricsTimer.stop();
+            gb.boardPanel.repaint();
+        }
+    }
+
+    // load the old boards, returns the new view-only board or null
+    public static GoBoard loadBoardFromFile(String name) 
+    {
+        Metrics.LoadBoardEvent event = new Metrics.LoadBoardEvent();
+        event.begin();
+        try 
+        {
+            java.util.List<BoardState> loadedHistory = BoardCatalog.get().read(name);
+            if (loadedHistory != null && !loadedHistory.isEmpty()) 
             {
-                int nx = p.x + d[0], ny = p.y + d[1];
-                if (nx >= 0 && nx < SIZE && ny >= 0 && ny < SIZE && board[nx][ny] == color) 
+                GoBoard board = new GoBoard(loadedHistory, true);
+                board.savedName = name;
+                event.end();
+                if (event.shouldCommit()) 
                 {
-                    board[nx][ny] = 0;
-                    stack.push(new Point(nx, ny));
-                    count++;
+                    event.name = name;
+                    event.historySize = loadedHistory.size();
+                    BoardCatalog.Entry entry = BoardCatalog.get().entry(name);
+                    event.bytes = entry != null ? entry.length : 0;
+                    event.commit();
                 }
+                return board;
             }
+        } 
+        catch (Exception ex) 
+        {
+            JOptionPane.showMessageDialog(null, "Failed to load board: " + ex.getMessage());
         }
-        
-        return count;
+        return null;
     }
 
-	// save the boards to a file
-    private void saveBoardToFile(String name) 
+    // list the saved games that reached the position on the board, in any orientation
+    private void findPosition() 
     {
-        try 
+        PositionIndex index = PositionIndex.get();
+        java.util.List<PositionIndex.Match> matches = index.find(engine.copyBoard());
+        if (matches.isEmpty()) 
         {
-            File dir = new File("saved_boards");
-            if (!dir.exists()) dir.mkdir();
-            File file = new File(dir, name + ".goboard");
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-            out.writeObject(history);
-            out.close();
+            String note = index.isReady() ? "" : " (saved boards are still being indexed)";
+            JOptionPane.showMessageDialog(frame, "No saved game reached this position" + note + ".");
+            return;
+        }
+
+        DefaultListModel<String> model = new DefaultListModel<>();
+        for (PositionIndex.Match match : matches) model.addElement(match.name + " - move " + match.move + (match.isVariation() ? " (variation)" : ""));
+        JList<String> matchList = new JList<>(model);
+        matchList.setSelectedIndex(0);
+        JScrollPane scrollPane = new JScrollPane(matchList);
+        scrollPane.setPreferredSize(new Dimension(350, 250));
+        int result = JOptionPane.showConfirmDialog(frame, scrollPane, matches.size() + " games reached this position", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        int selected = matchList.getSelectedIndex();
+        if (result == JOptionPane.OK_OPTION && selected >= 0) 
+        {
+            PositionIndex.Match match = matches.get(selected);
+            GoBoard opened = loadBoardFromFile(match.name);
+            if (opened != null) opened.showState(match);
+        }
+    }
+
+    // go to where a saved game reached a position, down the variation it was reached in
+    private void showState(PositionIndex.Match match) 
+    {
+        BoardState state = PositionIndex.state(engine.getHistory(), match.state);
+        if (state == null) 
+        {
+            moveSlider.setValue(match.move); // changed since it was indexed
+            return;
+        }
+        int move = engine.follow(state);
+        updateSlider();
+        moveSlider.setValue(move);
+    }
+
+    // write this game out as an sgf file
+    private void exportSgf() 
+    {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("SGF files", "sgf"));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) 
+            return;
+
+        File file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".sgf")) 
+            file = new File(file.getParentFile(), file.getName() + ".sgf");
+        String name = file.getName().substring(0, file.getName().length() - 4);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) 
+        {
+            SgfWriter.write(out, engine.getHistory(), name);
         } 
         catch (IOException ex) 
         {
-            JOptionPane.showMessageDialog(null, "Failed to save board: " + ex.getMessage());
+            JOptionPane.showMessageDialog(frame, "Failed to export board: " + ex.getMessage());
         }
     }
 
-    // board state for history
-    private static class BoardState implements Serializable 
+    // draw the game into a file: 0 this move as a png, 1 a sheet of numbered diagrams, 2 the line as an animated gif
+    private void exportPicture(int kind) 
     {
-        int[][] board;
-        boolean blackTurn;
-        int blackCaptures, whiteCaptures;
-        int lastMoveX, lastMoveY;
-        BoardState(int[][] b, boolean turn, int bc, int wc, int lmx, int lmy) 
+        int last = engine.historySize() - 1;
+        int from = 0, to = last;
+        if (kind == 1) 
         {
-            board = new int[19][19];
-            for (int i = 0; i < 19; i++)
-                System.arraycopy(b[i], 0, board[i], 0, 19);
-            blackTurn = turn;
-            blackCaptures = bc;
-            whiteCaptures = wc;
-            lastMoveX = lmx;
-            lastMoveY = lmy;
+            String range = JOptionPane.showInputDialog(frame, "Moves (from-to), " + BoardImages.PER_DIAGRAM + " to a diagram:", "1-" + last);
+            if (range == null) 
+                return;
+            java.util.regex.Matcher m = java.util.regex.Pattern.compile("\\s*(\\d+)\\s*-\\s*(\\d+)\\s*").matcher(range);
+            if (!m.matches()) 
+            {
+                JOptionPane.showMessageDialog(frame, "Give the moves as from-to, like 1-" + last + ".");
+                return;
+            }
+            to = Math.min(last, Integer.parseInt(m.group(2)));
+            from = Math.max(1, Math.min(to, Integer.parseInt(m.group(1))));
         }
+        String extension = kind == 2 ? "gif" : "png";
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(kind == 2 ? "GIF images" : "PNG images", extension));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) 
+            return;
+        File chosen = chooser.getSelectedFile();
+        File file = chosen.getName().toLowerCase().endsWith("." + extension) ? chosen : new File(chosen.getParentFile(), chosen.getName() + "." + extension);
+
+        // drawn from a copy of the line, off the event thread, so the board can be played on meanwhile
+        GoEngine copy = new GoEngine(engine.getHistory().subList(0, last + 1));
+        int move = engine.getHistoryIndex(), first = from, end = to;
+        exportBtn.setEnabled(false);
+        new SwingWorker<Void, Void>() 
+        {
+            protected Void doInBackground() throws IOException 
+            {
+                if (kind == 0) 
+                    javax.imageio.ImageIO.write(BoardImages.position(copy, move, BoardImages.DEFAULT_SIDE), "png", file);
+                else if (kind == 1) 
+                    javax.imageio.ImageIO.write(BoardImages.sheet(copy, first, end, BoardImages.PER_DIAGRAM, BoardImages.DEFAULT_SIDE), "png", file);
+                else 
+                    BoardImages.animate(copy, first, end, BoardImages.DEFAULT_DELAY, BoardImages.DEFAULT_SIDE, file);
+                return null;
+            }
+
+            protected void done() 
+            {
+                exportBtn.setEnabled(true);
+                try 
+                {
+                    get();
+                } 
+                catch (Exception ex) 
+                {
+                    JOptionPane.showMessageDialog(frame, "Failed to export board: " + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+                }
+            }
+        }.execute();
     }
 
-    @SuppressWarnings("unchecked") // keeps getting warnings in terminal
-    
-    // load the old boards
-    public static void loadBoardFromFile(String name) 
+    // read every game in an sgf file into saved_boards, a single game is opened right away
+    public static void importSgf(Window parent) 
     {
-        try 
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("SGF files", "sgf"));
+        if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) 
+            return;
+        File source = chooser.getSelectedFile();
+        String baseName = source.getName().replaceFirst("(?i)\\.sgf$", "");
+
+        // big collections take a while, so read them off the event thread
+        new SwingWorker<Void, Void>() 
         {
-            File file = new File("saved_boards", name + ".goboard");
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-            java.util.List<BoardState> loadedHistory = (java.util.List<BoardState>) in.readObject();
-            in.close();
-            if (loadedHistory != null && !loadedHistory.isEmpty()) 
+            private int imported = 0, skipped = 0;
+            private java.util.List<BoardState> firstGame;
+
+            protected Void doInBackground() throws IOException 
             {
-                new GoBoard(loadedHistory, true);
+                File dir = new File("saved_boards");
+                if (!dir.exists()) dir.mkdir();
+                Map<String, java.util.List<BoardState>> batch = new LinkedHashMap<>();
+                Set<String> taken = new HashSet<>();
+                SgfReader.Replay replay = new SgfReader.Replay();
+                try (SgfReader reader = new SgfReader(new FileInputStream(source))) 
+                {
+                    while (reader.readGame(replay)) 
+                    {
+                        java.util.List<BoardState> game = replay.history();
+                        if (game == null) 
+                        {
+                            skipped++;
+                        } 
+                        else 
+                        {
+                            String name = replay.info("GN");
+                            if (name == null || name.isEmpty()) name = imported == 0 ? baseName : baseName + " " + (imported + skipped + 1);
+                            batch.put(uniqueBoardName(dir, name, taken), game);
+                            if (batch.size() >= IMPORT_BATCH) 
+                                writeBatch(batch);
+                            if (imported == 0) firstGame = game;
+                            imported++;
+                        }
+                        replay.reset();
+                    }
+                }
+                writeBatch(batch);
+                return null;
             }
-        } 
-        catch (Exception ex) 
-        {
-            JOptionPane.showMessageDialog(null, "Failed to load board: " + ex.getMessage());
-        }
+
+            // many games to a pack at once, the index is written once for them all
+            private void writeBatch(Map<String, java.util.List<BoardState>> batch) throws IOException 
+            {
+                if (batch.isEmpty()) 
+                    return;
+                BoardPack.get().write(batch);
+                for (String name : batch.keySet()) 
+                    BoardCatalog.get().update(name);
+                batch.clear();
+            }
+
+            protected void done() 
+            {
+                try 
+                {
+                    get();
+                } 
+                catch (Exception ex) 
+                {
+                    JOptionPane.showMessageDialog(parent, "Failed to import SGF: " + ex.getMessage());
+                    return;
+                }
+                if (imported == 1 && skipped == 0) 
+                {
+                    new GoBoard(firstGame, true);
+                } 
+                else 
+                {
+                    JOptionPane.showMessageDialog(parent, "Imported " + imported + " games into saved boards" + (skipped > 0 ? " (" + skipped + " skipped)." : "."));
+                }
+            }
+        }.execute();
+    }
+
+    // a saved board name that does not replace anything, taken has the names given out so far and gets this one
+    private static String uniqueBoardName(File dir, String name, Set<String> taken) 
+    {
+        name = name.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
+        if (name.length() > 100) name = name.substring(0, 100).trim();
+        if (name.isEmpty()) name = "Board";
+        String unique = name;
+        for (int i = 2; taken.contains(unique) || BoardPack.get().game(unique) != null || new File(dir, unique + ".goboard").exists(); i++) 
+            unique = name + " (" + i + ")";
+        taken.add(unique);
+        return unique;
     }
 
 	// same settings as the one before, just different places
@@ -828,35 +1579,28 @@ public class GoBoard
 
         // delete board tab
         JPanel deletePanel = new JPanel(new BorderLayout());
-        File dir = new File("saved_boards");
-        File[] files = dir.exists() ? dir.listFiles((d, name) -> name.endsWith(".goboard")) : new File[0];
-        DefaultListModel<String> model = new DefaultListModel<>();
-        if (files != null) for (File f : files) model.addElement(f.getName().replace(".goboard", ""));
-        JList<String> boardList = new JList<>(model);
-        JScrollPane scrollPane = new JScrollPane(boardList);
+        BoardBrowser browser = new BoardBrowser(); // from the catalog, no folder listing
         JButton deleteBtn = new JButton("Delete Selected Board");
-        deletePanel.add(scrollPane, BorderLayout.CENTER);
+        deletePanel.add(browser, BorderLayout.CENTER);
         deletePanel.add(deleteBtn, BorderLayout.SOUTH);
         
         // add the action listener to delete the board
         deleteBtn.addActionListener(evt -> 
         {
-            String selected = boardList.getSelectedValue();
+            String selected = browser.getSelectedName();
             if (selected != null) 
             {
                 int confirm = JOptionPane.showConfirmDialog(parent, "Are you sure you want to delete '" + selected + "'?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) 
                 {
-                    File f = new File("saved_boards", selected + ".goboard");
-                    if (f.exists() && f.delete()) 
+                    // marked deleted in its pack, after any save of it still waiting
+                    BoardSaver.get().delete(selected, ex -> 
                     {
-                        JOptionPane.showMessageDialog(parent, "Board deleted.");
-                        model.removeElement(selected);
-                    } 
-                    else 
-                    {
-                        JOptionPane.showMessageDialog(parent, "Failed to delete board.");
-                    }
+                        if (ex == null) 
+                            JOptionPane.showMessageDialog(parent, "Board deleted.");
+                        else 
+                            JOptionPane.showMessageDialog(parent, "Failed to delete board: " + ex.getMessage());
+                    });
                 }
             }
         });
@@ -879,9 +1623,37 @@ public class GoBoard
         
         tabbedPane.addTab("Change Board Color", colorPanel);
 
+        // performance tab, for when a board feels slow
+        JPanel performancePanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JCheckBox metricsBox = new JCheckBox("Show timings on the boards (F3)", showMetrics);
+        JButton recordingBtn = new JButton("Save Recording...");
+        recordingBtn.setEnabled(Metrics.isRecording());
+        recordingBtn.addActionListener(evt -> 
+        {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setSelectedFile(new File("weiqi-" + System.currentTimeMillis() + ".jfr"));
+            if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) 
+                return;
+            try 
+            {
+                Metrics.dumpRecording(chooser.getSelectedFile().toPath());
+                JOptionPane.showMessageDialog(parent, "Saved the last half hour to " + chooser.getSelectedFile().getName() + ", attach it to the bug report.");
+            } 
+            catch (IOException ex) 
+            {
+                JOptionPane.showMessageDialog(parent, "Failed to save recording: " + ex.getMessage());
+            }
+        });
+        performancePanel.add(metricsBox);
+        performancePanel.add(new JLabel(Metrics.isRecording() ? "A flight recording of the last half hour is kept." : "No flight recording is running."));
+        performancePanel.add(recordingBtn);
+        tabbedPane.addTab("Performance", performancePanel);
+
         int result = JOptionPane.showConfirmDialog(parent, tabbedPane, "Settings", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
         if (result == JOptionPane.OK_OPTION) 
         {
+            if (metricsBox.isSelected() != showMetrics) 
+                setShowMetrics(metricsBox.isSelected());
             for (int i = 0; i < colorButtons.length; i++) 
             {
                 if (colorButtons[i].isSelected()) 
@@ -898,40 +1670,4 @@ public class GoBoard
             }
         }
     }
-
-    // check if a move is valid (suicide rule)
-    private boolean isValidMove(int x, int y, int color) 
-    {
-        // create a deep copy of the board to check for suicide without side effects.
-        int[][] boardCopy = new int[SIZE][SIZE];
-        for(int i = 0; i < SIZE; i++) 
-        {
-            System.arraycopy(this.board[i], 0, boardCopy[i], 0, SIZE);
-        }
-
-        // temporarily swap `this.board` with our copy to use existing helper methods.
-        int[][] realBoard = this.board;
-        this.board = boardCopy;
-
-        // now, perform checks on this.board, (which is the copy)
-        board[x][y] = color; // place stone on copy
-
-        boolean suicide = false;
-        // we check if the stone has any liberties left with our hasliberty method
-        if (!hasLiberty(x, y, color, new boolean[SIZE][SIZE], new boolean[SIZE][SIZE])) 
-        {
-            // If not, check if placing it results in capturing opponent stones.
-            int capturedStones = removeCapturedStones(x, y, 3 - color);
-            if (capturedStones == 0) 
-            {
-                // If no stones are captured, it's a suicide move.
-                suicide = true;
-            }
-        }
-
-        /// IMPORTANT: restore the original board.
-        this.board = realBoard;
-
-        return !suicide;
-    }
 } 
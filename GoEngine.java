@@ -0,0 +1,447 @@
+// GoEngine.java
+/* The rules and the history of one game, with no Swing in sight. GoBoard
+ * draws on top of it, and the batch tools and importers run it on their
+ * own. The board is a Bitboard of any supported size, with a GoPosition
+ * working the rules out on it.
+ *
+ * The history is a tree of BoardStates (see there), and history below is
+ * the one line through it that the slider shows. Playing somewhere other
+ * than at the end of the line branches off a new variation, or follows one
+ * that was played there before, and the line then runs on down the
+ * variation last followed from that move. Either way only the part of the
+ * line below the move changes; nothing is copied or thrown away.
+ */
+
+import java.util.*;
+
+class GoEngine
+{
+    static final int DEFAULT_SIZE = 19; // 19 x 19 traditional board
+    static final int[] SIZES = {9, 13, 19}; // board sizes that can be played
+
+    // every this many moves the history keeps a full copy of the board
+    static final int KEYFRAME_INTERVAL = 32;
+
+    // results of checkMove
+    static final int LEGAL = 0, OCCUPIED = 1, SUICIDE = 2, KO = 3;
+    private static final String[] RESULTS = {"legal", "occupied", "suicide", "ko"}; // for the flight recorder
+
+    private final int size; // board width
+    private final Bitboard board; // 0: empty, 1: black, 2: white
+    private final GoPosition position; // liberties, captures and the hash, worked out on board
+    private boolean blackTurn = true; // black plays first
+    private int lastMoveX = -1, lastMoveY = -1, lastMoveColor = 0; // need to track last moves
+    private int blackCaptures = 0; // prisoners
+    private int whiteCaptures = 0; // prisoners
+    private java.util.List<BoardState> history = new ArrayList<>(); // the line of states being shown, first to last
+    private final Map<Long, Integer> seenPositions = new HashMap<>(); // hash -> first move of the line it appears at, for superko
+    private int historyIndex = 0; // move currently on the board
+    private int statesAdded = 0; // new states made since the game was loaded or reset
+    private long historyBytes = 0; // rough heap held by the history tree
+    private MoveJournal journal; // where every new state is also written, null if nowhere
+
+    // a new game on an empty 19 x 19 board
+    GoEngine()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    // a new game on an empty board of one of the SIZES
+    GoEngine(int size)
+    {
+        this.size = checkSize(size);
+        board = new Bitboard(size);
+        position = new GoPosition(board);
+        reset(null, true);
+    }
+
+    // a loaded game, positioned at its last move
+    GoEngine(java.util.List<BoardState> loadedHistory)
+    {
+        size = checkSize(loadedHistory.get(0).board.size);
+        board = new Bitboard(size);
+        position = new GoPosition(board);
+        history = new ArrayList<>(loadedHistory);
+        for (int i = 0; i < history.size(); i++)
+        {
+            BoardState state = history.get(i);
+            if (i > 0 && state.parent == null) // a plain list (old files, hand made), link it up as one line
+                history.get(i - 1).addVariation(state);
+            if (i > 0)
+                history.get(i - 1).next = state;
+            seenPositions.putIfAbsent(state.hash, i);
+        }
+        // every state in the tree, not only the line
+        ArrayDeque<BoardState> todo = new ArrayDeque<>();
+        todo.push(history.get(0));
+        while (!todo.isEmpty())
+        {
+            BoardState state = todo.pop();
+            historyBytes += state.estimatedBytes();
+            for (BoardState child : state.variations)
+                todo.push(child);
+        }
+        restoreBoard(-1, history.size() - 1);
+        restoreCounters(history.size() - 1);
+    }
+
+    static boolean isSupportedSize(int size)
+    {
+        for (int s : SIZES)
+            if (s == size)
+                return true;
+        return false;
+    }
+
+    private static int checkSize(int size)
+    {
+        if (!isSupportedSize(size))
+            throw new IllegalArgumentException("Unsupported board size " + size);
+        return size;
+    }
+
+    // from now on every state added to the history also goes to journal (null to stop)
+    void setJournal(MoveJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    // start over from setup (null for an empty board) with the given side to play
+    void reset(Bitboard setup, boolean blackToPlay)
+    {
+        if (setup == null) board.clear();
+        else board.copyFrom(setup);
+        position.rebuild();
+        blackTurn = blackToPlay;
+        lastMoveX = -1;
+        lastMoveY = -1;
+        lastMoveColor = 0;
+        blackCaptures = 0;
+        whiteCaptures = 0;
+        history = new ArrayList<>();
+        seenPositions.clear();
+        historyIndex = 0;
+        statesAdded = 0;
+        historyBytes = 0;
+        saveHistory();
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int stoneAt(int x, int y)
+    {
+        return board.get(x, y);
+    }
+
+    boolean isBlackTurn()
+    {
+        return blackTurn;
+    }
+
+    int getBlackCaptures()
+    {
+        return blackCaptures;
+    }
+
+    int getWhiteCaptures()
+    {
+        return whiteCaptures;
+    }
+
+    int getHistoryIndex()
+    {
+        return historyIndex;
+    }
+
+    int historySize()
+    {
+        return history.size();
+    }
+
+    BoardState getState(int idx)
+    {
+        return history.get(idx);
+    }
+
+    java.util.List<BoardState> getHistory()
+    {
+        return history;
+    }
+
+    // the moves played from move idx of the line, the line's own next move among them
+    BoardState[] variations(int idx)
+    {
+        return history.get(idx).variations;
+    }
+
+    // rough bytes of heap the history tree takes up, for the performance overlay
+    long historyBytes()
+    {
+        return historyBytes;
+    }
+
+    // states made by playing since the game was loaded or reset, 0 if every move only followed an old one
+    int statesAdded()
+    {
+        return statesAdded;
+    }
+
+    // a copy of the board as it is now
+    Bitboard copyBoard()
+    {
+        return board.copy();
+    }
+
+    // a copy of the board at move idx of the line, from its keyframe and the moves after it; the board in play is left alone
+    Bitboard boardAt(int idx)
+    {
+        int keyframe = idx - idx % KEYFRAME_INTERVAL;
+        Bitboard copy = history.get(keyframe).board.copy();
+        for (int i = keyframe + 1; i <= idx; i++)
+        {
+            BoardState state = history.get(i);
+            if (state.moveColor != 0) copy.set(state.lastMoveX, state.lastMoveY, state.moveColor);
+            for (int p : state.captured) copy.set(p, 0);
+        }
+        return copy;
+    }
+
+    // check if a move is valid (suicide rule and ko)
+    boolean isValidMove(int x, int y, int color)
+    {
+        return checkMove(x, y, color) == LEGAL;
+    }
+
+    // same as isValidMove, but says which rule was broken
+    int checkMove(int x, int y, int color)
+    {
+        Metrics.MoveCheckEvent event = new Metrics.MoveCheckEvent();
+        event.begin();
+        int result = check(x, y, color);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.boardSize = size;
+            event.stones = Metrics.stones(board);
+            event.historySize = history.size();
+            event.result = RESULTS[result];
+            event.commit();
+        }
+        return result;
+    }
+
+    private int check(int x, int y, int color)
+    {
+        if (board.get(x, y) != 0)
+            return OCCUPIED;
+
+        // groups are flooded on the bitboard, so no copy of the board is needed
+        if (!position.isLegal(x, y, color))
+            return SUICIDE;
+
+        // positional superko: the resulting board must not appear anywhere in the game up to here
+        Integer seen = seenPositions.get(position.hashAfter(x, y, color));
+        if (seen != null && seen <= historyIndex)
+            return KO;
+        return LEGAL;
+    }
+
+    // play for the side to move, the move must have passed checkMove
+    int play(int x, int y)
+    {
+        return play(x, y, blackTurn ? 1 : 2);
+    }
+
+    // put a stone of color down (x < 0 passes), take off what it captures and record it
+    int play(int x, int y, int color)
+    {
+        int captured = 0;
+        if (x >= 0)
+        {
+            position.place(x, y, color);
+            lastMoveX = x;
+            lastMoveY = y;
+            lastMoveColor = color;
+            captured = removeCapturedStones(x, y, 3 - color);
+        }
+        else
+        {
+            lastMoveX = -1;
+            lastMoveY = -1;
+            lastMoveColor = 0;
+        }
+        if (color == 1) blackCaptures += captured;
+        else whiteCaptures += captured;
+        blackTurn = color == 2;
+        saveHistory();
+        return captured;
+    }
+
+    // when captured, remove it from the board
+    private int removeCapturedStones(int x, int y, int color)
+    {
+        Metrics.CaptureEvent event = new Metrics.CaptureEvent();
+        event.begin();
+        int captured = position.removeCapturedStones(x, y, color);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.boardSize = size;
+            event.stones = Metrics.stones(board);
+            event.captured = captured;
+            event.commit();
+        }
+        return captured;
+    }
+
+    // make sure saved: the move becomes the next one in the line, as a new variation unless it was played from here before
+    private void saveHistory()
+    {
+        Metrics.SaveHistoryEvent event = new Metrics.SaveHistoryEvent();
+        event.begin();
+        BoardState parent = history.isEmpty() ? null : history.get(historyIndex);
+        int depth = parent == null ? 0 : historyIndex + 1;
+        BoardState state = parent == null ? null : parent.variation(lastMoveX, lastMoveY, lastMoveColor, blackTurn);
+        if (state == null)
+        {
+            // only the stone that went down and the stones that came off are kept, plus a full board every so often
+            Bitboard keyframe = depth % KEYFRAME_INTERVAL == 0 ? board : null;
+            state = new BoardState(keyframe, blackTurn, blackCaptures, whiteCaptures, lastMoveX, lastMoveY, position.hash());
+            state.moveColor = lastMoveColor;
+            state.captured = lastMoveColor == 0 ? GoPosition.NO_POINTS : position.lastCaptured();
+            if (parent != null)
+                parent.addVariation(state);
+            statesAdded++;
+            historyBytes += state.estimatedBytes() + 4; // and its place in parent's variations
+            event.newState = true;
+        }
+        if (parent != null)
+            parent.next = state;
+        if (depth >= history.size() || history.get(depth) != state)
+            relink(depth, state);
+        historyIndex = depth;
+        if (journal != null)
+            journal.append(historyIndex, state);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.boardSize = size;
+            event.stones = Metrics.stones(board);
+            event.historySize = history.size();
+            event.commit();
+        }
+    }
+
+    // swap the line from move depth on for state and whatever was last followed below it
+    private void relink(int depth, BoardState state)
+    {
+        java.util.List<BoardState> dropped = history.subList(depth, history.size());
+        for (BoardState old : dropped)
+            seenPositions.computeIfPresent(old.hash, (hash, first) -> first >= depth ? null : first);
+        dropped.clear();
+        for (BoardState s = state; s != null; s = s.next)
+        {
+            seenPositions.putIfAbsent(s.hash, history.size());
+            history.add(s);
+        }
+    }
+
+    // make the line run down to state, anywhere in the tree, and return its move number; the board stays
+    // where it is unless that part of the line changes, then it goes back to the move the variation leaves from
+    int follow(BoardState state)
+    {
+        int depth = 0;
+        for (BoardState s = state.parent; s != null; s = s.parent)
+            depth++;
+        int branch = depth;
+        BoardState first = state; // first state of the variation that is not on the line
+        while (branch >= history.size() || history.get(branch) != first)
+        {
+            first.parent.next = first;
+            first = first.parent;
+            branch--;
+        }
+        if (branch < depth)
+        {
+            if (historyIndex > branch)
+                jumpToMove(branch);
+            relink(branch + 1, first.next);
+        }
+        return depth;
+    }
+
+    // show the position after move idx
+    void jumpToMove(int idx)
+    {
+        if (idx < 0 || idx >= history.size())
+            return;
+        Metrics.JumpEvent event = new Metrics.JumpEvent();
+        event.begin();
+        int from = historyIndex;
+        restoreBoard(historyIndex, idx);
+        restoreCounters(idx);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.boardSize = size;
+            event.stones = Metrics.stones(board);
+            event.historySize = history.size();
+            event.from = from;
+            event.to = idx;
+            event.commit();
+        }
+    }
+
+    private void restoreCounters(int idx)
+    {
+        BoardState state = history.get(idx);
+        blackTurn = state.blackTurn;
+        blackCaptures = state.blackCaptures;
+        whiteCaptures = state.whiteCaptures;
+        lastMoveX = state.lastMoveX;
+        lastMoveY = state.lastMoveY;
+        lastMoveColor = state.moveColor;
+        historyIndex = idx;
+    }
+
+    // put board at move idx, stepping through deltas from move `from` or from the closest keyframe
+    private void restoreBoard(int from, int idx)
+    {
+        int keyframe = idx - idx % KEYFRAME_INTERVAL;
+        int current = from;
+        if (from < 0 || Math.abs(idx - from) > idx - keyframe)
+        {
+            board.copyFrom(history.get(keyframe).board);
+            current = keyframe;
+        }
+        // forward from the position on the board, the moves are simply played again, which keeps the groups
+        if (current == from && idx > from)
+        {
+            while (current < idx)
+            {
+                BoardState state = history.get(++current);
+                if (state.moveColor == 0)
+                    continue;
+                position.place(state.lastMoveX, state.lastMoveY, state.moveColor);
+                position.removeCapturedStones(state.lastMoveX, state.lastMoveY, 3 - state.moveColor);
+            }
+            return;
+        }
+        while (current < idx)
+        {
+            BoardState state = history.get(++current);
+            if (state.moveColor != 0) board.set(state.lastMoveX, state.lastMoveY, state.moveColor);
+            for (int p : state.captured) board.set(p, 0);
+        }
+        while (current > idx)
+        {
+            BoardState state = history.get(current--);
+            for (int p : state.captured) board.set(p, 3 - state.moveColor);
+            if (state.moveColor != 0) board.set(state.lastMoveX, state.lastMoveY, 0);
+        }
+        position.rebuild();
+    }
+}
@@ -0,0 +1,300 @@
+// GoPosition.java
+/* Rules work on a Bitboard: legality, captures and hashing. Every group
+ * on the board is kept as a bitset of its stones, joined with a few ORs
+ * when a stone connects groups. A group's liberty count is one
+ * word-parallel grow of its bitset masked with the empty points (see
+ * Bitboard.liberties), worked out when first asked for and kept until a
+ * stone comes or goes next to the group, so checking every point of a
+ * position counts each group once.
+ *
+ * The position also carries a 64-bit Zobrist hash: one random key per
+ * point and colour, xored in and out as stones come and go.
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+class GoPosition
+{
+    private static final int MAX_POINTS = Bitboard.MAX_SIZE * Bitboard.MAX_SIZE;
+    private static final long[] ZOBRIST = new long[MAX_POINTS * 2]; // black keys first, then white
+    static final int[] NO_POINTS = new int[0];
+
+    static
+    {
+        // fixed seed so hashes stay the same between runs and can be stored
+        SplittableRandom random = new SplittableRandom(0x9E3779B97F4A7C15L);
+        for (int i = 0; i < ZOBRIST.length; i++)
+            ZOBRIST[i] = random.nextLong();
+    }
+
+    private final int size; // board width
+    private final Bitboard board; // shared with the owner
+    private final int[] neighbours; // 4 per point, -1 when off the board
+    private final int[] groupOf; // group of every stone (the point its bitset is kept under), -1 when empty
+    private final long[][] groups; // stones of each group, only valid where groupOf points
+    private final int[] stones; // stone count of each group, to relabel the smaller one when joining
+    private final int[] libs; // liberty count of each group, -1 until it is asked for
+    private final long[] grown; // working bitset
+    private final int[] captured; // points removed by the last removeCapturedStones
+    private int capturedCount = 0;
+    private long hash = 0; // zobrist hash of the whole board
+
+    GoPosition(Bitboard board)
+    {
+        this.board = board;
+        this.size = board.size;
+        int points = size * size;
+        neighbours = new int[points * 4];
+        groupOf = new int[points];
+        groups = new long[points][board.words()];
+        stones = new int[points];
+        libs = new int[points];
+        grown = new long[board.words()];
+        captured = new int[points];
+        for (int x = 0; x < size; x++)
+        {
+            for (int y = 0; y < size; y++)
+            {
+                int k = (x * size + y) * 4;
+                neighbours[k] = x + 1 < size ? (x + 1) * size + y : -1;
+                neighbours[k + 1] = x > 0 ? (x - 1) * size + y : -1;
+                neighbours[k + 2] = y + 1 < size ? x * size + y + 1 : -1;
+                neighbours[k + 3] = y > 0 ? x * size + y - 1 : -1;
+            }
+        }
+        rebuild();
+    }
+
+    // zobrist key for a stone of color at point p
+    static long key(int color, int p)
+    {
+        return ZOBRIST[(color - 1) * MAX_POINTS + p];
+    }
+
+    // zobrist hash of any board, for states that were not built move by move
+    static long hashOf(Bitboard board)
+    {
+        return keysOf(board.black, 1) ^ keysOf(board.white, 2);
+    }
+
+    // xor of the keys of every point in set, as stones of color
+    private static long keysOf(long[] set, int color)
+    {
+        long h = 0;
+        for (int i = 0; i < set.length; i++)
+        {
+            for (long w = set[i]; w != 0; w &= w - 1)
+                h ^= key(color, (i << 6) + Long.numberOfTrailingZeros(w));
+        }
+        return h;
+    }
+
+    long hash()
+    {
+        return hash;
+    }
+
+    // points (x * size + y) taken off by the last removeCapturedStones
+    int[] lastCaptured()
+    {
+        return capturedCount == 0 ? NO_POINTS : Arrays.copyOf(captured, capturedCount);
+    }
+
+    // how many points the last removeCapturedStones took off, read them with capturedPoint (no copy, for playouts)
+    int capturedCount()
+    {
+        return capturedCount;
+    }
+
+    int capturedPoint(int i)
+    {
+        return captured[i];
+    }
+
+    // stones and liberties of the group with a stone at x, y
+    int groupStones(int x, int y)
+    {
+        return stones[groupOf[x * size + y]];
+    }
+
+    int groupLiberties(int x, int y)
+    {
+        return liberties(x * size + y);
+    }
+
+    // find every group again by flooding from the board, needed after the board was overwritten
+    void rebuild()
+    {
+        Arrays.fill(groupOf, -1);
+        for (int p = 0; p < size * size; p++)
+        {
+            int color = board.get(p);
+            if (color == 0 || groupOf[p] != -1)
+                continue;
+            long[] group = groups[p];
+            Arrays.fill(group, 0);
+            group[p >>> 6] = 1L << p;
+            board.flood(group, board.stones(color), grown);
+            stones[p] = label(group, p);
+            libs[p] = -1;
+        }
+        hash = hashOf(board);
+        capturedCount = 0;
+    }
+
+    // point every stone in set at group g, returns how many there were
+    private int label(long[] set, int g)
+    {
+        int count = 0;
+        for (int i = 0; i < set.length; i++)
+        {
+            for (long w = set[i]; w != 0; w &= w - 1)
+            {
+                groupOf[(i << 6) + Long.numberOfTrailingZeros(w)] = g;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // liberties of the group of the stone at q
+    private int liberties(int q)
+    {
+        int g = groupOf[q];
+        if (libs[g] < 0)
+            libs[g] = board.liberties(groups[g]);
+        return libs[g];
+    }
+
+    // the groups next to p gain or lose a liberty
+    private void touched(int p)
+    {
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            if (q >= 0 && groupOf[q] >= 0)
+                libs[groupOf[q]] = -1;
+        }
+    }
+
+    // true if color can play at x, y without committing suicide
+    boolean isLegal(int x, int y, int color)
+    {
+        int p = x * size + y;
+        if (board.get(p) != 0)
+            return false;
+
+        // an empty neighbour is a liberty, no groups needed
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            if (q >= 0 && board.get(q) == 0)
+                return true;
+        }
+
+        // p is one of the liberties of every group around it
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            if (q < 0)
+                continue;
+            int n = liberties(q);
+            // own group keeps a liberty somewhere else
+            if (board.get(q) == color && n > 1)
+                return true;
+            // opponent group loses its last liberty, so we capture
+            if (board.get(q) != color && n == 1)
+                return true;
+        }
+        return false;
+    }
+
+    // hash of the board after a legal move by color at x, y, without playing it
+    long hashAfter(int x, int y, int color)
+    {
+        int p = x * size + y;
+        long h = hash ^ key(color, p);
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            if (q < 0 || board.get(q) != 3 - color || liberties(q) != 1)
+                continue;
+            // the same group can touch p from several sides, only count it once
+            boolean seen = false;
+            for (int j = p * 4; j < k; j++)
+                if (neighbours[j] >= 0 && groupOf[neighbours[j]] == groupOf[q])
+                    seen = true;
+            if (!seen)
+                h ^= keysOf(groups[groupOf[q]], 3 - color);
+        }
+        return h;
+    }
+
+    // put a stone down and join it with its neighbours, captures are separate
+    void place(int x, int y, int color)
+    {
+        int p = x * size + y;
+        board.set(p, color);
+        hash ^= key(color, p);
+        touched(p);
+        long[] group = groups[p];
+        Arrays.fill(group, 0);
+        group[p >>> 6] = 1L << p;
+        groupOf[p] = p;
+        stones[p] = 1;
+        libs[p] = -1;
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            if (q >= 0 && board.get(q) == color && groupOf[q] != groupOf[p])
+                merge(groupOf[p], groupOf[q]);
+        }
+    }
+
+    // join two groups, the smaller one is relabelled
+    private void merge(int a, int b)
+    {
+        if (stones[a] < stones[b])
+        {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        long[] into = groups[a], from = groups[b];
+        for (int i = 0; i < into.length; i++)
+            into[i] |= from[i];
+        stones[a] += label(from, a);
+        libs[a] = -1;
+    }
+
+    // remove every group of color next to x, y that has no liberties left
+    int removeCapturedStones(int x, int y, int color)
+    {
+        int p = x * size + y;
+        capturedCount = 0;
+        long[] colorStones = board.stones(color);
+        for (int k = p * 4; k < p * 4 + 4; k++)
+        {
+            int q = neighbours[k];
+            // a group taken off through an earlier neighbour is already empty here
+            if (q < 0 || board.get(q) != color || liberties(q) > 0)
+                continue;
+            long[] group = groups[groupOf[q]];
+            for (int i = 0; i < group.length; i++)
+            {
+                for (long w = group[i]; w != 0; w &= w - 1)
+                {
+                    int s = (i << 6) + Long.numberOfTrailingZeros(w);
+                    captured[capturedCount++] = s;
+                    groupOf[s] = -1;
+                }
+                colorStones[i] &= ~group[i];
+            }
+            hash ^= keysOf(group, color);
+        }
+        for (int i = 0; i < capturedCount; i++)
+            touched(captured[i]);
+        return capturedCount;
+    }
+}
@@ -0,0 +1,212 @@
+// InfluenceMap.java
+/* Works out which colour each point leans towards, for the heatmap over
+ * the board. Influence is Bouzy's dilation and erosion (as in GNU Go's
+ * moyo estimate): stones start at +-128, each dilation lets a point grow
+ * by its like-signed neighbours as long as no opposite sign touches it,
+ * and each erosion shrinks a point by the neighbours that do not share its
+ * sign. DILATIONS / EROSIONS of 5 / 10 gives soft frameworks rather than
+ * settled territory.
+ *
+ * The overlay is one pixel per point, so drawing it is a single scaled
+ * drawImage and the smoothing between points comes from the bilinear
+ * scaling. Maps are worked out on one background thread and kept by
+ * position hash, which stays right when a history is cut back and played
+ * differently. Asking for another position cancels the one being worked
+ * out, so scrubbing the slider only ever waits for the latest position,
+ * and anything already scrubbed past is ready straight away next time.
+ * A game playing itself prefetches the positions coming up instead, queued
+ * behind each other and never cancelled, so they are there when shown.
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+class InfluenceMap
+{
+    private static final int DILATIONS = 5, EROSIONS = 10;
+    private static final int STONE = 128; // starting value of a stone
+    private static final int FULL = 24; // influence at which the shading is strongest
+    private static final int CACHE_SIZE = 2048; // overlays kept, a few KB each
+    private static final int MAX_QUEUED = 64; // prefetches waiting at most, more are dropped until the worker catches up
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "influence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Long, BufferedImage> cache = new LinkedHashMap<Long, BufferedImage>(256, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final Runnable ready; // called on the EDT when an overlay that was asked for is done
+    private Future<?> pending; // the overlay being worked out, only touched on the EDT
+    private long pendingHash;
+    private BufferedImage shown; // last overlay handed out, shown again while the next one is worked out
+    private final Set<Long> queued = new HashSet<>(); // positions prefetched and not done yet, under the cache's lock
+    private volatile long wanted; // position last asked for, prefetches of it call ready when done
+
+    InfluenceMap(Runnable ready)
+    {
+        this.ready = ready;
+    }
+
+    // the overlay for the position with this hash; if it is not ready yet it is started from board
+    // (only called when needed, on the EDT) and the last overlay is returned meanwhile
+    BufferedImage request(long hash, Supplier<Bitboard> board)
+    {
+        BufferedImage image;
+        synchronized (cache)
+        {
+            image = cache.get(hash);
+        }
+        if (image != null)
+        {
+            if (pending != null && pendingHash != hash)
+                pending.cancel(true); // scrubbed back to one we have, the other is not wanted now
+            shown = image;
+            return image;
+        }
+        wanted = hash;
+        synchronized (cache)
+        {
+            if (queued.contains(hash))
+                return shown; // on its way, ready is called when it is done
+        }
+        if (pending == null || pending.isDone() || pendingHash != hash)
+        {
+            if (pending != null)
+                pending.cancel(true);
+            Bitboard copy = board.get();
+            pendingHash = hash;
+            pending = worker.submit(() ->
+            {
+                int[] values = compute(copy);
+                if (values == null)
+                    return; // cancelled part way
+                BufferedImage made = toImage(values, copy.size);
+                synchronized (cache)
+                {
+                    cache.put(hash, made);
+                }
+                javax.swing.SwingUtilities.invokeLater(ready);
+            });
+        }
+        return shown;
+    }
+
+    // queue the overlay for a position about to be shown, behind whatever is being worked out (on the EDT)
+    void prefetch(long hash, Bitboard board)
+    {
+        synchronized (cache)
+        {
+            if (cache.containsKey(hash) || queued.size() >= MAX_QUEUED || !queued.add(hash))
+                return;
+        }
+        worker.submit(() ->
+        {
+            try
+            {
+                int[] values = compute(board);
+                if (values == null)
+                    return;
+                BufferedImage made = toImage(values, board.size);
+                synchronized (cache)
+                {
+                    cache.put(hash, made);
+                }
+                if (wanted == hash)
+                    javax.swing.SwingUtilities.invokeLater(ready);
+            }
+            finally
+            {
+                synchronized (cache)
+                {
+                    queued.remove(hash);
+                }
+            }
+        });
+    }
+
+    void shutdown()
+    {
+        worker.shutdownNow();
+    }
+
+    // influence of every point, above 0 for black and below for white; null if the thread was interrupted
+    static int[] compute(Bitboard board)
+    {
+        int size = board.size, points = size * size;
+        int[] value = new int[points], next = new int[points];
+        for (int p = 0; p < points; p++)
+        {
+            int color = board.get(p);
+            value[p] = color == 1 ? STONE : color == 2 ? -STONE : 0;
+        }
+        for (int pass = 0; pass < DILATIONS + EROSIONS; pass++)
+        {
+            if (Thread.currentThread().isInterrupted())
+                return null;
+            boolean dilate = pass < DILATIONS;
+            for (int x = 0; x < size; x++)
+            {
+                for (int y = 0; y < size; y++)
+                {
+                    int p = x * size + y, v = value[p];
+                    int plus = 0, minus = 0, zero = 0; // neighbours by sign
+                    for (int k = 0; k < 4; k++)
+                    {
+                        int nx = x + (k == 0 ? 1 : k == 1 ? -1 : 0), ny = y + (k == 2 ? 1 : k == 3 ? -1 : 0);
+                        if (nx < 0 || nx >= size || ny < 0 || ny >= size)
+                            continue;
+                        int n = value[nx * size + ny];
+                        if (n > 0) plus++;
+                        else if (n < 0) minus++;
+                        else zero++;
+                    }
+                    if (dilate)
+                    {
+                        if (v >= 0 && minus == 0) v += plus;
+                        if (v <= 0 && plus == 0) v -= minus;
+                    }
+                    else if (v > 0)
+                    {
+                        v = Math.max(0, v - minus - zero);
+                    }
+                    else if (v < 0)
+                    {
+                        v = Math.min(0, v + plus + zero);
+                    }
+                    next[p] = v;
+                }
+            }
+            int[] t = value;
+            value = next;
+            next = t;
+        }
+        return value;
+    }
+
+    // one pixel per point (x across, y down), black or white with the strength as alpha
+    static BufferedImage toImage(int[] values, int size)
+    {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < size; x++)
+        {
+            for (int y = 0; y < size; y++)
+            {
+                int v = values[x * size + y];
+                int strength = Math.min(FULL, Math.abs(v));
+                int rgb = v > 0 ? 0x000000 : 0xFFFFFF;
+                int alpha = strength * (v > 0 ? 120 : 170) / FULL; // white needs more to show on wood
+                image.setRGB(x, y, alpha << 24 | rgb);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,174 @@
+// Metrics.java
+/* What the program can tell about its own speed, for "the board feels
+ * laggy" reports. The rules, the history, painting, saving and loading
+ * send Java Flight Recorder events (category Weiqi in JDK Mission
+ * Control), each with how long it took, how full the board was and how
+ * long the history is. The window program keeps a recording of the last
+ * RECORDING_AGE running from startup, cheap enough to leave on, and the
+ * home Settings can write it out to attach to a bug report. Turn it off
+ * with -Dweiqi.recording=false.
+ *
+ * Events are only filled in and committed when a recording wants them, so
+ * with none running an instrumented call costs a couple of field writes.
+ * Samples keeps recent timings for the overlay on the board (F3).
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import jdk.jfr.*;
+
+class Metrics
+{
+    private static final Duration RECORDING_AGE = Duration.ofMinutes(30);
+    private static final long RECORDING_SIZE = 64L << 20; // bytes on disk at most
+
+    private static Recording recording;
+
+    @Name("weiqi.MoveCheck") @Label("Move Check") @Category("Weiqi") @Threshold("5 us")
+    @Description("Legality of one move: occupied, suicide and superko")
+    static class MoveCheckEvent extends Event
+    {
+        @Label("Board Size") int boardSize;
+        @Label("Stones") int stones;
+        @Label("History Size") int historySize;
+        @Label("Result") String result;
+    }
+
+    @Name("weiqi.Capture") @Label("Capture") @Category("Weiqi") @Threshold("5 us")
+    @Description("Taking off the groups a move left without liberties")
+    static class CaptureEvent extends Event
+    {
+        @Label("Board Size") int boardSize;
+        @Label("Stones") int stones;
+        @Label("Captured") int captured;
+    }
+
+    @Name("weiqi.SaveHistory") @Label("Save History") @Category("Weiqi")
+    @Description("Adding a move to the history tree and the line")
+    static class SaveHistoryEvent extends Event
+    {
+        @Label("Board Size") int boardSize;
+        @Label("Stones") int stones;
+        @Label("History Size") int historySize;
+        @Label("New State") boolean newState;
+    }
+
+    @Name("weiqi.Jump") @Label("Jump To Move") @Category("Weiqi")
+    @Description("Putting the board at another move of the line")
+    static class JumpEvent extends Event
+    {
+        @Label("Board Size") int boardSize;
+        @Label("Stones") int stones;
+        @Label("History Size") int historySize;
+        @Label("From") int from;
+        @Label("To") int to;
+    }
+
+    @Name("weiqi.Paint") @Label("Paint Board") @Category("Weiqi")
+    @Description("One paint of a board panel, layers and overlays")
+    static class PaintEvent extends Event
+    {
+        @Label("Board Size") int boardSize;
+        @Label("Stones") int stones;
+        @Label("History Size") int historySize;
+        @Label("Width") int width;
+        @Label("Height") int height;
+    }
+
+    @Name("weiqi.SaveBoard") @Label("Save Board") @Category("Weiqi")
+    @Description("Writing a board file and bringing the catalog and indexes up to date, on the saver thread")
+    static class SaveBoardEvent extends Event
+    {
+        @Label("Name") String name;
+        @Label("History Size") int historySize;
+        @Label("File Size") @DataAmount long bytes;
+    }
+
+    @Name("weiqi.LoadBoard") @Label("Load Board") @Category("Weiqi")
+    @Description("Reading a saved board and opening its window")
+    static class LoadBoardEvent extends Event
+    {
+        @Label("Name") String name;
+        @Label("History Size") int historySize;
+        @Label("File Size") @DataAmount long bytes;
+    }
+
+    // the last few timings of something, for percentiles
+    static class Samples
+    {
+        private final long[] nanos;
+        private int count;
+
+        Samples(int capacity)
+        {
+            nanos = new long[capacity];
+        }
+
+        synchronized void add(long sample)
+        {
+            nanos[count++ % nanos.length] = sample;
+        }
+
+        synchronized int size()
+        {
+            return Math.min(count, nanos.length);
+        }
+
+        // the p-th percentile (0 to 100) of the samples kept, 0 with none
+        synchronized long percentile(double p)
+        {
+            int n = size();
+            if (n == 0)
+                return 0;
+            long[] sorted = Arrays.copyOf(nanos, n);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(p / 100 * n); // nearest rank
+            return sorted[Math.max(0, Math.min(n, rank) - 1)];
+        }
+    }
+
+    // start the rolling recording, unless it was turned off; only fails quietly (no JFR in this runtime)
+    static synchronized void startRecording()
+    {
+        if (recording != null || !Boolean.parseBoolean(System.getProperty("weiqi.recording", "true")))
+            return;
+        try
+        {
+            Recording r = new Recording(Configuration.getConfiguration("default"));
+            r.setName("weiqi");
+            r.setToDisk(true);
+            r.setMaxAge(RECORDING_AGE);
+            r.setMaxSize(RECORDING_SIZE);
+            r.start();
+            recording = r;
+        }
+        catch (IOException | java.text.ParseException | RuntimeException ex)
+        {
+            // run without one
+        }
+    }
+
+    static synchronized boolean isRecording()
+    {
+        return recording != null;
+    }
+
+    // write out what the rolling recording holds, it keeps running
+    static synchronized void dumpRecording(Path file) throws IOException
+    {
+        if (recording == null)
+            throw new IOException("No recording is running");
+        recording.dump(file);
+    }
+
+    // stones on board, for the events
+    static int stones(Bitboard board)
+    {
+        int count = 0;
+        for (int i = 0; i < board.words(); i++)
+            count += Long.bitCount(board.black[i]) + Long.bitCount(board.white[i]);
+        return count;
+    }
+}
@@ -0,0 +1,316 @@
+// MoveJournal.java
+/* A write-ahead journal for a game being played, so a crash or power cut
+ * does not lose it. Every state GoEngine adds to its history is appended
+ * as one small record:
+ *
+ *   "GOJL" magic, byte version, byte board size (0 means 19), 2 bytes padding,
+ *   long creation time
+ *   per state:
+ *   int     index of the state in the history (0: the game was reset)
+ *   byte    color that moved (for index 0: who plays first)
+ *   byte    RECORD_MARK, to spot a torn or damaged record
+ *   short   point (x * size + y), -1 for a pass
+ *
+ * Because each record carries its index, going back with the slider and
+ * playing a different move needs nothing extra: replaying a record jumps
+ * back to index - 1 first and plays from there, which branches off (or
+ * follows) a variation just as it did in GoEngine.
+ *
+ * Appending only copies the record into memory. A background thread writes
+ * and forces the records out as a group, once GROUP_MOVES records are
+ * waiting or GROUP_MS after the first one, so clicking never waits on
+ * the disk. Journals live in saved_boards/journals and are deleted when
+ * their board is closed; any left at startup belong to games that never
+ * got closed, and are offered back.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class MoveJournal
+{
+    private static final byte[] MAGIC = {'G', 'O', 'J', 'L'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 8;
+    private static final byte RECORD_MARK = (byte) 0xA5;
+    private static final int GROUP_MOVES = 8; // force to disk once this many records are waiting
+    private static final long GROUP_MS = 200; // or this long after the first one
+    private static final File DIR = new File("saved_boards", "journals");
+
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "move-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<MoveJournal> open = ConcurrentHashMap.newKeySet();
+
+    static
+    {
+        // whatever is still in memory at exit goes to disk, the journals stay for next time
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            for (MoveJournal journal : open)
+                journal.flush();
+        }));
+    }
+
+    // a journal left over from an earlier run, and the game it holds
+    static class Unfinished
+    {
+        final Path path;
+        final java.util.List<BoardState> history;
+        final long created;
+
+        Unfinished(Path path, java.util.List<BoardState> history, long created)
+        {
+            this.path = path;
+            this.history = history;
+            this.created = created;
+        }
+    }
+
+    private final Path path;
+    private final int size; // board width, for the points
+    private final FileChannel channel;
+    private final FileLock lock; // held while the board is open, so recovery never takes a live journal
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * 64);
+    private boolean restart = false; // the game was reset, earlier records can go
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+
+    private MoveJournal(Path path, int size, FileChannel channel, FileLock lock)
+    {
+        this.path = path;
+        this.size = size;
+        this.channel = channel;
+        this.lock = lock;
+        open.add(this);
+    }
+
+    // a new, empty journal for a board size across
+    static MoveJournal create(int size) throws IOException
+    {
+        if (!DIR.exists()) DIR.mkdirs();
+        Path path = Files.createTempFile(DIR.toPath(), "game-", ".journal");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null)
+        {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw new IOException("Journal is in use: " + path.getFileName());
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put((byte) VERSION).put((byte) size).put(new byte[2]).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining())
+            channel.write(header);
+        channel.force(false);
+        return new MoveJournal(path, size, channel, lock);
+    }
+
+    // carry on writing to a journal that was just recovered
+    static MoveJournal reopen(Path path) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null)
+        {
+            channel.close();
+            throw new IOException("Journal is in use: " + path.getFileName());
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) { }
+        int boardSize = header.get(MAGIC.length + 1);
+        // drop a torn record at the end, if any
+        long length = channel.size();
+        channel.truncate(HEADER_SIZE + (length - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE);
+        channel.position(channel.size());
+        return new MoveJournal(path, boardSize == 0 ? GoEngine.DEFAULT_SIZE : boardSize, channel, lock);
+    }
+
+    // called by GoEngine for every state it adds to the history
+    synchronized void append(int index, BoardState state)
+    {
+        if (closed)
+            return;
+        if (index == 0)
+        {
+            // a reset starts a new game, nothing before it is needed
+            pending.clear();
+            restart = true;
+        }
+        if (pending.remaining() < RECORD_SIZE)
+        {
+            ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int color = index == 0 ? (state.blackTurn ? 1 : 2) : (state.blackTurn ? 2 : 1); // the side that just moved
+        pending.putInt(index);
+        pending.put((byte) color);
+        pending.put(RECORD_MARK);
+        pending.putShort((short) (state.lastMoveX < 0 ? -1 : state.lastMoveX * size + state.lastMoveY));
+
+        if (pending.position() >= GROUP_MOVES * RECORD_SIZE)
+        {
+            writer.execute(this::flush);
+        }
+        else if (!flushScheduled)
+        {
+            flushScheduled = true;
+            writer.schedule(this::flush, GROUP_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // write out and force whatever is waiting, on the journal thread (or at exit)
+    private void flush()
+    {
+        ByteBuffer out;
+        boolean cut;
+        synchronized (this)
+        {
+            flushScheduled = false;
+            if (closed || (pending.position() == 0 && !restart))
+                return;
+            pending.flip();
+            out = ByteBuffer.allocate(pending.remaining());
+            out.put(pending).flip();
+            pending.clear();
+            cut = restart;
+            restart = false;
+        }
+        // the disk work happens outside the lock, append never waits for it
+        synchronized (channel)
+        {
+            try
+            {
+                if (cut)
+                {
+                    channel.truncate(HEADER_SIZE);
+                    channel.position(HEADER_SIZE);
+                }
+                while (out.hasRemaining())
+                    channel.write(out);
+                channel.force(false);
+            }
+            catch (IOException ex)
+            {
+                // keep playing, the saved board is what counts; the journal is only a safety net
+            }
+        }
+    }
+
+    // the board was closed on purpose (saved or not), the journal is no longer needed
+    void discard()
+    {
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            closed = true;
+        }
+        open.remove(this);
+        writer.execute(() ->
+        {
+            try
+            {
+                synchronized (channel)
+                {
+                    lock.release();
+                    channel.close();
+                }
+                Files.deleteIfExists(path);
+            }
+            catch (IOException ex)
+            {
+                // left behind, offered once more at the next start
+            }
+        });
+    }
+
+    // journals from earlier runs that still hold a game with moves in it; empty ones are deleted
+    static java.util.List<Unfinished> findUnfinished()
+    {
+        java.util.List<Unfinished> found = new ArrayList<>();
+        File[] files = DIR.listFiles((d, name) -> name.endsWith(".journal"));
+        if (files == null)
+            return found;
+        for (File file : files)
+        {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                FileLock lock = channel.tryLock();
+                if (lock == null)
+                    continue; // open in another window of a running copy
+                ByteBuffer data = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+                while (data.hasRemaining() && channel.read(data) >= 0) { }
+                data.flip();
+                lock.release();
+                Unfinished game = replay(file.toPath(), data);
+                if (game == null || game.history.size() <= 1)
+                    Files.deleteIfExists(file.toPath());
+                else
+                    found.add(game);
+            }
+            catch (IOException | OverlappingFileLockException ex)
+            {
+                // unreadable or busy, try again next time
+            }
+        }
+        found.sort(Comparator.comparingLong(u -> u.created));
+        return found;
+    }
+
+    // rebuild the game from the records, stopping at the first damaged or impossible one
+    private static Unfinished replay(Path path, ByteBuffer data)
+    {
+        if (data.remaining() < HEADER_SIZE)
+            return null;
+        for (byte b : MAGIC)
+            if (data.get() != b)
+                return null;
+        if (data.get() != VERSION)
+            return null;
+        int size = data.get();
+        if (size == 0)
+            size = GoEngine.DEFAULT_SIZE;
+        if (!GoEngine.isSupportedSize(size))
+            return null;
+        data.position(data.position() + 2);
+        long created = data.getLong();
+
+        GoEngine engine = new GoEngine(size);
+        while (data.remaining() >= RECORD_SIZE)
+        {
+            int index = data.getInt();
+            int color = data.get();
+            byte mark = data.get();
+            int point = data.getShort();
+            if (mark != RECORD_MARK || index < 0 || index > engine.historySize() || (color != 1 && color != 2))
+                break;
+            if (index == 0)
+            {
+                engine.reset(null, color == 1);
+                continue;
+            }
+            engine.jumpToMove(index - 1);
+            if (point < 0)
+            {
+                engine.play(-1, -1, color);
+                continue;
+            }
+            int x = point / size, y = point % size;
+            if (x >= size || engine.checkMove(x, y, color) != GoEngine.LEGAL)
+                break;
+            engine.play(x, y, color);
+        }
+        return new Unfinished(path, engine.getHistory(), created);
+    }
+}
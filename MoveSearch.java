@@ -0,0 +1,458 @@
+// MoveSearch.java
+/* Suggests moves by Monte Carlo tree search, on the CPU and with no
+ * knowledge beyond the rules. Every thread repeats the same loop: walk
+ * down the tree from the position on the board, picking at each node the
+ * child with the best UCT score, then play the game out with random moves
+ * and send the winner back up the path.
+ *
+ * The tree is shared without locks. A node's visits are counted with an
+ * atomic add on the way down, before its playout is finished, so a node
+ * another thread is busy with looks like a loss for a moment (virtual
+ * loss) and the threads spread out over different moves; the wins are
+ * added on the way back up. A leaf grows its children once enough playouts
+ * have passed through it, and the first thread to set them wins.
+ *
+ * Each thread plays out on its own Playout: a Bitboard and GoPosition
+ * copied from the root, with the empty points kept in an array, so a
+ * playout allocates nothing. Playouts never fill their own eyes (which
+ * is all the "knowledge" there is), follow the suicide rule and simple ko,
+ * and are counted by area with komi once both sides pass. The moves at the
+ * root also follow GoEngine's superko rule.
+ *
+ * The threads belong to no one search. One per core is started with the
+ * first search and kept; a search that starts is handed to them and one
+ * that stops is taken away, so a new move or jump only swaps the search
+ * they work on. With several boards searching, the threads are shared out
+ * between them.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+class MoveSearch
+{
+    private static final int EXPAND_AT = 16; // playouts through a leaf before it grows children
+    private static final double EXPLORATION = 0.6; // weight of the UCT exploration term
+    private static final int MAX_PLAYOUTS = 400_000; // the search stops here, the suggestions have settled by then
+    private static final int MAX_DEPTH = 512; // moves down the tree, far more than a real search reaches
+
+    // a move at the root as the search sees it now
+    static class Candidate
+    {
+        final int x, y; // -1, -1 for a pass
+        final int visits;
+        final double winRate; // for the side to play, 0 to 1
+
+        Candidate(int x, int y, int visits, double winRate)
+        {
+            this.x = x;
+            this.y = y;
+            this.visits = visits;
+            this.winRate = winRate;
+        }
+    }
+
+    // one move in the tree; visits go up on the way down (the virtual loss), wins on the way back
+    private static final class Node
+    {
+        private static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicIntegerFieldUpdater<Node> HALF_WINS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "halfWins");
+        private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+        final int move; // point played, -1 for a pass
+        final int color; // who played it
+        volatile int visits;
+        volatile int halfWins; // wins for color, in halves so a draw counts 1
+        volatile Node[] children; // null until the node has grown them
+
+        Node(int move, int color)
+        {
+            this.move = move;
+            this.color = color;
+        }
+    }
+
+    private final int size;
+    private final Bitboard rootBoard;
+    private final int rootColor; // side to play at the root
+    private final double komi;
+    private final Node root;
+    private final LongAdder playouts = new LongAdder();
+    private volatile boolean running = false;
+    private long startNanos, stopNanos;
+
+    // a search of the position engine is at now, for the side to play, nothing runs until start
+    MoveSearch(GoEngine engine, double komi)
+    {
+        size = engine.size();
+        rootBoard = engine.copyBoard();
+        rootColor = engine.isBlackTurn() ? 1 : 2;
+        this.komi = komi;
+        root = new Node(-1, 3 - rootColor);
+
+        // the root's moves follow the game's own rules, superko included
+        Playout game = new Playout();
+        java.util.List<Node> moves = new ArrayList<>();
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                if (engine.checkMove(x, y, rootColor) == GoEngine.LEGAL && !game.isOwnEye(x * size + y, rootColor))
+                    moves.add(new Node(x * size + y, rootColor));
+        moves.add(new Node(-1, rootColor));
+        root.children = moves.toArray(new Node[0]);
+    }
+
+    // search on the background threads until stop, or until the search has settled
+    synchronized void start()
+    {
+        if (running)
+            return;
+        running = true;
+        startNanos = System.nanoTime();
+        Workers.add(this);
+    }
+
+    // take the search off the threads, they finish the playout they are on; never waits
+    void stop()
+    {
+        running = false;
+        finished();
+    }
+
+    private synchronized void finished()
+    {
+        if (stopNanos == 0)
+            stopNanos = System.nanoTime();
+        Workers.remove(this);
+    }
+
+    boolean isRunning()
+    {
+        return running && root.visits < MAX_PLAYOUTS;
+    }
+
+    // run playouts on the calling thread, for tools and benchmarks
+    void think(int count)
+    {
+        Playout game = new Playout();
+        for (int i = 0; i < count; i++)
+            iterate(game);
+    }
+
+    long playouts()
+    {
+        return playouts.sum();
+    }
+
+    // since start, up to when the search stopped
+    double playoutsPerSecond()
+    {
+        long end;
+        synchronized (this)
+        {
+            if (startNanos == 0)
+                return 0;
+            end = stopNanos != 0 ? stopNanos : System.nanoTime();
+        }
+        return end > startNanos ? playouts.sum() * 1e9 / (end - startNanos) : 0;
+    }
+
+    // the most visited root moves, best first
+    java.util.List<Candidate> candidates(int max)
+    {
+        java.util.List<Candidate> list = new ArrayList<>();
+        for (Node child : root.children)
+        {
+            int visits = child.visits;
+            if (visits > 0)
+                list.add(new Candidate(child.move < 0 ? -1 : child.move / size, child.move < 0 ? -1 : child.move % size, visits, child.halfWins / (2.0 * visits)));
+        }
+        list.sort((a, b) -> Integer.compare(b.visits, a.visits));
+        return list.size() > max ? new ArrayList<>(list.subList(0, max)) : list;
+    }
+
+    // one walk down the tree, one playout and the result back up the path
+    private void iterate(Playout game)
+    {
+        Node[] path = game.path;
+        int depth = 0;
+        game.reset();
+        Node node = root;
+        Node.VISITS.incrementAndGet(root);
+        path[depth++] = root;
+        while (depth < MAX_DEPTH && game.passes < 2)
+        {
+            Node[] children = node.children;
+            if (children == null)
+            {
+                if (node.visits < EXPAND_AT)
+                    break;
+                children = expand(node, game);
+            }
+            node = select(node, children);
+            Node.VISITS.incrementAndGet(node);
+            path[depth++] = node;
+            game.play(node.move, node.color);
+        }
+
+        int winner = game.finish(3 - node.color, komi);
+        for (int i = 0; i < depth; i++)
+        {
+            if (winner == 0)
+                Node.HALF_WINS.incrementAndGet(path[i]);
+            else if (winner == path[i].color)
+                Node.HALF_WINS.addAndGet(path[i], 2);
+            path[i] = null;
+        }
+        playouts.increment();
+    }
+
+    // the child with the best UCT score, an unvisited one first
+    private static Node select(Node parent, Node[] children)
+    {
+        double logParent = Math.log(Math.max(1, parent.visits));
+        Node best = null;
+        double bestScore = -1;
+        for (Node child : children)
+        {
+            int n = child.visits;
+            if (n == 0)
+                return child;
+            double score = child.halfWins / (2.0 * n) + EXPLORATION * Math.sqrt(logParent / n);
+            if (score > bestScore)
+            {
+                best = child;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // give node a child for every sensible move in game, or take the ones another thread got in first
+    private static Node[] expand(Node node, Playout game)
+    {
+        int color = 3 - node.color;
+        int count = 0;
+        Node[] moves = new Node[game.emptyCount + 1];
+        for (int i = 0; i < game.emptyCount; i++)
+            if (game.canPlay(game.empty[i], color))
+                moves[count++] = new Node(game.empty[i], color);
+        moves[count++] = new Node(-1, color);
+        Node[] children = Arrays.copyOf(moves, count);
+        if (Node.CHILDREN.compareAndSet(node, null, children))
+            return children;
+        return node.children;
+    }
+
+    // the search threads, one per core, started with the first search and kept for every one after
+    private static final class Workers
+    {
+        private static final java.util.List<MoveSearch> searches = new ArrayList<>(); // running, shared out between the threads
+        private static volatile int changes; // goes up whenever searches changes, so the threads look again
+        private static int started;
+        private static final int TURN = 1024; // playouts a thread runs before it takes its next turn of the searches
+
+        static synchronized void add(MoveSearch search)
+        {
+            searches.add(search);
+            changes++;
+            for (; started < Runtime.getRuntime().availableProcessors(); started++)
+            {
+                int index = started;
+                Thread thread = new Thread(() -> work(index), "move-search-" + index);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY); // clicks and painting come first
+                thread.start();
+            }
+            Workers.class.notifyAll();
+        }
+
+        static synchronized void remove(MoveSearch search)
+        {
+            if (searches.remove(search))
+                changes++;
+        }
+
+        // one thread: playouts for its share of the searches, taking turns when there are more searches
+        // than threads, and sleeping while there are none
+        private static void work(int index)
+        {
+            MoveSearch last = null;
+            Playout game = null;
+            for (int turn = index; ; turn++)
+            {
+                MoveSearch search;
+                int seen;
+                synchronized (Workers.class)
+                {
+                    if (searches.isEmpty())
+                    {
+                        last = null; // let the old tree go while sleeping
+                        game = null;
+                    }
+                    while (searches.isEmpty())
+                    {
+                        try
+                        {
+                            Workers.class.wait();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            return;
+                        }
+                    }
+                    search = searches.get(turn % searches.size());
+                    seen = changes;
+                }
+                if (search != last)
+                    game = search.new Playout();
+                last = search;
+                for (int n = 0; n < TURN && changes == seen && search.isRunning(); n++)
+                    search.iterate(game);
+                if (!search.isRunning())
+                    search.finished(); // settled, off the list if it is not already
+            }
+        }
+    }
+
+    // one thread's board for playing out, set back to the root before every playout
+    private final class Playout
+    {
+        final Bitboard board = new Bitboard(size);
+        final GoPosition position = new GoPosition(board);
+        final int[] empty = new int[size * size]; // empty points, in no order
+        final int[] where = new int[size * size]; // index of each empty point in empty, -1 for stones
+        final Node[] path = new Node[MAX_DEPTH];
+        final SplittableRandom random = new SplittableRandom();
+        int emptyCount;
+        int ko = -1; // point the side to play may not take back right now
+        int passes; // passes in a row
+
+        Playout()
+        {
+            reset();
+        }
+
+        void reset()
+        {
+            board.copyFrom(rootBoard);
+            position.rebuild();
+            emptyCount = 0;
+            for (int p = 0; p < size * size; p++)
+            {
+                where[p] = -1;
+                if (board.get(p) == 0)
+                    addEmpty(p);
+            }
+            ko = -1;
+            passes = 0;
+        }
+
+        private void addEmpty(int p)
+        {
+            where[p] = emptyCount;
+            empty[emptyCount++] = p;
+        }
+
+        private void removeEmpty(int p)
+        {
+            int i = where[p], last = empty[--emptyCount];
+            empty[i] = last;
+            where[last] = i;
+            where[p] = -1;
+        }
+
+        // legal, not the ko point, and not filling one of color's own eyes
+        boolean canPlay(int p, int color)
+        {
+            return p != ko && !isOwnEye(p, color) && position.isLegal(p / size, p % size, color);
+        }
+
+        // every neighbour is color, and the diagonals are not the opponent's (one allowed away from the edge)
+        boolean isOwnEye(int p, int color)
+        {
+            int x = p / size, y = p % size;
+            if ((x > 0 && board.get(p - size) != color) || (x < size - 1 && board.get(p + size) != color)
+                || (y > 0 && board.get(p - 1) != color) || (y < size - 1 && board.get(p + 1) != color))
+                return false;
+            int bad = 0, edge = 0;
+            for (int dx = -1; dx <= 1; dx += 2)
+            {
+                for (int dy = -1; dy <= 1; dy += 2)
+                {
+                    int nx = x + dx, ny = y + dy;
+                    if (nx < 0 || nx >= size || ny < 0 || ny >= size)
+                        edge = 1;
+                    else if (board.get(nx * size + ny) == 3 - color)
+                        bad++;
+                }
+            }
+            return bad + edge < 2;
+        }
+
+        // play a move canPlay allowed (p < 0 passes), taking off captures and noting a ko
+        void play(int p, int color)
+        {
+            ko = -1;
+            if (p < 0)
+            {
+                passes++;
+                return;
+            }
+            passes = 0;
+            int x = p / size, y = p % size;
+            removeEmpty(p);
+            position.place(x, y, color);
+            int taken = position.removeCapturedStones(x, y, 3 - color);
+            for (int i = 0; i < taken; i++)
+                addEmpty(position.capturedPoint(i));
+            // a lone stone that took a lone stone and sits in atari: taking straight back is ko
+            if (taken == 1 && position.groupStones(x, y) == 1 && position.groupLiberties(x, y) == 1)
+                ko = position.capturedPoint(0);
+        }
+
+        // play random moves from here until both sides pass, then count by area: 1 black wins, 2 white, 0 a draw
+        int finish(int color, double komi)
+        {
+            int limit = size * size * 3; // long enough for any real playout, stops a rare cycle
+            while (passes < 2 && limit-- > 0)
+            {
+                int move = -1;
+                if (emptyCount > 0)
+                {
+                    int start = random.nextInt(emptyCount);
+                    for (int i = 0; i < emptyCount; i++)
+                    {
+                        int p = empty[(start + i) % emptyCount];
+                        if (canPlay(p, color))
+                        {
+                            move = p;
+                            break;
+                        }
+                    }
+                }
+                play(move, color);
+                color = 3 - color;
+            }
+
+            // stones, plus the empty points only one colour touches (after a playout these are eyes)
+            int black = 0, white = 0;
+            for (int i = 0; i < board.words(); i++)
+            {
+                black += Long.bitCount(board.black[i]);
+                white += Long.bitCount(board.white[i]);
+            }
+            for (int i = 0; i < emptyCount; i++)
+            {
+                int p = empty[i], x = p / size, y = p % size, seen = 0;
+                if (x > 0) seen |= board.get(p - size);
+                if (x < size - 1) seen |= board.get(p + size);
+                if (y > 0) seen |= board.get(p - 1);
+                if (y < size - 1) seen |= board.get(p + 1);
+                if (seen == 1) black++;
+                else if (seen == 2) white++;
+            }
+            double margin = black - white - komi;
+            return margin > 0 ? 1 : margin < 0 ? 2 : 0;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// MoveTimeline.java
+/* The move bar under the board, in place of a JSlider with a label per
+ * move. Nothing here is a Swing component per move: ticks and labels are
+ * painted straight from the value range, only inside the area being
+ * repainted, and spaced so they never crowd (every 1, 2, 5, 10, 20, 50...
+ * moves, whatever fits). Drag, click, mouse wheel and the arrow, page,
+ * home and end keys all move it. While scrubbing, the thumb follows the
+ * mouse at once but listeners hear about it at most once per frame, so a
+ * fast drag across a long game costs one jump per frame, not one per pixel.
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import java.awt.*;
+import java.awt.event.*;
+
+class MoveTimeline extends JComponent
+{
+    private static final int INSET = 14; // room at the ends for the thumb and the first and last labels
+    private static final int TRACK_Y = 14; // middle of the track
+    private static final int MIN_TICK_GAP = 4; // pixels between ticks at the least
+    private static final int FRAME_MS = 16; // listeners are told about scrubbing at most this often
+    private static final int[] STEPS = {1, 2, 5}; // tick spacing is one of these times a power of ten
+
+    private int value = 0, maximum = 0;
+    private boolean pending = false; // user moved the thumb and listeners have not heard yet
+    private final Timer frameTimer = new Timer(FRAME_MS, evt -> flush());
+    private final Font labelFont = new Font("Arial", Font.PLAIN, 11);
+
+    MoveTimeline()
+    {
+        frameTimer.setRepeats(false);
+        setFocusable(true);
+        setPreferredSize(new Dimension(400, 44));
+        setToolTipText("Drag, scroll or use the arrow keys to step through the moves");
+
+        MouseAdapter mouse = new MouseAdapter()
+        {
+            public void mousePressed(MouseEvent evt)
+            {
+                requestFocusInWindow();
+                scrubTo(valueAt(evt.getX()));
+            }
+
+            public void mouseDragged(MouseEvent evt)
+            {
+                scrubTo(valueAt(evt.getX()));
+            }
+
+            public void mouseReleased(MouseEvent evt)
+            {
+                flush(); // land exactly where the mouse let go
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent evt)
+            {
+                scrubTo(value + evt.getWheelRotation());
+            }
+        };
+        addFocusListener(new FocusAdapter()
+        {
+            public void focusGained(FocusEvent evt) { repaint(); }
+            public void focusLost(FocusEvent evt) { repaint(); }
+        });
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        addKeyListener(new KeyAdapter()
+        {
+            public void keyPressed(KeyEvent evt)
+            {
+                switch (evt.getKeyCode())
+                {
+                    case KeyEvent.VK_LEFT: case KeyEvent.VK_DOWN: scrubTo(value - 1); break;
+                    case KeyEvent.VK_RIGHT: case KeyEvent.VK_UP: scrubTo(value + 1); break;
+                    case KeyEvent.VK_PAGE_UP: scrubTo(value - 10); break;
+                    case KeyEvent.VK_PAGE_DOWN: scrubTo(value + 10); break;
+                    case KeyEvent.VK_HOME: scrubTo(0); break;
+                    case KeyEvent.VK_END: scrubTo(maximum); break;
+                    default: return;
+                }
+                evt.consume();
+            }
+        });
+    }
+
+    int getValue()
+    {
+        return value;
+    }
+
+    int getMaximum()
+    {
+        return maximum;
+    }
+
+    // set from code: listeners hear about it straight away, as with a JSlider
+    void setValue(int v)
+    {
+        v = Math.max(0, Math.min(maximum, v));
+        if (v == value && !pending)
+            return;
+        moveThumb(v);
+        pending = true;
+        flush();
+    }
+
+    void setMaximum(int max)
+    {
+        maximum = Math.max(0, max);
+        if (value > maximum)
+            setValue(maximum);
+        repaint();
+    }
+
+    void addChangeListener(ChangeListener listener)
+    {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    void removeChangeListener(ChangeListener listener)
+    {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    // from the mouse or keyboard: move the thumb now, tell the listeners on the next frame
+    private void scrubTo(int v)
+    {
+        v = Math.max(0, Math.min(maximum, v));
+        if (v == value)
+            return;
+        moveThumb(v);
+        pending = true;
+        if (!frameTimer.isRunning())
+            frameTimer.start();
+    }
+
+    private void flush()
+    {
+        frameTimer.stop();
+        if (!pending)
+            return;
+        pending = false;
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class))
+            listener.stateChanged(event);
+    }
+
+    // repaint only around the old and new thumb
+    private void moveThumb(int v)
+    {
+        int oldX = xOf(value);
+        value = v;
+        int newX = xOf(value);
+        repaint(Math.min(oldX, newX) - 8, 0, Math.abs(newX - oldX) + 17, TRACK_Y + 9);
+    }
+
+    private int xOf(int v)
+    {
+        int span = getWidth() - 2 * INSET;
+        return maximum == 0 ? INSET : INSET + (int) ((long) v * span / maximum);
+    }
+
+    private int valueAt(int x)
+    {
+        int span = Math.max(1, getWidth() - 2 * INSET);
+        return Math.round((float) (x - INSET) * maximum / span);
+    }
+
+    // smallest 1, 2, 5, 10, 20, 50... step whose ticks are at least gap pixels apart
+    private int stepFor(double pixelsPerMove, int gap)
+    {
+        for (int scale = 1; ; scale *= 10)
+            for (int step : STEPS)
+                if (step * scale * pixelsPerMove >= gap || step * scale >= maximum)
+                    return step * scale;
+    }
+
+    protected void paintComponent(Graphics g)
+    {
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        if (isOpaque())
+        {
+            g2.setColor(getBackground());
+            g2.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+
+        // track
+        int left = INSET, right = getWidth() - INSET;
+        g2.setColor(Color.GRAY);
+        g2.fillRoundRect(left, TRACK_Y - 2, right - left, 4, 4, 4);
+
+        // ticks and labels, only the ones inside the clip
+        if (maximum > 0)
+        {
+            double pixelsPerMove = (double) (right - left) / maximum;
+            g2.setFont(labelFont);
+            FontMetrics fm = g2.getFontMetrics();
+            int tickStep = stepFor(pixelsPerMove, MIN_TICK_GAP);
+            int labelStep = stepFor(pixelsPerMove, fm.stringWidth(String.valueOf(maximum)) + 10);
+            if (labelStep % tickStep != 0)
+                labelStep *= 2; // 5 and 2 -> 10, so labels land on ticks
+            int labelWidth = fm.stringWidth(String.valueOf(maximum));
+            int first = Math.max(0, valueAt(clip.x - labelWidth) / tickStep * tickStep);
+            int last = Math.min(maximum, valueAt(clip.x + clip.width + labelWidth));
+            g2.setColor(Color.DARK_GRAY);
+            for (int v = first; v <= last; v += tickStep)
+            {
+                int x = xOf(v);
+                boolean labelled = v % labelStep == 0;
+                g2.drawLine(x, TRACK_Y + 5, x, TRACK_Y + (labelled ? 11 : 8));
+                if (labelled)
+                {
+                    String text = String.valueOf(v);
+                    g2.drawString(text, x - fm.stringWidth(text) / 2, TRACK_Y + 12 + fm.getAscent());
+                }
+            }
+        }
+
+        // thumb
+        int x = xOf(value);
+        g2.setColor(isFocusOwner() ? new Color(60, 110, 200) : new Color(90, 90, 90));
+        g2.fillOval(x - 7, TRACK_Y - 7, 14, 14);
+        g2.setColor(Color.WHITE);
+        g2.drawOval(x - 7, TRACK_Y - 7, 14, 14);
+    }
+}
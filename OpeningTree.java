@@ -0,0 +1,708 @@
+// OpeningTree.java
+/* The openings of every saved game merged into one tree, to show which
+ * moves have been played from the position on the board and how often.
+ * Positions are keyed by PositionIndex's canonical hash, so the 8 board
+ * symmetries and swapped colours are one node, and two move orders that
+ * reach the same position (transpositions) join there; strictly it is a
+ * graph rather than a tree. Each node counts the games that passed through
+ * it, and keeps a list of the moves played next with a count for each. A
+ * game goes in with every variation of its tree, but counts once at each
+ * position and move however many of its variations got there.
+ *
+ * A move is stored in the canonical orientation: turned by the symmetry
+ * that gave the position its canonical hash, and when several do (a board
+ * with symmetries, the empty one has 8) by whichever turns it onto the
+ * lowest point, so equivalent moves share one count. Looking up turns it
+ * back by each of those symmetries, showing it at every equivalent point.
+ *
+ * The tree lives in saved_boards/openings.tree and is used straight from a
+ * memory map, so a lookup is a few probes with no loading or parsing:
+ *
+ *   "GOTR" magic, int version, int node slots, int nodes used, int edges used,
+ *   int edge capacity, int clean (1 unless an update was cut short), 4 bytes padding
+ *   edges, 12 bytes each: int next edge of the same node (-1 ends), int move, int count
+ *   nodes, 16 bytes each: long canonical hash, int games + 1 (0: empty slot), int first edge
+ *
+ * Saving a board adds its moves in place. The node table is open
+ * addressing and doubles at half full, the edges double when full; both
+ * grow by remapping the file larger and laying the nodes out again after
+ * the edges. The games in the tree are listed in saved_boards/openings.games
+ * with their openings as they were added, a couple of hundred bytes each,
+ * so a game saved again (with a new variation, say) or deleted has its
+ * old moves counted back out in place. Nodes and edges left with no games
+ * stay where they are, so the open addressing never needs holes filled.
+ *
+ * openings.games is a log: each update appends a record per game added
+ * (or found unreadable, so it is not tried again until it changes) and a
+ * tombstone per game deleted, and a later record of a name replaces the
+ * earlier ones. Once there are more dead records than games it is written
+ * again whole.
+ */
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class OpeningTree
+{
+    static final int OPENING_MOVES = 60; // moves of each game that go in the tree
+    private static final byte[] MAGIC = {'G', 'O', 'T', 'R'};
+    private static final int VERSION = 4;
+    private static final int GAME_RECORD = 1, UNREADABLE = 2, TOMBSTONE = 0; // record tags in openings.games
+    private static final String TREE_NAME = "openings.tree", GAMES_NAME = "openings.games";
+    private static final int HEADER = 32, EDGE = 12, NODE = 16;
+    private static final int H_VERSION = 4, H_SLOTS = 8, H_USED = 12, H_EDGES = 16, H_CAPACITY = 20, H_CLEAN = 24;
+    private static final int FIRST_SLOTS = 1 << 12, FIRST_EDGES = 1 << 12;
+    private static final int POINT = 0x1FF; // low bits of an opening entry, the colour is above
+    private static final int[][][] INVERSES = new int[Bitboard.MAX_SIZE + 1][][]; // size -> symmetry -> point -> point
+
+    static
+    {
+        for (int size : GoEngine.SIZES)
+        {
+            int[][] symmetries = PositionIndex.symmetries(size);
+            INVERSES[size] = new int[8][size * size];
+            for (int s = 0; s < 8; s++)
+                for (int p = 0; p < size * size; p++)
+                    INVERSES[size][s][symmetries[s][p]] = p;
+        }
+    }
+
+    // a move played from a position, in the orientation of the board it was looked up for
+    static class Continuation
+    {
+        final int x, y;
+        final int count; // games that played it
+
+        Continuation(int x, int y, int count)
+        {
+            this.x = x;
+            this.y = y;
+            this.count = count;
+        }
+    }
+
+    // a game in the tree: its catalog modified time and length when added, and the opening that went in (null if
+    // the board could not be read, nothing went in)
+    private static class Game
+    {
+        final long modified, length;
+        final short[] opening;
+
+        Game(long modified, long length, short[] opening)
+        {
+            this.modified = modified;
+            this.length = length;
+            this.opening = opening;
+        }
+    }
+
+    private static OpeningTree instance;
+
+    private final File dir;
+    private final File treeFile, gamesFile;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "opening-tree");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean reconcilePending = new AtomicBoolean();
+    private final Map<String, Game> games = new HashMap<>(); // games in the tree, only used on the worker
+    private final Map<String, Game> pending = new LinkedHashMap<>(); // records not yet in openings.games, null a tombstone
+    private boolean rewrite = true; // openings.games has to be written whole next time
+    private int deadRecords = 0; // records in openings.games replaced by a later one, and tombstones
+    private FileChannel channel;
+    private MappedByteBuffer map; // null if the file could not be opened, nothing is found then
+    private int slots, used, edges, capacity;
+
+    // the tree for saved_boards, opened and kept in step with the catalog from the first call on
+    static synchronized OpeningTree get()
+    {
+        if (instance == null)
+        {
+            instance = new OpeningTree(new File("saved_boards"));
+            OpeningTree tree = instance;
+            tree.worker.execute(() ->
+            {
+                tree.open();
+                try
+                {
+                    BoardCatalog.get().awaitScan();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+                tree.reconcile();
+            });
+            BoardCatalog.get().addListener(tree::scheduleReconcile);
+        }
+        return instance;
+    }
+
+    private OpeningTree(File dir)
+    {
+        this.dir = dir;
+        this.treeFile = new File(dir, TREE_NAME);
+        this.gamesFile = new File(dir, GAMES_NAME);
+    }
+
+    // how many games reached this position, in any orientation or with colours swapped
+    synchronized int frequency(Bitboard board)
+    {
+        if (map == null)
+            return 0;
+        long[] h = runningHashes(board);
+        int slot = findSlot(PositionIndex.min(h, board.size));
+        return Math.max(0, map.getInt(nodeAt(slot) + 8) - 1);
+    }
+
+    // the moves played from this position in the saved games, most played first
+    synchronized java.util.List<Continuation> continuations(Bitboard board)
+    {
+        java.util.List<Continuation> result = new ArrayList<>();
+        if (map == null)
+            return result;
+        int size = board.size;
+        long[] h = runningHashes(board);
+        long key = PositionIndex.min(h, size);
+        int node = nodeAt(findSlot(key));
+        if (map.getInt(node + 8) <= 1)
+            return result; // never reached, or only by games since deleted
+
+        // every symmetry that takes this board to the canonical one
+        long smallest = Long.MAX_VALUE;
+        for (long v : h)
+            smallest = Math.min(smallest, v);
+        boolean[] turned = new boolean[8];
+        for (int i = 0; i < h.length; i++)
+            if (h[i] == smallest)
+                turned[i & 7] = true;
+
+        int[] counts = new int[size * size];
+        for (int e = map.getInt(node + 12); e >= 0; e = map.getInt(edgeAt(e)))
+        {
+            int move = map.getInt(edgeAt(e) + 4), count = map.getInt(edgeAt(e) + 8);
+            for (int s = 0; s < 8; s++)
+            {
+                if (!turned[s])
+                    continue;
+                int p = INVERSES[size][s][move];
+                if (board.get(p) == 0)
+                    counts[p] = Math.max(counts[p], count); // one move turned onto the same point twice
+            }
+        }
+        for (int p = 0; p < counts.length; p++)
+            if (counts[p] > 0)
+                result.add(new Continuation(p / size, p % size, counts[p]));
+        result.sort((a, b) -> Integer.compare(b.count, a.count));
+        return result;
+    }
+
+    // add a game that was just saved, after the catalog has it; saved before, its old opening is taken out first
+    void add(String name, java.util.List<BoardState> history)
+    {
+        BoardCatalog.Entry entry = BoardCatalog.get().entry(name);
+        if (entry == null)
+            return;
+        Game game = new Game(entry.modified, entry.length, opening(history));
+        worker.execute(() ->
+        {
+            Game old = games.get(name);
+            if (map == null || (old != null && old.modified == game.modified && old.length == game.length))
+                return; // reconcile got to it first
+            begin();
+            synchronized (this)
+            {
+                if (old != null && old.opening != null)
+                    walk(old.opening, -1);
+                walk(game.opening, 1);
+            }
+            record(name, game);
+            finish();
+        });
+    }
+
+    // the 16 running hashes of a board, as PositionIndex keeps them
+    private static long[] runningHashes(Bitboard board)
+    {
+        long[] h = new long[16];
+        int[][] symmetries = PositionIndex.symmetries(board.size);
+        for (int p = 0; p < board.size * board.size; p++)
+            if (board.get(p) != 0)
+                PositionIndex.toggle(h, symmetries, board.get(p), p);
+        return h;
+    }
+
+    // point p in the canonical orientation: its lowest image under the symmetries giving the smallest hash
+    private static int canonicalMove(long[] h, int[][] symmetries, int p)
+    {
+        long smallest = Long.MAX_VALUE;
+        for (long v : h)
+            smallest = Math.min(smallest, v);
+        int move = Integer.MAX_VALUE;
+        for (int i = 0; i < h.length; i++)
+            if (h[i] == smallest)
+                move = Math.min(move, symmetries[i & 7][p]);
+        return move;
+    }
+
+    // what the tree takes from a game: board size, how many stones it starts with and each one's point | colour << 9,
+    // then for each state of its tree up to move OPENING_MOVES, in the order BoardFile writes them, its move number,
+    // its point | colour << 9 (colour 0 a pass), how many stones it took off and their points
+    static short[] opening(java.util.List<BoardState> history)
+    {
+        BoardFile.Tree tree = BoardFile.Tree.of(history);
+        Bitboard start = tree.states[0].board;
+        int size = start.size;
+        int stones = 0, length = 2;
+        for (int p = 0; p < size * size; p++)
+            if (start.get(p) != 0)
+                stones++;
+        length += stones;
+        for (int i = 1; i < tree.count; i++)
+            if (tree.depths[i] <= OPENING_MOVES)
+                length += 3 + tree.states[i].captured.length;
+        short[] opening = new short[length];
+        int at = 0;
+        opening[at++] = (short) size;
+        opening[at++] = (short) stones;
+        for (int p = 0; p < size * size; p++)
+            if (start.get(p) != 0)
+                opening[at++] = (short) (p | start.get(p) << 9);
+        for (int i = 1; i < tree.count; i++)
+        {
+            if (tree.depths[i] > OPENING_MOVES)
+                continue;
+            BoardState state = tree.states[i];
+            opening[at++] = (short) tree.depths[i];
+            opening[at++] = (short) (state.moveColor == 0 ? 0 : state.lastMoveX * size + state.lastMoveY | state.moveColor << 9);
+            opening[at++] = (short) state.captured.length;
+            for (int p : state.captured)
+                opening[at++] = (short) p;
+        }
+        return opening;
+    }
+
+    // count an opening into the tree (delta 1), or back out of it (delta -1)
+    private void walk(short[] opening, int delta)
+    {
+        int size = opening[0];
+        int[][] symmetries = PositionIndex.symmetries(size);
+        long[][] h = new long[OPENING_MOVES + 1][]; // running hashes at each move of the variation being walked
+        long[] keys = new long[OPENING_MOVES + 1];
+        Map<Long, Set<Integer>> counted = new HashMap<>(); // positions this game has been counted at, and the moves from each
+        h[0] = new long[16];
+        int at = 2;
+        for (int n = opening[1]; n > 0; n--, at++)
+            PositionIndex.toggle(h[0], symmetries, opening[at] >> 9, opening[at] & POINT);
+        keys[0] = PositionIndex.min(h[0], size);
+        counted.put(keys[0], new HashSet<>());
+        node(keys[0], delta);
+        while (at < opening.length)
+        {
+            int depth = opening[at++];
+            int color = opening[at] >> 9, p = opening[at++] & POINT;
+            int move = color == 0 ? -1 : canonicalMove(h[depth - 1], symmetries, p);
+            h[depth] = h[depth - 1].clone();
+            if (color != 0)
+                PositionIndex.toggle(h[depth], symmetries, color, p);
+            for (int n = opening[at++]; n > 0; n--)
+                PositionIndex.toggle(h[depth], symmetries, 3 - color, opening[at++]);
+            if (move >= 0 && counted.get(keys[depth - 1]).add(move))
+                edge(keys[depth - 1], move, delta); // passes are not continuations
+            keys[depth] = PositionIndex.min(h[depth], size);
+            if (counted.putIfAbsent(keys[depth], new HashSet<>()) == null)
+                node(keys[depth], delta);
+        }
+    }
+
+    // count a game more (delta 1) or less (-1) at the position with this key
+    private void node(long key, int delta)
+    {
+        if (delta > 0 && (used + 1) * 2 > slots)
+            resize(slots * 2, capacity);
+        int slot = findSlot(key);
+        int at = nodeAt(slot);
+        int count = map.getInt(at + 8);
+        if (count == 0)
+        {
+            if (delta < 0)
+                return; // nothing to take out
+            map.putLong(at, key);
+            map.putInt(at + 12, -1);
+            used++;
+            count = 1;
+        }
+        map.putInt(at + 8, Math.max(1, count + delta));
+    }
+
+    // count a game more or less playing move from the position with this key
+    private void edge(long key, int move, int delta)
+    {
+        int node = nodeAt(findSlot(key));
+        if (map.getInt(node + 8) == 0)
+            return; // nothing to take out
+        for (int e = map.getInt(node + 12); e >= 0; e = map.getInt(edgeAt(e)))
+        {
+            if (map.getInt(edgeAt(e) + 4) == move)
+            {
+                map.putInt(edgeAt(e) + 8, Math.max(0, map.getInt(edgeAt(e) + 8) + delta));
+                return;
+            }
+        }
+        if (delta < 0)
+            return;
+        if (edges == capacity)
+        {
+            resize(slots, capacity * 2);
+            node = nodeAt(findSlot(key));
+        }
+        int e = edges++;
+        map.putInt(edgeAt(e), map.getInt(node + 12));
+        map.putInt(edgeAt(e) + 4, move);
+        map.putInt(edgeAt(e) + 8, 1);
+        map.putInt(node + 12, e);
+    }
+
+    private int edgeAt(int e)
+    {
+        return HEADER + e * EDGE;
+    }
+
+    private int nodeAt(int slot)
+    {
+        return HEADER + capacity * EDGE + slot * NODE;
+    }
+
+    // slot holding key, or the empty slot where it would go
+    private int findSlot(long key)
+    {
+        int mask = slots - 1;
+        int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+        while (map.getInt(nodeAt(slot) + 8) != 0 && map.getLong(nodeAt(slot)) != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // remap the file for a new table and edge capacity, laying the nodes out again behind the edges
+    private void resize(int newSlots, int newCapacity)
+    {
+        long[] keys = new long[used];
+        int[] counts = new int[used], heads = new int[used];
+        int n = 0;
+        for (int slot = 0; slot < slots; slot++)
+        {
+            int at = nodeAt(slot);
+            if (map.getInt(at + 8) == 0)
+                continue;
+            keys[n] = map.getLong(at);
+            counts[n] = map.getInt(at + 8);
+            heads[n++] = map.getInt(at + 12);
+        }
+        slots = newSlots;
+        capacity = newCapacity;
+        remap();
+        for (int at = nodeAt(0); at < nodeAt(slots); at += 8)
+            map.putLong(at, 0);
+        for (int i = 0; i < n; i++)
+        {
+            int at = nodeAt(findSlot(keys[i]));
+            map.putLong(at, keys[i]);
+            map.putInt(at + 8, counts[i]);
+            map.putInt(at + 12, heads[i]);
+        }
+    }
+
+    private void remap()
+    {
+        try
+        {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER + (long) capacity * EDGE + (long) slots * NODE);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // an update starts: until end, a crash leaves the tree marked for building again, and the list
+    // of games is always saved before end, so a game is never counted twice. Only the worker writes,
+    // so the disk is waited on outside the lock and lookups on the event thread never wait for it.
+    private void begin()
+    {
+        MappedByteBuffer written;
+        synchronized (this)
+        {
+            map.putInt(H_CLEAN, 0);
+            written = map;
+        }
+        written.force();
+    }
+
+    private void end()
+    {
+        MappedByteBuffer written;
+        synchronized (this)
+        {
+            writeHeader();
+            written = map;
+        }
+        written.force();
+    }
+
+    private void writeHeader()
+    {
+        map.putInt(H_SLOTS, slots);
+        map.putInt(H_USED, used);
+        map.putInt(H_EDGES, edges);
+        map.putInt(H_CAPACITY, capacity);
+        map.putInt(H_CLEAN, 1);
+    }
+
+    // map the tree file, or start an empty one if it is missing, damaged or was left half updated
+    private synchronized void open()
+    {
+        try
+        {
+            if (!dir.exists()) dir.mkdirs();
+            channel = FileChannel.open(treeFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() >= HEADER)
+            {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+                boolean valid = map.getInt(H_VERSION) == VERSION && map.getInt(H_CLEAN) == 1;
+                for (int i = 0; i < MAGIC.length; i++)
+                    valid &= map.get(i) == MAGIC[i];
+                slots = map.getInt(H_SLOTS);
+                used = map.getInt(H_USED);
+                edges = map.getInt(H_EDGES);
+                capacity = map.getInt(H_CAPACITY);
+                valid &= Integer.bitCount(slots) == 1 && used * 2 <= slots && edges <= capacity
+                    && channel.size() == (long) HEADER + (long) capacity * EDGE + (long) slots * NODE;
+                if (valid && loadGames())
+                {
+                    remap();
+                    return;
+                }
+            }
+            format();
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            map = null; // no tree this run, lookups find nothing
+        }
+    }
+
+    // an empty tree with no games in it
+    private void format() throws IOException
+    {
+        channel.truncate(0);
+        slots = FIRST_SLOTS;
+        capacity = FIRST_EDGES;
+        used = 0;
+        edges = 0;
+        remap(); // the file grows back filled with zeros, which is every slot empty
+        for (int i = 0; i < MAGIC.length; i++)
+            map.put(i, MAGIC[i]);
+        map.putInt(H_VERSION, VERSION);
+        writeHeader(); // forced with the first update, a crash before that only formats it again
+        games.clear();
+        pending.clear();
+        rewrite = true;
+        deadRecords = 0;
+    }
+
+    private void scheduleReconcile()
+    {
+        if (reconcilePending.compareAndSet(false, true))
+        {
+            worker.execute(() ->
+            {
+                reconcilePending.set(false);
+                reconcile();
+            });
+        }
+    }
+
+    // bring the tree in step with the catalog: take out the games deleted or rewritten, and add the new ones
+    private void reconcile()
+    {
+        java.util.List<BoardCatalog.Entry> entries = BoardCatalog.get().entries();
+        Map<String, BoardCatalog.Entry> present = new HashMap<>();
+        for (BoardCatalog.Entry entry : entries)
+            if (entry.moves >= 0)
+                present.put(entry.name, entry);
+        if (map == null)
+            return;
+        boolean started = false;
+        for (Map.Entry<String, Game> game : new ArrayList<>(games.entrySet()))
+        {
+            BoardCatalog.Entry entry = present.get(game.getKey());
+            if (entry != null && isCurrent(game.getValue(), entry))
+                continue;
+            if (!started)
+                begin();
+            started = true;
+            if (game.getValue().opening != null)
+            {
+                synchronized (this)
+                {
+                    walk(game.getValue().opening, -1); // a rewritten one goes back in below
+                }
+            }
+            if (entry == null)
+                record(game.getKey(), null);
+        }
+        for (BoardCatalog.Entry entry : present.values())
+        {
+            if (isCurrent(games.get(entry.name), entry))
+                continue;
+            if (!started)
+                begin();
+            started = true;
+            addFile(entry);
+        }
+        if (started)
+            finish();
+    }
+
+    private static boolean isCurrent(Game game, BoardCatalog.Entry entry)
+    {
+        return game != null && game.modified == entry.modified && game.length == entry.length;
+    }
+
+    // note a game added, replaced or (game null) deleted, for the next saveGames
+    private void record(String name, Game game)
+    {
+        Game old = game == null ? games.remove(name) : games.put(name, game);
+        if (old != null)
+            deadRecords++;
+        if (game == null)
+            deadRecords++; // the tombstone itself
+        pending.put(name, game);
+    }
+
+    private void finish()
+    {
+        if (map == null)
+            return;
+        saveGames();
+        end();
+    }
+
+    // read one saved board and add it (inside begin and finish); one that cannot be read is noted as it is, so it
+    // is not read again until it changes
+    private void addFile(BoardCatalog.Entry entry)
+    {
+        Game game;
+        try
+        {
+            game = new Game(entry.modified, entry.length, opening(BoardCatalog.get().read(entry.name)));
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            record(entry.name, new Game(entry.modified, entry.length, null));
+            return;
+        }
+        synchronized (this)
+        {
+            walk(game.opening, 1);
+        }
+        record(entry.name, game);
+    }
+
+    // read the list of games in the tree, false if it is missing or damaged
+    private boolean loadGames()
+    {
+        games.clear();
+        pending.clear();
+        deadRecords = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(gamesFile))))
+        {
+            if (in.readInt() != VERSION)
+                return false;
+            for (int tag = in.read(); tag >= 0; tag = in.read())
+            {
+                String name = in.readUTF();
+                Game game = null;
+                if (tag != TOMBSTONE)
+                {
+                    long modified = in.readLong(), length = in.readLong();
+                    short[] opening = null;
+                    if (tag == GAME_RECORD)
+                    {
+                        opening = new short[in.readInt()];
+                        for (int j = 0; j < opening.length; j++)
+                            opening[j] = in.readShort();
+                    }
+                    game = new Game(modified, length, opening);
+                }
+                record(name, game);
+            }
+            pending.clear();
+            rewrite = false;
+            return true;
+        }
+        catch (IOException ex)
+        {
+            games.clear();
+            return false;
+        }
+    }
+
+    // append the records since the last save, or write the whole list when it is new or mostly dead records
+    private void saveGames()
+    {
+        try
+        {
+            if (rewrite || deadRecords > games.size() || !gamesFile.exists())
+            {
+                File tmp = new File(dir, GAMES_NAME + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+                {
+                    out.writeInt(VERSION);
+                    for (Map.Entry<String, Game> game : games.entrySet())
+                        write(out, game.getKey(), game.getValue());
+                }
+                Files.move(tmp.toPath(), gamesFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                rewrite = false;
+                deadRecords = 0;
+            }
+            else
+            {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(gamesFile, true))))
+                {
+                    for (Map.Entry<String, Game> game : pending.entrySet())
+                        write(out, game.getKey(), game.getValue());
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            // without the list the tree is built again next start
+            gamesFile.delete();
+            rewrite = true;
+        }
+        pending.clear();
+    }
+
+    private static void write(DataOutputStream out, String name, Game game) throws IOException
+    {
+        out.writeByte(game == null ? TOMBSTONE : game.opening == null ? UNREADABLE : GAME_RECORD);
+        out.writeUTF(name);
+        if (game == null)
+            return;
+        out.writeLong(game.modified);
+        out.writeLong(game.length);
+        if (game.opening == null)
+            return;
+        out.writeInt(game.opening.length); // every variation, so it can run past a short
+        for (short v : game.opening)
+            out.writeShort(v);
+    }
+}
@@ -0,0 +1,555 @@
+// PositionIndex.java
+/* Finds every saved game that reached a given position. Each position is
+ * reduced to a canonical hash: the smallest of its 16 Zobrist hashes under
+ * the 8 board symmetries, with and without the colours swapped, so rotated,
+ * mirrored and colour-reversed versions of a position all meet. The hashes
+ * of a game are worked out while stepping through its deltas, keeping all
+ * 16 running hashes at once. Every state of the variation tree is indexed,
+ * in the order BoardFile writes them, so the line's states keep their move
+ * numbers and a match in a side variation opens with the line following it.
+ *
+ * The index is an open addressing table from canonical hash to a chain of
+ * (game, state) entries. It is kept in saved_boards/positions.idx and follows
+ * the BoardCatalog: new or changed boards are indexed in the background,
+ * and saveBoardToFile adds a game straight from memory.
+ *
+ * positions.idx is a log: a record with the hashes of a game is appended
+ * whenever one is indexed, replacing any earlier record of that name, and a
+ * tombstone when a game goes away. Loading replays the records in order.
+ * Once the records that have been replaced or dropped outweigh the live
+ * ones, the whole file is written again with just the live games.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class PositionIndex
+{
+    private static final int VERSION = 3;
+    private static final int GAME_RECORD = 1, TOMBSTONE = 0; // record tags in the log
+    private static final String INDEX_NAME = "positions.idx";
+    private static final int[][][] SYMMETRIES = new int[Bitboard.MAX_SIZE + 1][][]; // size -> symmetry -> point -> point
+
+    static
+    {
+        for (int size : GoEngine.SIZES)
+        {
+            int n = size - 1;
+            SYMMETRIES[size] = new int[8][size * size];
+            for (int x = 0; x < size; x++)
+            {
+                for (int y = 0; y < size; y++)
+                {
+                    int[][] images = {{x, y}, {n - x, y}, {x, n - y}, {n - x, n - y}, {y, x}, {n - y, x}, {y, n - x}, {n - y, n - x}};
+                    for (int s = 0; s < 8; s++)
+                        SYMMETRIES[size][s][x * size + y] = images[s][0] * size + images[s][1];
+                }
+            }
+        }
+    }
+
+    // one game found at a position
+    static class Match
+    {
+        final String name;
+        final int move;
+        final int state; // number of the state in the game's tree, see state()
+
+        Match(String name, int move, int state)
+        {
+            this.name = name;
+            this.move = move;
+            this.state = state;
+        }
+
+        // reached in a side variation rather than on the game's line
+        boolean isVariation()
+        {
+            return state != move;
+        }
+    }
+
+    // an indexed game, id is its number in the entries
+    private static class Game
+    {
+        final int id;
+        final String name;
+        final long modified, length;
+        final long[] hashes; // canonical hash of every state in the tree, null for a tombstone
+        final int[] moves; // move number of each of them, null when they are all on the line (0, 1, 2 ...)
+
+        Game(int id, String name, long modified, long length, long[] hashes, int[] moves)
+        {
+            this.id = id;
+            this.name = name;
+            this.modified = modified;
+            this.length = length;
+            this.hashes = hashes;
+            this.moves = moves;
+        }
+
+        int move(int state)
+        {
+            return moves == null ? state : moves[state];
+        }
+    }
+
+    private static PositionIndex instance;
+
+    private final File dir;
+    private final File indexFile;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "position-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean reconcilePending = new AtomicBoolean();
+    private final Object saving = new Object(); // held while writing positions.idx
+    private volatile boolean ready = false;
+    private boolean dirty = false;
+
+    // records not yet appended to positions.idx, and whether it has to be written whole instead
+    private final java.util.List<Game> pending = new ArrayList<>();
+    private boolean rewrite = true;
+    private int fileDead = 0; // hashes in positions.idx belonging to replaced or removed games
+
+    // games by name, and by id (null once removed)
+    private final Map<String, Game> games = new HashMap<>();
+    private final java.util.List<Game> gamesById = new ArrayList<>();
+    private int deadEntries = 0;
+
+    // hash table: slot -> distinct canonical hash and the first entry in its chain
+    private long[] slotKeys = new long[1 << 16];
+    private int[] slotHead = newSlots(1 << 16);
+    private int usedSlots = 0;
+
+    // chained entries
+    private int[] entryGame = new int[1 << 16];
+    private int[] entryState = new int[1 << 16];
+    private int[] entryNext = new int[1 << 16];
+    private int entryCount = 0;
+
+    // the index for saved_boards, loaded and kept in step with the catalog from the first call on
+    static synchronized PositionIndex get()
+    {
+        if (instance == null)
+        {
+            instance = new PositionIndex(new File("saved_boards"));
+            PositionIndex index = instance;
+            index.worker.execute(() ->
+            {
+                index.load();
+                try
+                {
+                    BoardCatalog.get().awaitScan();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+                index.reconcile();
+                index.ready = true;
+            });
+            BoardCatalog.get().addListener(index::scheduleReconcile);
+            Runtime.getRuntime().addShutdownHook(new Thread(index::saveIfDirty));
+        }
+        return instance;
+    }
+
+    private PositionIndex(File dir)
+    {
+        this.dir = dir;
+        this.indexFile = new File(dir, INDEX_NAME);
+    }
+
+    // false while the saved boards are still being read in for the first time
+    boolean isReady()
+    {
+        return ready;
+    }
+
+    // every saved game that reached this position, in any orientation or with colours swapped
+    synchronized java.util.List<Match> find(Bitboard board)
+    {
+        java.util.List<Match> matches = new ArrayList<>();
+        int slot = findSlot(canonical(board));
+        if (slotHead[slot] < 0)
+            return matches;
+        for (int e = slotHead[slot]; e >= 0; e = entryNext[e])
+        {
+            Game game = gamesById.get(entryGame[e]);
+            if (game != null)
+                matches.add(new Match(game.name, game.move(entryState[e]), entryState[e]));
+        }
+        matches.sort(Comparator.comparing((Match m) -> m.name, String.CASE_INSENSITIVE_ORDER).thenComparingInt(m -> m.move));
+        return matches;
+    }
+
+    // index a game that was just saved, after the catalog has it
+    void add(String name, java.util.List<BoardState> history)
+    {
+        BoardCatalog.Entry entry = BoardCatalog.get().entry(name);
+        if (entry == null)
+            return;
+        BoardFile.Tree tree = BoardFile.Tree.of(history);
+        long[] hashes = hashes(tree);
+        int[] moves = moves(tree);
+        synchronized (this)
+        {
+            record(put(name, entry.modified, entry.length, hashes, moves));
+        }
+        worker.execute(this::saveIfDirty);
+    }
+
+    // canonical hash of a board, the smallest hash over all symmetries and both colourings
+    static long canonical(Bitboard board)
+    {
+        long[] h = new long[16];
+        int[][] symmetries = SYMMETRIES[board.size];
+        for (int p = 0; p < board.size * board.size; p++)
+            if (board.get(p) != 0)
+                toggle(h, symmetries, board.get(p), p);
+        return min(h, board.size);
+    }
+
+    // canonical hash of every state in a game's tree, stepping through the deltas from each state's parent
+    static long[] hashes(BoardFile.Tree tree)
+    {
+        long[][] h = new long[tree.count][]; // running hashes of each state, until its variations are done
+        long[] result = new long[tree.count];
+        Bitboard start = tree.states[0].board;
+        int size = start.size;
+        int[][] symmetries = SYMMETRIES[size];
+        h[0] = new long[16];
+        for (int p = 0; p < size * size; p++)
+            if (start.get(p) != 0)
+                toggle(h[0], symmetries, start.get(p), p);
+        result[0] = min(h[0], size);
+        for (int i = 1; i < tree.count; i++)
+        {
+            BoardState state = tree.states[i];
+            h[i] = h[tree.parents[i]].clone();
+            if (state.moveColor != 0)
+                toggle(h[i], symmetries, state.moveColor, state.lastMoveX * size + state.lastMoveY);
+            for (int p : state.captured)
+                toggle(h[i], symmetries, 3 - state.moveColor, p);
+            result[i] = min(h[i], size);
+            if (tree.parents[i] != i - 1)
+                h[i - 1] = null; // a leaf, nothing is played from it
+        }
+        return result;
+    }
+
+    // move number of every state in a game's tree, null if it has no variations
+    static int[] moves(BoardFile.Tree tree)
+    {
+        for (int i = 1; i < tree.count; i++)
+            if (tree.depths[i] != i)
+                return Arrays.copyOf(tree.depths, tree.count);
+        return null;
+    }
+
+    // state number of a game's tree, as a Match gives it, null if the game has changed and has no such state
+    static BoardState state(java.util.List<BoardState> history, int state)
+    {
+        BoardFile.Tree tree = BoardFile.Tree.of(history);
+        return state < tree.count ? tree.states[state] : null;
+    }
+
+    // the 8 symmetries of a board size across, each as point -> point
+    static int[][] symmetries(int size)
+    {
+        return SYMMETRIES[size];
+    }
+
+    // add or take away a stone in all 16 running hashes (8 symmetries, then the same with colours swapped)
+    static void toggle(long[] h, int[][] symmetries, int color, int p)
+    {
+        for (int s = 0; s < 8; s++)
+        {
+            int q = symmetries[s][p];
+            h[s] ^= GoPosition.key(color, q);
+            h[s + 8] ^= GoPosition.key(3 - color, q);
+        }
+    }
+
+    // the smallest of the running hashes, marked with the board size so an empty 9 x 9 never meets an
+    // empty 19 x 19; 19 x 19 hashes are left as they were, so indexes written before still match
+    static long min(long[] h, int size)
+    {
+        long m = h[0];
+        for (int i = 1; i < h.length; i++)
+            m = Math.min(m, h[i]);
+        return size == GoEngine.DEFAULT_SIZE ? m : m ^ (0x9E3779B97F4A7C15L * size);
+    }
+
+    private static int[] newSlots(int n)
+    {
+        int[] slots = new int[n];
+        Arrays.fill(slots, -1);
+        return slots;
+    }
+
+    // slot holding key, or the empty slot where it would go
+    private int findSlot(long key)
+    {
+        int mask = slotKeys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+        while (slotHead[slot] >= 0 && slotKeys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private Game put(String name, long modified, long length, long[] hashes, int[] moves)
+    {
+        remove(name);
+        Game game = new Game(gamesById.size(), name, modified, length, hashes, moves);
+        gamesById.add(game);
+        games.put(name, game);
+        for (int state = 0; state < hashes.length; state++)
+            link(hashes[state], game.id, state);
+        return game;
+    }
+
+    // queue a game record, or a tombstone, for the next save
+    private void record(Game game)
+    {
+        pending.add(game);
+        dirty = true;
+    }
+
+    private void link(long key, int game, int state)
+    {
+        if ((usedSlots + 1) * 2 > slotKeys.length)
+            growSlots();
+        if (entryCount == entryGame.length)
+        {
+            int n = entryCount * 2;
+            entryGame = Arrays.copyOf(entryGame, n);
+            entryState = Arrays.copyOf(entryState, n);
+            entryNext = Arrays.copyOf(entryNext, n);
+        }
+        int slot = findSlot(key);
+        if (slotHead[slot] < 0)
+        {
+            slotKeys[slot] = key;
+            usedSlots++;
+        }
+        entryGame[entryCount] = game;
+        entryState[entryCount] = state;
+        entryNext[entryCount] = slotHead[slot];
+        slotHead[slot] = entryCount++;
+    }
+
+    private void growSlots()
+    {
+        long[] oldKeys = slotKeys;
+        int[] oldHead = slotHead;
+        slotKeys = new long[oldKeys.length * 2];
+        slotHead = newSlots(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldHead[i] >= 0)
+            {
+                int slot = findSlot(oldKeys[i]);
+                slotKeys[slot] = oldKeys[i];
+                slotHead[slot] = oldHead[i];
+            }
+        }
+    }
+
+    private void remove(String name)
+    {
+        Game game = games.remove(name);
+        if (game == null)
+            return;
+        gamesById.set(game.id, null);
+        deadEntries += game.hashes.length;
+        fileDead += game.hashes.length;
+        // once most entries belong to removed games, build the table again
+        if (deadEntries * 2 > entryCount)
+            compact();
+    }
+
+    private void compact()
+    {
+        java.util.List<Game> live = new ArrayList<>(games.values());
+        games.clear();
+        gamesById.clear();
+        slotKeys = new long[1 << 16];
+        slotHead = newSlots(1 << 16);
+        usedSlots = 0;
+        entryCount = 0;
+        deadEntries = 0;
+        for (Game game : live)
+            put(game.name, game.modified, game.length, game.hashes, game.moves);
+    }
+
+    private void scheduleReconcile()
+    {
+        if (reconcilePending.compareAndSet(false, true))
+        {
+            worker.execute(() ->
+            {
+                reconcilePending.set(false);
+                reconcile();
+            });
+        }
+    }
+
+    // index what the catalog has and we do not, drop what it no longer has
+    private void reconcile()
+    {
+        java.util.List<BoardCatalog.Entry> entries = BoardCatalog.get().entries();
+        Set<String> present = new HashSet<>();
+        for (BoardCatalog.Entry entry : entries)
+        {
+            present.add(entry.name);
+            Game game;
+            synchronized (this)
+            {
+                game = games.get(entry.name);
+            }
+            if (entry.moves < 0 || (game != null && game.modified == entry.modified && game.length == entry.length))
+                continue;
+            try
+            {
+                BoardFile.Tree tree = BoardFile.Tree.of(BoardCatalog.get().read(entry.name));
+                long[] hashes = hashes(tree);
+                int[] moves = moves(tree);
+                synchronized (this)
+                {
+                    record(put(entry.name, entry.modified, entry.length, hashes, moves));
+                }
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                // unreadable board, the catalog already lists it that way
+            }
+        }
+        synchronized (this)
+        {
+            for (String name : new ArrayList<>(games.keySet()))
+            {
+                if (!present.contains(name))
+                {
+                    remove(name);
+                    record(new Game(-1, name, 0, 0, null, null));
+                }
+            }
+        }
+        saveIfDirty();
+    }
+
+    private synchronized void load()
+    {
+        if (!indexFile.exists())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile))))
+        {
+            if (in.readInt() != VERSION)
+                return; // older index, rebuilt by reconcile and written whole
+            for (int tag = in.read(); tag >= 0; tag = in.read())
+            {
+                String name = in.readUTF();
+                if (tag == TOMBSTONE)
+                {
+                    remove(name);
+                    continue;
+                }
+                long modified = in.readLong();
+                long length = in.readLong();
+                long[] hashes = new long[in.readInt()];
+                for (int j = 0; j < hashes.length; j++)
+                    hashes[j] = in.readLong();
+                int[] moves = null;
+                if (in.readBoolean())
+                {
+                    moves = new int[hashes.length];
+                    for (int j = 0; j < moves.length; j++)
+                        moves[j] = in.readInt();
+                }
+                put(name, modified, length, hashes, moves);
+            }
+            rewrite = false;
+        }
+        catch (IOException ex)
+        {
+            compact(); // keep what was read, reconcile fills in the rest and the file is written whole
+        }
+    }
+
+    // append the queued records, or write the whole file when it is new or mostly dead
+    private void saveIfDirty()
+    {
+        synchronized (saving)
+        {
+            java.util.List<Game> written;
+            boolean whole;
+            synchronized (this)
+            {
+                if (!dirty || !dir.exists())
+                    return;
+                dirty = false;
+                whole = rewrite || fileDead > entryCount - deadEntries;
+                written = new ArrayList<>(whole ? games.values() : pending);
+                pending.clear();
+                if (whole)
+                {
+                    rewrite = false;
+                    fileDead = 0;
+                }
+            }
+            try
+            {
+                if (whole)
+                {
+                    File tmp = new File(dir, INDEX_NAME + ".tmp");
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+                    {
+                        out.writeInt(VERSION);
+                        for (Game game : written)
+                            write(out, game);
+                    }
+                    Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                else
+                {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true))))
+                    {
+                        for (Game game : written)
+                            write(out, game);
+                    }
+                }
+            }
+            catch (IOException ex)
+            {
+                synchronized (this)
+                {
+                    dirty = rewrite = true; // a half written record may be left, so write it all next time
+                }
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out, Game game) throws IOException
+    {
+        out.writeByte(game.hashes == null ? TOMBSTONE : GAME_RECORD);
+        out.writeUTF(game.name);
+        if (game.hashes == null)
+            return;
+        out.writeLong(game.modified);
+        out.writeLong(game.length);
+        out.writeInt(game.hashes.length);
+        for (long h : game.hashes)
+            out.writeLong(h);
+        out.writeBoolean(game.moves != null);
+        if (game.moves != null)
+            for (int m : game.moves)
+                out.writeInt(m);
+    }
+}
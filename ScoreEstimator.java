@@ -0,0 +1,278 @@
+// ScoreEstimator.java
+/* Counts a position by area (stones plus surrounded points, Chinese rules)
+ * or by territory (surrounded points plus prisoners, Japanese rules), with
+ * komi for white. Stones marked dead count as taken off: their points join
+ * the surrounding territory and, by territory, the stones are prisoners.
+ *
+ * The open points (empty, or under a dead stone) are split into regions,
+ * each a bitset flooded over the Bitboard. A region belongs to a colour when
+ * only live stones of that colour touch it. The estimator remembers the
+ * board it last counted, so update() only compares bitsets to find what
+ * changed, whether that was one move, a jump across the game or a dead mark,
+ * and floods again only the regions next to the changed points. Everything
+ * else, typically most of the board, is left as it was.
+ */
+
+import java.util.Arrays;
+
+class ScoreEstimator
+{
+    static final double DEFAULT_KOMI = 7.5;
+
+    // the count at one position
+    static class Score
+    {
+        final int blackStones, whiteStones; // live stones on the board
+        final int blackTerritory, whiteTerritory; // open points surrounded by one colour
+        final int blackPrisoners, whitePrisoners; // captured plus marked dead, by who took them
+        final double komi;
+        final boolean area;
+
+        Score(int blackStones, int whiteStones, int blackTerritory, int whiteTerritory, int blackPrisoners, int whitePrisoners, double komi, boolean area)
+        {
+            this.blackStones = blackStones;
+            this.whiteStones = whiteStones;
+            this.blackTerritory = blackTerritory;
+            this.whiteTerritory = whiteTerritory;
+            this.blackPrisoners = blackPrisoners;
+            this.whitePrisoners = whitePrisoners;
+            this.komi = komi;
+            this.area = area;
+        }
+
+        double black()
+        {
+            return area ? blackStones + blackTerritory : blackTerritory + blackPrisoners;
+        }
+
+        double white()
+        {
+            return (area ? whiteStones + whiteTerritory : whiteTerritory + whitePrisoners) + komi;
+        }
+
+        // "B+3.5", "W+0.5" or "Draw"
+        String result()
+        {
+            double margin = black() - white();
+            if (margin == 0)
+                return "Draw";
+            return (margin > 0 ? "B+" : "W+") + format(Math.abs(margin));
+        }
+
+        static String format(double points)
+        {
+            return points == Math.rint(points) ? String.valueOf((long) points) : String.valueOf(points);
+        }
+    }
+
+    private final int size;
+    private final Bitboard counted; // the stones the regions were worked out for
+    private final long[] countedDead; // dead stones the regions were worked out for
+    private final long[] marks; // points marked dead, only where a stone stands do they count
+    private final long[] all; // every point of the board
+    private final int[] regionOf; // region of every open point (the point its bitset is kept under), -1 for live stones
+    private final long[][] regions; // points of each region, only valid where regionOf points
+    private final int[] owner; // 0: nobody, 1: black, 2: white, for each region
+    private final int[] territory = new int[3]; // open points owned by nobody, black and white
+    private final long[] open, dead, changed, redo, scratch; // working bitsets
+    private boolean fresh = true; // nothing counted yet
+
+    ScoreEstimator(int size)
+    {
+        this.size = size;
+        int points = size * size;
+        int words = Bitboard.wordsFor(size);
+        counted = new Bitboard(size);
+        countedDead = new long[words];
+        marks = new long[words];
+        all = new long[words];
+        for (int p = 0; p < points; p++)
+            all[p >>> 6] |= 1L << p;
+        regionOf = new int[points];
+        regions = new long[points][words];
+        owner = new int[points];
+        open = new long[words];
+        dead = new long[words];
+        changed = new long[words];
+        redo = new long[words];
+        scratch = new long[words];
+        Arrays.fill(regionOf, -1);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    // count board as it is, with the stones under dead marks taken off
+    Score score(Bitboard board, int blackCaptures, int whiteCaptures, double komi, boolean area)
+    {
+        update(board);
+        int blackDead = 0, whiteDead = 0, blackLive = 0, whiteLive = 0;
+        for (int i = 0; i < dead.length; i++)
+        {
+            blackDead += Long.bitCount(board.black[i] & dead[i]);
+            whiteDead += Long.bitCount(board.white[i] & dead[i]);
+            blackLive += Long.bitCount(board.black[i] & ~dead[i]);
+            whiteLive += Long.bitCount(board.white[i] & ~dead[i]);
+        }
+        return new Score(blackLive, whiteLive, territory[1], territory[2], blackCaptures + whiteDead, whiteCaptures + blackDead, komi, area);
+    }
+
+    // who owns the open point x, y (0 for nobody, or for a live stone)
+    int ownerAt(int x, int y)
+    {
+        int r = regionOf[x * size + y];
+        return r < 0 ? 0 : owner[r];
+    }
+
+    boolean isDead(int x, int y)
+    {
+        int p = x * size + y;
+        return (countedDead[p >>> 6] & (1L << p)) != 0;
+    }
+
+    boolean hasDeadMarks()
+    {
+        for (long w : marks)
+            if (w != 0)
+                return true;
+        return false;
+    }
+
+    // mark or unmark the whole group with a stone at x, y as dead; false if there is no stone there
+    boolean toggleDead(Bitboard board, int x, int y)
+    {
+        int p = x * size + y;
+        int color = board.get(p);
+        if (color == 0)
+            return false;
+        long[] group = new long[marks.length];
+        group[p >>> 6] = 1L << p;
+        board.flood(group, board.stones(color), scratch);
+        boolean wasDead = (marks[p >>> 6] & (1L << p)) != 0;
+        for (int i = 0; i < marks.length; i++)
+            marks[i] = wasDead ? marks[i] & ~group[i] : marks[i] | group[i];
+        return true;
+    }
+
+    void clearDead()
+    {
+        Arrays.fill(marks, 0);
+    }
+
+    // bring the regions up to date with board, flooding again only around what changed since the last count
+    void update(Bitboard board)
+    {
+        // open points: empty, or a stone marked dead
+        boolean any = fresh;
+        for (int i = 0; i < open.length; i++)
+        {
+            long stones = board.black[i] | board.white[i];
+            dead[i] = marks[i] & stones;
+            open[i] = (~stones | dead[i]) & all[i];
+            // a point changes when its stone or its dead mark does, either changes the regions around it
+            changed[i] = (board.black[i] ^ counted.black[i]) | (board.white[i] ^ counted.white[i]) | (dead[i] ^ countedDead[i]);
+            if (fresh)
+                changed[i] = all[i];
+            any |= changed[i] != 0;
+        }
+        if (!any)
+            return;
+        fresh = false;
+
+        // every region that holds or touches a changed point goes, its points are flooded again
+        board.grow(changed, scratch);
+        Arrays.fill(redo, 0);
+        for (int i = 0; i < scratch.length; i++)
+        {
+            for (long w = scratch[i]; w != 0; w &= w - 1)
+            {
+                int r = regionOf[(i << 6) + Long.numberOfTrailingZeros(w)];
+                if (r >= 0)
+                    dropRegion(r);
+            }
+            redo[i] |= changed[i];
+        }
+
+        // regions that were not touched cannot reach into redo, their borders did not change
+        for (int i = 0; i < redo.length; i++)
+        {
+            for (long w = redo[i] & open[i]; w != 0; w &= w - 1)
+            {
+                int p = (i << 6) + Long.numberOfTrailingZeros(w);
+                if (regionOf[p] < 0)
+                    addRegion(board, p);
+            }
+        }
+
+        counted.copyFrom(board);
+        System.arraycopy(dead, 0, countedDead, 0, dead.length);
+    }
+
+    // forget region r, its points go into redo
+    private void dropRegion(int r)
+    {
+        long[] region = regions[r];
+        territory[owner[r]] -= label(region, -1);
+        for (int i = 0; i < region.length; i++)
+            redo[i] |= region[i];
+    }
+
+    // flood the open points connected to p into a new region and work out who owns it
+    private void addRegion(Bitboard board, int p)
+    {
+        long[] region = regions[p];
+        Arrays.fill(region, 0);
+        region[p >>> 6] = 1L << p;
+        board.flood(region, open, scratch);
+        board.grow(region, scratch);
+        boolean blackBorder = false, whiteBorder = false;
+        for (int i = 0; i < scratch.length; i++)
+        {
+            long border = scratch[i] & ~open[i];
+            blackBorder |= (border & board.black[i]) != 0;
+            whiteBorder |= (border & board.white[i]) != 0;
+        }
+        owner[p] = blackBorder == whiteBorder ? 0 : blackBorder ? 1 : 2;
+        territory[owner[p]] += label(region, p);
+    }
+
+    // point every point in set at region r, returns how many there were
+    private int label(long[] set, int r)
+    {
+        int count = 0;
+        for (int i = 0; i < set.length; i++)
+        {
+            for (long w = set[i]; w != 0; w &= w - 1)
+            {
+                regionOf[(i << 6) + Long.numberOfTrailingZeros(w)] = r;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // the score after the last move of a saved game, with no stones marked dead
+    static Score score(java.util.List<BoardState> history, double komi, boolean area)
+    {
+        GoEngine engine = new GoEngine(history);
+        ScoreEstimator estimator = new ScoreEstimator(engine.size());
+        return estimator.score(engine.copyBoard(), engine.getBlackCaptures(), engine.getWhiteCaptures(), komi, area);
+    }
+
+    // black's lead (black minus white) after every move of a saved game, counted as the game is stepped through
+    static double[] trend(java.util.List<BoardState> history, double komi, boolean area)
+    {
+        GoEngine engine = new GoEngine(history);
+        ScoreEstimator estimator = new ScoreEstimator(engine.size());
+        double[] lead = new double[history.size()];
+        for (int i = 0; i < lead.length; i++)
+        {
+            engine.jumpToMove(i);
+            Score score = estimator.score(engine.copyBoard(), engine.getBlackCaptures(), engine.getWhiteCaptures(), komi, area);
+            lead[i] = score.black() - score.white();
+        }
+        return lead;
+    }
+}
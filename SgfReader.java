@@ -0,0 +1,381 @@
+// SgfReader.java
+/* Streaming reader for SGF files, including collections with many games.
+ * The input is scanned byte by byte through a fixed buffer and only the
+ * main line of each game (the first variation at every branch) is reported,
+ * so even very large collections never sit in memory at once. Property
+ * values are only turned into strings for the few game-info properties we
+ * care about; everything else is skipped in place.
+ *
+ * Replay turns the reported moves into a board history using the same
+ * GoPosition rules the live board uses.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+class SgfReader implements Closeable
+{
+    // what the reader finds in a game, in file order
+    interface Visitor
+    {
+        void size(int size); // SZ, before any stones
+        void info(String id, String value); // GN, PB, PW, DT, RE, KM
+        void setup(int color, int x, int y); // AB / AW in the first node
+        void move(int color, int x, int y); // B / W, x and y are -1 for a pass
+    }
+
+    private static final String[] INFO_IDS = {"GN", "PB", "PW", "DT", "RE", "KM"};
+
+    // property identifier packed into an int, so matching needs no strings
+    private static int id(String name)
+    {
+        int id = 0;
+        for (int i = 0; i < name.length(); i++)
+            id = id << 8 | name.charAt(i);
+        return id;
+    }
+
+    private static final int ID_B = id("B"), ID_W = id("W"), ID_AB = id("AB"), ID_AW = id("AW"), ID_SZ = id("SZ");
+    private static final int[] INFO_CODES = new int[INFO_IDS.length];
+
+    static
+    {
+        for (int i = 0; i < INFO_IDS.length; i++)
+            INFO_CODES[i] = id(INFO_IDS[i]);
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[64 * 1024];
+    private int pos = 0, limit = 0;
+    private byte[] value = new byte[256]; // reused for every property value
+    private int valueLength = 0;
+
+    SgfReader(InputStream in)
+    {
+        this.in = in;
+    }
+
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    // next byte, or -1 at the end of the input
+    private int read() throws IOException
+    {
+        if (pos == limit)
+        {
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0)
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private void unread()
+    {
+        pos--;
+    }
+
+    private int readNonSpace() throws IOException
+    {
+        int c;
+        do
+        {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    // read the main line of the next game into visitor, false when there are no games left
+    boolean readGame(Visitor visitor) throws IOException
+    {
+        // anything before the first '(' is junk (mail headers and such)
+        int c;
+        do
+        {
+            c = read();
+        } while (c != '(' && c != -1);
+        if (c == -1)
+            return false;
+
+        int depth = 1;
+        boolean first = true;
+        while (true)
+        {
+            c = readNonSpace();
+            if (c == ';')
+            {
+                readNode(visitor, first);
+                first = false;
+            }
+            else if (c == '(')
+            {
+                depth++; // first variation is the main line
+            }
+            else if (c == ')')
+            {
+                skipTree(depth - 1); // the main line ended, skip the other variations
+                return true;
+            }
+            else if (c == -1)
+            {
+                return true; // truncated file, keep what we have
+            }
+        }
+    }
+
+    // skip until depth open parentheses are closed
+    private void skipTree(int depth) throws IOException
+    {
+        while (depth > 0)
+        {
+            int c = read();
+            if (c == -1)
+                return;
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == '[') skipValue();
+        }
+    }
+
+    private void skipValue() throws IOException
+    {
+        int c;
+        while ((c = read()) != ']' && c != -1)
+        {
+            if (c == '\\')
+                read();
+        }
+    }
+
+    // copy a value into the value buffer, without the brackets and escapes
+    private void readValue() throws IOException
+    {
+        valueLength = 0;
+        int c;
+        while ((c = read()) != ']' && c != -1)
+        {
+            if (c == '\\')
+                c = read();
+            if (valueLength == value.length)
+                value = Arrays.copyOf(value, value.length * 2);
+            value[valueLength++] = (byte) c;
+        }
+    }
+
+    private void readNode(Visitor visitor, boolean first) throws IOException
+    {
+        while (true)
+        {
+            // property identifier, lowercase letters are old style padding ("AddBlack")
+            int c = readNonSpace();
+            int id = 0;
+            int letters = 0;
+            while ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
+            {
+                if (c <= 'Z')
+                {
+                    id = id << 8 | c;
+                    letters++;
+                }
+                c = read();
+            }
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                c = read();
+            if (letters == 0 || c != '[')
+            {
+                if (c != -1)
+                    unread(); // start of the next node or variation
+                return;
+            }
+
+            // one or more values
+            do
+            {
+                handle(visitor, id, first);
+                c = readNonSpace();
+            } while (c == '[');
+            if (c != -1)
+                unread();
+        }
+    }
+
+    // one property value, right after its '['
+    private void handle(Visitor visitor, int id, boolean first) throws IOException
+    {
+        if (id == ID_B || id == ID_W)
+        {
+            readValue();
+            int color = id == ID_B ? 1 : 2;
+            if (valueLength >= 2 && !isPass())
+                visitor.move(color, value[0] - 'a', value[1] - 'a');
+            else
+                visitor.move(color, -1, -1);
+            return;
+        }
+        if (first && (id == ID_AB || id == ID_AW))
+        {
+            readValue();
+            int color = id == ID_AB ? 1 : 2;
+            // either a single point or a compressed rectangle "aa:cc"
+            if (valueLength >= 5 && value[2] == ':')
+            {
+                for (int x = value[0] - 'a'; x <= value[3] - 'a'; x++)
+                    for (int y = value[1] - 'a'; y <= value[4] - 'a'; y++)
+                        visitor.setup(color, x, y);
+            }
+            else if (valueLength >= 2)
+            {
+                visitor.setup(color, value[0] - 'a', value[1] - 'a');
+            }
+            return;
+        }
+        if (first && id == ID_SZ)
+        {
+            readValue();
+            int size = 0;
+            for (int i = 0; i < valueLength && value[i] >= '0' && value[i] <= '9'; i++)
+                size = size * 10 + value[i] - '0';
+            visitor.size(size);
+            return;
+        }
+        if (first)
+        {
+            for (int i = 0; i < INFO_CODES.length; i++)
+            {
+                if (INFO_CODES[i] == id)
+                {
+                    readValue();
+                    visitor.info(INFO_IDS[i], new String(value, 0, valueLength, StandardCharsets.UTF_8).trim());
+                    return;
+                }
+            }
+        }
+        skipValue();
+    }
+
+    // "tt" is the old way of writing a pass on boards up to 19x19
+    private boolean isPass()
+    {
+        return valueLength == 2 && value[0] == 't' && value[1] == 't';
+    }
+
+    // replays a game through GoPosition into the same history a live board keeps
+    static class Replay implements Visitor
+    {
+        private final int[][] setup = new int[Bitboard.MAX_SIZE][Bitboard.MAX_SIZE]; // AB / AW can come before SZ
+        private int size;
+        private GoEngine engine = new GoEngine();
+        private final Map<String, String> info = new HashMap<>();
+        private boolean started, supported, legal;
+        private String problem;
+
+        Replay()
+        {
+            reset();
+        }
+
+        // get ready for the next game
+        void reset()
+        {
+            for (int[] row : setup)
+                Arrays.fill(row, 0);
+            size = GoEngine.DEFAULT_SIZE; // SGF says 19 when there is no SZ
+            info.clear();
+            started = false;
+            supported = true;
+            legal = true;
+            problem = null;
+        }
+
+        // the finished history, or null if the game could not be replayed
+        java.util.List<BoardState> history()
+        {
+            if (!supported || !legal)
+                return null;
+            start(true);
+            return engine.getHistory();
+        }
+
+        String info(String id)
+        {
+            return info.get(id);
+        }
+
+        // why history() returned null
+        String problem()
+        {
+            return problem;
+        }
+
+        public void size(int size)
+        {
+            if (!GoEngine.isSupportedSize(size))
+            {
+                supported = false;
+                problem = "board size " + size + " is not supported";
+                return;
+            }
+            this.size = size;
+        }
+
+        public void info(String id, String value)
+        {
+            info.put(id, value);
+        }
+
+        public void setup(int color, int x, int y)
+        {
+            if (!started && x >= 0 && x < Bitboard.MAX_SIZE && y >= 0 && y < Bitboard.MAX_SIZE)
+                setup[x][y] = color;
+        }
+
+        // the position before the first move becomes the first state
+        private void start(boolean blackTurn)
+        {
+            if (started)
+                return;
+            started = true;
+            if (engine.size() != size)
+                engine = new GoEngine(size);
+            Bitboard start = new Bitboard(size);
+            for (int x = 0; x < size; x++)
+                for (int y = 0; y < size; y++)
+                    start.set(x, y, setup[x][y]);
+            engine.reset(start, blackTurn);
+        }
+
+        public void move(int color, int x, int y)
+        {
+            if (!supported || !legal)
+                return;
+            start(color == 1);
+
+            if (!onBoard(x, y))
+            {
+                engine.play(-1, -1, color); // pass, nothing goes on the board
+                return;
+            }
+            // no superko check here, records from other rule sets can repeat a position
+            int check = engine.checkMove(x, y, color);
+            if (check == GoEngine.OCCUPIED || check == GoEngine.SUICIDE)
+            {
+                legal = false;
+                problem = "illegal move " + engine.historySize();
+                return;
+            }
+            engine.play(x, y, color);
+        }
+
+        private boolean onBoard(int x, int y)
+        {
+            return x >= 0 && x < size && y >= 0 && y < size;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// SgfWriter.java
+/* Writes a board history out as a single SGF game. Stones already on the
+ * board in the first state (handicap or setup) become AB / AW in the root
+ * node, every later state becomes one B or W node (empty for a pass).
+ * Variations off the line become SGF variations, with the line first at
+ * every branch, so readers that only follow the main line see the line.
+ */
+
+import java.io.*;
+
+class SgfWriter
+{
+    static void write(Writer out, java.util.List<BoardState> history, String name) throws IOException
+    {
+        BoardState first = history.get(0);
+        int size = first.board.size;
+        out.write("(;FF[4]GM[1]CA[UTF-8]AP[Weiqi Board Saver:2]SZ[" + size + "]");
+        if (name != null && !name.isEmpty())
+            out.write("GN[" + escape(name) + "]");
+
+        // setup stones
+        for (int color = 1; color <= 2; color++)
+        {
+            boolean any = false;
+            for (int x = 0; x < size; x++)
+            {
+                for (int y = 0; y < size; y++)
+                {
+                    if (first.board.get(x, y) != color)
+                        continue;
+                    if (!any)
+                        out.write(color == 1 ? "AB" : "AW");
+                    any = true;
+                    out.write("[" + point(x, y) + "]");
+                }
+            }
+        }
+        if (!first.blackTurn)
+            out.write("PL[W]");
+        out.write("\n");
+
+        writeMoves(out, history, first, 0, new int[1]);
+        out.write(")\n");
+    }
+
+    // the moves after state, which is move index of the line (-1 off it), one variation in brackets per branch
+    private static void writeMoves(Writer out, java.util.List<BoardState> history, BoardState state, int index, int[] written) throws IOException
+    {
+        while (true)
+        {
+            BoardState[] children = state.variations(history, index);
+            if (children.length == 0)
+                return;
+            int turn = state.blackTurn ? 1 : 2;
+            if (children.length > 1)
+            {
+                for (int k = 0; k < children.length; k++)
+                {
+                    out.write("\n(");
+                    writeMove(out, children[k], turn, written);
+                    writeMoves(out, history, children[k], BoardState.lineIndex(history, index, children[k]), written);
+                    out.write(")");
+                }
+                return;
+            }
+            writeMove(out, children[0], turn, written);
+            index = BoardState.lineIndex(history, index, children[0]);
+            state = children[0];
+        }
+    }
+
+    private static void writeMove(Writer out, BoardState state, int turn, int[] written) throws IOException
+    {
+        if (state.moveColor != 0)
+        {
+            out.write((state.moveColor == 1 ? ";B[" : ";W[") + point(state.lastMoveX, state.lastMoveY) + "]");
+        }
+        else
+        {
+            out.write(turn == 1 ? ";B[]" : ";W[]"); // pass by whoever was to play
+        }
+        if (++written[0] % 10 == 0)
+            out.write("\n");
+    }
+
+    private static String point(int x, int y)
+    {
+        return "" + (char) ('a' + x) + (char) ('a' + y);
+    }
+
+    // text values only need ] and \ escaped
+    private static String escape(String text)
+    {
+        return text.replace("\\", "\\\\").replace("]", "\\]");
+    }
+}
@@ -0,0 +1,64 @@
+// StoneSprites.java
+/* Stones are drawn once for each size and colour, shaded and outlined, and
+ * from then on copied onto the board as images instead of being filled and
+ * stroked again. Sizes are in device pixels so the copies land exactly on
+ * the screen's pixels. Only the last few sizes are kept, so dragging the
+ * window through many sizes does not fill memory.
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+class StoneSprites
+{
+    private static final int MAX_SIZES = 8; // sizes kept, least recently used goes first
+
+    // diameter -> {black, white}
+    private static final Map<Integer, BufferedImage[]> cache = new LinkedHashMap<Integer, BufferedImage[]>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage[]> eldest)
+        {
+            return size() > MAX_SIZES;
+        }
+    };
+
+    private StoneSprites()
+    {
+    }
+
+    // stone of color (1: black, 2: white) diameter pixels across, with a one pixel border of room for the antialiasing
+    static synchronized BufferedImage get(int color, int diameter)
+    {
+        BufferedImage[] sprites = cache.get(diameter);
+        if (sprites == null)
+        {
+            sprites = new BufferedImage[] {render(1, diameter), render(2, diameter)};
+            cache.put(diameter, sprites);
+        }
+        return sprites[color - 1];
+    }
+
+    private static BufferedImage render(int color, int diameter)
+    {
+        int d = Math.max(2, diameter);
+        BufferedImage image = new BufferedImage(d + 2, d + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+        // light from the top left
+        float r = d / 2f;
+        Point.Float light = new Point.Float(1 + r * 0.7f, 1 + r * 0.7f);
+        Color[] shades = color == 1
+            ? new Color[] {new Color(95, 95, 95), new Color(20, 20, 20), Color.BLACK}
+            : new Color[] {Color.WHITE, new Color(235, 235, 230), new Color(190, 190, 185)};
+        g2.setPaint(new RadialGradientPaint(light, r * 1.3f, new float[] {0f, 0.55f, 1f}, shades));
+        g2.fillOval(1, 1, d, d);
+        g2.setColor(Color.BLACK);
+        g2.setStroke(new BasicStroke(Math.max(1f, d / 24f)));
+        g2.drawOval(1, 1, d - 1, d - 1);
+        g2.dispose();
+        return image;
+    }
+}
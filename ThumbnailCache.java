@@ -0,0 +1,235 @@
+// ThumbnailCache.java
+/* Small pictures of the final position of each saved board, for the board
+ * gallery. A thumbnail is made the first time it is asked for, on a small
+ * background pool, and kept twice: in memory for the last MEMORY_SIZE
+ * asked for, and as a PNG in saved_boards/thumbnails whose modification
+ * time is set to the time the catalog has for the board, so a board saved
+ * again gets a new one and anything else is read straight back.
+ *
+ * Only cells on screen ask, and the newest request is worked on first, so
+ * scrolling quickly through a big library draws where you stop rather
+ * than everywhere you passed; requests for cells scrolled away are
+ * dropped with forgetAllBut.
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+class ThumbnailCache
+{
+    static final int SIZE = 120; // pixels across a thumbnail
+    private static final int MEMORY_SIZE = 600; // thumbnails kept in memory, about 57 KB each
+    private static final Color WOOD = new Color(222, 184, 135); // as on a new board
+
+    private static ThumbnailCache instance;
+
+    // a thumbnail and the board file time it was made from
+    private static class Thumbnail
+    {
+        final BufferedImage image;
+        final long modified;
+
+        Thumbnail(BufferedImage image, long modified)
+        {
+            this.image = image;
+            this.modified = modified;
+        }
+    }
+
+    private final File dir;
+    private final Map<String, Thumbnail> memory = new LinkedHashMap<String, Thumbnail>(256, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<String, Thumbnail> eldest)
+        {
+            return size() > MEMORY_SIZE;
+        }
+    };
+    private final Map<String, Future<?>> pending = new HashMap<>(); // only touched on the EDT
+    private final ThreadPoolExecutor pool;
+
+    static synchronized ThumbnailCache get()
+    {
+        if (instance == null)
+            instance = new ThumbnailCache(new File("saved_boards"));
+        return instance;
+    }
+
+    private ThumbnailCache(File boards)
+    {
+        this.dir = new File(boards, "thumbnails");
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        // a stack rather than a queue, the cells asked for last are the ones on screen now
+        BlockingQueue<Runnable> newestFirst = new LinkedBlockingDeque<Runnable>()
+        {
+            public boolean offer(Runnable task)
+            {
+                return offerFirst(task);
+            }
+        };
+        int[] count = {0};
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, newestFirst, r ->
+        {
+            Thread thread = new Thread(r, "thumbnail-" + count[0]++);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // the thumbnail for entry if there is one for its current file, otherwise null and ready runs
+    // on the EDT once it has been read or drawn; only called on the EDT
+    BufferedImage request(BoardCatalog.Entry entry, Runnable ready)
+    {
+        Thumbnail thumbnail;
+        synchronized (memory)
+        {
+            thumbnail = memory.get(entry.name);
+        }
+        if (thumbnail != null && thumbnail.modified == entry.modified)
+            return thumbnail.image;
+        Future<?> running = pending.get(entry.name);
+        if (running != null && !running.isDone())
+            return null;
+        pending.put(entry.name, pool.submit(() ->
+        {
+            Thumbnail made = load(entry);
+            if (made == null)
+                return;
+            synchronized (memory)
+            {
+                memory.put(entry.name, made);
+            }
+            SwingUtilities.invokeLater(() ->
+            {
+                pending.remove(entry.name);
+                ready.run();
+            });
+        }));
+        return null;
+    }
+
+    // drop the waiting requests for boards not in names (the cells that scrolled away)
+    void forgetAllBut(Set<String> names)
+    {
+        for (Iterator<Map.Entry<String, Future<?>>> it = pending.entrySet().iterator(); it.hasNext(); )
+        {
+            Map.Entry<String, Future<?>> e = it.next();
+            if (!names.contains(e.getKey()) || e.getValue().isDone())
+            {
+                e.getValue().cancel(false); // one being drawn is finished and kept
+                it.remove();
+            }
+        }
+        pool.purge();
+    }
+
+    // delete thumbnails of boards that are gone, in the background
+    void prune()
+    {
+        pool.execute(() ->
+        {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".png"));
+            if (files == null)
+                return;
+            BoardCatalog catalog = BoardCatalog.get();
+            try
+            {
+                catalog.awaitScan(); // it knows every board, packed or not
+            }
+            catch (InterruptedException ex)
+            {
+                return;
+            }
+            for (File png : files)
+            {
+                String name = png.getName().substring(0, png.getName().length() - ".png".length());
+                if (catalog.entry(name) == null)
+                    png.delete();
+            }
+        });
+    }
+
+    // from the disk cache if it is as new as the board, otherwise drawn and written there
+    private Thumbnail load(BoardCatalog.Entry entry)
+    {
+        File png = new File(dir, entry.name + ".png");
+        if (png.lastModified() == entry.modified)
+        {
+            try
+            {
+                BufferedImage image = ImageIO.read(png);
+                if (image != null)
+                    return new Thumbnail(image, entry.modified);
+            }
+            catch (IOException ex)
+            {
+                // damaged, draw it again
+            }
+        }
+        java.util.List<BoardState> history;
+        try
+        {
+            history = BoardCatalog.get().read(entry.name);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            return null; // the catalog will have it as unreadable
+        }
+        BufferedImage image = draw(new GoEngine(history).copyBoard());
+        try
+        {
+            if (!dir.exists()) dir.mkdirs();
+            File tmp = new File(dir, entry.name + ".png.tmp");
+            ImageIO.write(image, "png", tmp);
+            tmp.setLastModified(entry.modified);
+            if (!tmp.renameTo(png))
+            {
+                png.delete();
+                tmp.renameTo(png);
+            }
+        }
+        catch (IOException ex)
+        {
+            // kept in memory only
+        }
+        return new Thumbnail(image, entry.modified);
+    }
+
+    // grid and stones, no coordinates
+    static BufferedImage draw(Bitboard board)
+    {
+        int size = board.size;
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(WOOD);
+        g2.fillRect(0, 0, SIZE, SIZE);
+        double grid = (double) SIZE / size;
+        int first = (int) Math.round(grid / 2), last = (int) Math.round(grid * (size - 0.5));
+        g2.setColor(new Color(0, 0, 0, 140));
+        for (int i = 0; i < size; i++)
+        {
+            int at = (int) Math.round(grid * (i + 0.5));
+            g2.drawLine(at, first, at, last);
+            g2.drawLine(first, at, last, at);
+        }
+        int diameter = (int) Math.floor(grid) - 1;
+        for (int x = 0; x < size; x++)
+        {
+            for (int y = 0; y < size; y++)
+            {
+                int color = board.get(x, y);
+                if (color == 0)
+                    continue;
+                BufferedImage sprite = StoneSprites.get(color, diameter);
+                g2.drawImage(sprite, (int) Math.round(grid * (x + 0.5)) - sprite.getWidth() / 2, (int) Math.round(grid * (y + 0.5)) - sprite.getHeight() / 2, null);
+            }
+        }
+        g2.dispose();
+        return image;
+    }
+}
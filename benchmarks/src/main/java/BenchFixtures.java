@@ -0,0 +1,333 @@
+// BenchFixtures.java
+/* The board side of the benchmarks. JMH will not run benchmark classes in
+ * the default package, and classes in the default package cannot be
+ * imported from anywhere else, so the benchmarks in weiqi.bench look these
+ * methods up by name once per trial (see Fixtures) and get back plain
+ * java.util.function objects that do the measured work.
+ *
+ * Games come from seeded random play, so every run measures the same
+ * moves. Point -Dweiqi.bench.sgf at an SGF collection to replay recorded
+ * games instead. The three positions are the empty board, the middle of a
+ * game with large groups on the board, and a nearly full board.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+class BenchFixtures
+{
+    private static final long SEED = 19;
+    private static final int GAMES = 16; // generated games
+    private static final int MAX_MOVES = 400; // generated games stop here if nobody has passed
+    private static final int MIDGAME = 150, ENDGAME = 300; // moves into the first game for the named positions
+
+    private static java.util.List<java.util.List<BoardState>> games;
+
+    // the games every benchmark uses, generated or read once
+    static synchronized java.util.List<java.util.List<BoardState>> games()
+    {
+        if (games == null)
+        {
+            String sgf = System.getProperty("weiqi.bench.sgf");
+            games = sgf == null ? generate() : load(Paths.get(sgf));
+            if (games.isEmpty())
+                throw new IllegalStateException("no games to benchmark");
+        }
+        return games;
+    }
+
+    // an engine at one of the named positions: empty, midgame or endgame
+    static GoEngine position(String name)
+    {
+        java.util.List<BoardState> game = games().get(0);
+        GoEngine engine = new GoEngine(game);
+        switch (name)
+        {
+            case "empty": engine.reset(null, true); break;
+            case "midgame": engine.jumpToMove(Math.min(MIDGAME, game.size() - 1)); break;
+            case "endgame": engine.jumpToMove(Math.min(ENDGAME, game.size() - 1)); break;
+            default: throw new IllegalArgumentException("unknown position " + name);
+        }
+        return engine;
+    }
+
+    // legality of every point for the side to play, returns how many are legal
+    static IntSupplier legality(String name)
+    {
+        GoEngine engine = position(name);
+        int color = engine.isBlackTurn() ? 1 : 2;
+        return () ->
+        {
+            int legal = 0;
+            for (int x = 0; x < engine.size(); x++)
+                for (int y = 0; y < engine.size(); y++)
+                    if (engine.stoneAt(x, y) == 0 && engine.isValidMove(x, y, color))
+                        legal++;
+            return legal;
+        };
+    }
+
+    // replay the next game move by move with full checks, captures and history, returns the moves played
+    static IntSupplier replay()
+    {
+        java.util.List<java.util.List<BoardState>> all = games();
+        GoEngine engine = new GoEngine();
+        int[] next = {0};
+        return () ->
+        {
+            java.util.List<BoardState> game = all.get(next[0]++ % all.size());
+            BoardState first = game.get(0);
+            engine.reset(first.board, first.blackTurn);
+            for (int i = 1; i < game.size(); i++)
+            {
+                BoardState state = game.get(i);
+                if (state.moveColor == 0)
+                {
+                    engine.play(-1, -1, engine.isBlackTurn() ? 1 : 2);
+                }
+                else
+                {
+                    engine.checkMove(state.lastMoveX, state.lastMoveY, state.moveColor);
+                    engine.play(state.lastMoveX, state.lastMoveY, state.moveColor);
+                }
+            }
+            return game.size() - 1;
+        };
+    }
+
+    // jump around the longest game, to random moves or one move forward at a time
+    static IntSupplier jump(boolean random)
+    {
+        java.util.List<BoardState> longest = Collections.max(games(), Comparator.comparingInt(java.util.List::size));
+        GoEngine engine = new GoEngine(longest);
+        int[] targets = new Random(SEED).ints(1024, 0, longest.size()).toArray();
+        int[] next = {0};
+        return () ->
+        {
+            int idx = random ? targets[next[0]++ & 1023] : (engine.getHistoryIndex() + 1) % longest.size();
+            engine.jumpToMove(idx);
+            return engine.getBlackCaptures();
+        };
+    }
+
+    // count playouts of a move search at one of the named positions, on whichever threads call it (they share one tree)
+    static IntSupplier playouts(String name, int count)
+    {
+        MoveSearch search = new MoveSearch(position(name), ScoreEstimator.DEFAULT_KOMI);
+        return () ->
+        {
+            search.think(count);
+            return (int) search.playouts();
+        };
+    }
+
+    // step forward one move and bring the live score up to date, as the banners do while scrubbing
+    static IntSupplier scoredStep()
+    {
+        java.util.List<BoardState> longest = Collections.max(games(), Comparator.comparingInt(java.util.List::size));
+        GoEngine engine = new GoEngine(longest);
+        ScoreEstimator estimator = new ScoreEstimator(engine.size());
+        return () ->
+        {
+            engine.jumpToMove((engine.getHistoryIndex() + 1) % longest.size());
+            ScoreEstimator.Score score = estimator.score(engine.copyBoard(), engine.getBlackCaptures(), engine.getWhiteCaptures(), ScoreEstimator.DEFAULT_KOMI, true);
+            return score.blackTerritory - score.whiteTerritory;
+        };
+    }
+
+    // write the next game as a .goboard file in dir, returns the bytes written
+    static IntSupplier writeBoardFile(Path dir)
+    {
+        java.util.List<java.util.List<BoardState>> all = games();
+        Path file = dir.resolve("bench.goboard");
+        int[] next = {0};
+        return () ->
+        {
+            try
+            {
+                BoardFile.write(file, all.get(next[0]++ % all.size()));
+                return (int) Files.size(file);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
+    // read the games back from .goboard files in dir, returns the states read
+    static IntSupplier readBoardFile(Path dir)
+    {
+        java.util.List<java.util.List<BoardState>> all = games();
+        Path[] files = new Path[all.size()];
+        try
+        {
+            for (int i = 0; i < files.length; i++)
+            {
+                files[i] = dir.resolve("bench" + i + ".goboard");
+                BoardFile.write(files[i], all.get(i));
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        int[] next = {0};
+        return () ->
+        {
+            try
+            {
+                return BoardFile.read(files[next[0]++ % files.length]).size();
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
+    // write the next game as SGF text, returns its length
+    static IntSupplier writeSgf()
+    {
+        java.util.List<java.util.List<BoardState>> all = games();
+        int[] next = {0};
+        return () ->
+        {
+            try
+            {
+                StringWriter out = new StringWriter(8192);
+                SgfWriter.write(out, all.get(next[0]++ % all.size()), "bench");
+                return out.getBuffer().length();
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
+    // parse and replay the next game from SGF bytes, returns the states read
+    static IntSupplier readSgf()
+    {
+        java.util.List<java.util.List<BoardState>> all = games();
+        byte[][] texts = new byte[all.size()][];
+        try
+        {
+            for (int i = 0; i < texts.length; i++)
+            {
+                StringWriter out = new StringWriter();
+                SgfWriter.write(out, all.get(i), "bench");
+                texts[i] = out.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        SgfReader.Replay replay = new SgfReader.Replay();
+        int[] next = {0};
+        return () ->
+        {
+            try (SgfReader reader = new SgfReader(new ByteArrayInputStream(texts[next[0]++ % texts.length])))
+            {
+                replay.reset();
+                reader.readGame(replay);
+                return replay.history().size();
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
+    // paint the board panel at a named position into an image, returns one pixel so the work is kept
+    static IntSupplier paint(String name)
+    {
+        javax.swing.JPanel panel = GoBoard.offscreenBoard(position(name));
+        BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        return () ->
+        {
+            Graphics2D g = image.createGraphics();
+            panel.paint(g);
+            g.dispose();
+            return image.getRGB(image.getWidth() / 2, image.getHeight() / 2);
+        };
+    }
+
+    // seeded random games: any legal move that does not fill one of the player's own eyes, until both pass
+    private static java.util.List<java.util.List<BoardState>> generate()
+    {
+        Random random = new Random(SEED);
+        java.util.List<java.util.List<BoardState>> result = new ArrayList<>();
+        int[] points = new int[GoEngine.DEFAULT_SIZE * GoEngine.DEFAULT_SIZE];
+        for (int i = 0; i < points.length; i++)
+            points[i] = i;
+        for (int g = 0; g < GAMES; g++)
+        {
+            GoEngine engine = new GoEngine();
+            int passes = 0;
+            while (passes < 2 && engine.historySize() <= MAX_MOVES)
+            {
+                int color = engine.isBlackTurn() ? 1 : 2;
+                boolean played = false;
+                for (int i = points.length - 1; i >= 0 && !played; i--)
+                {
+                    int j = random.nextInt(i + 1);
+                    int p = points[j];
+                    points[j] = points[i];
+                    points[i] = p;
+                    int x = p / GoEngine.DEFAULT_SIZE, y = p % GoEngine.DEFAULT_SIZE;
+                    if (engine.stoneAt(x, y) == 0 && !isOwnEye(engine, x, y, color) && engine.isValidMove(x, y, color))
+                    {
+                        engine.play(x, y, color);
+                        played = true;
+                    }
+                }
+                if (!played)
+                    engine.play(-1, -1, color);
+                passes = played ? 0 : passes + 1;
+            }
+            result.add(engine.getHistory());
+        }
+        return result;
+    }
+
+    private static boolean isOwnEye(GoEngine engine, int x, int y, int color)
+    {
+        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] d : dirs)
+        {
+            int nx = x + d[0], ny = y + d[1];
+            if (nx >= 0 && nx < engine.size() && ny >= 0 && ny < engine.size() && engine.stoneAt(nx, ny) != color)
+                return false;
+        }
+        return true;
+    }
+
+    // every game in an SGF collection that replays on a 19 x 19 board
+    private static java.util.List<java.util.List<BoardState>> load(Path path)
+    {
+        java.util.List<java.util.List<BoardState>> result = new ArrayList<>();
+        try (SgfReader reader = new SgfReader(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            SgfReader.Replay replay = new SgfReader.Replay();
+            while (reader.readGame(replay))
+            {
+                if (replay.history() != null)
+                    result.add(replay.history());
+                replay.reset();
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+// Fixtures.java
+/* Looks up the static methods of BenchFixtures, which lives in the default
+ * package with the board classes and so cannot be named from here.
+ */
+
+package weiqi.bench;
+
+import java.lang.reflect.*;
+
+final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    // call BenchFixtures.name(args) and return what it gave back
+    @SuppressWarnings("unchecked")
+    static <T> T get(String name, Object... args)
+    {
+        try
+        {
+            for (Method method : Class.forName("BenchFixtures").getDeclaredMethods())
+            {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length)
+                {
+                    method.setAccessible(true);
+                    return (T) method.invoke(null, args);
+                }
+            }
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            throw new IllegalStateException("fixture " + name + " failed", ex);
+        }
+        throw new IllegalArgumentException("no fixture " + name);
+    }
+}
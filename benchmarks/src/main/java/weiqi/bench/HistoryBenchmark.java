@@ -0,0 +1,51 @@
+// HistoryBenchmark.java
+/* How long moving through a game's history takes: jumping to a random move
+ * (keyframe plus deltas) and stepping forward one move, as the slider does,
+ * with and without updating the live score.
+ * Sampled, so the percentiles show the slow jumps as well as the average.
+ */
+
+package weiqi.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class HistoryBenchmark
+{
+    private IntSupplier jumpRandom;
+    private IntSupplier stepForward;
+    private IntSupplier scoredStep;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        jumpRandom = Fixtures.get("jump", true);
+        stepForward = Fixtures.get("jump", false);
+        scoredStep = Fixtures.get("scoredStep");
+    }
+
+    @Benchmark
+    public int jumpRandom()
+    {
+        return jumpRandom.getAsInt();
+    }
+
+    @Benchmark
+    public int stepForward()
+    {
+        return stepForward.getAsInt();
+    }
+
+    @Benchmark
+    public int scoredStep()
+    {
+        return scoredStep.getAsInt();
+    }
+}
@@ -0,0 +1,73 @@
+// PersistenceBenchmark.java
+/* Games written and read per second, as .goboard files (what Save and Old
+ * Boards use) and as SGF text (Export SGF and Import SGF). The board files
+ * go to a temporary folder that is removed afterwards.
+ */
+
+package weiqi.bench;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PersistenceBenchmark
+{
+    private Path dir;
+    private IntSupplier writeBoardFile;
+    private IntSupplier readBoardFile;
+    private IntSupplier writeSgf;
+    private IntSupplier readSgf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("weiqi-bench");
+        writeBoardFile = Fixtures.get("writeBoardFile", dir);
+        readBoardFile = Fixtures.get("readBoardFile", dir);
+        writeSgf = Fixtures.get("writeSgf");
+        readSgf = Fixtures.get("readSgf");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(dir))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int writeBoardFile()
+    {
+        return writeBoardFile.getAsInt();
+    }
+
+    @Benchmark
+    public int readBoardFile()
+    {
+        return readBoardFile.getAsInt();
+    }
+
+    @Benchmark
+    public int writeSgf()
+    {
+        return writeSgf.getAsInt();
+    }
+
+    @Benchmark
+    public int readSgf()
+    {
+        return readSgf.getAsInt();
+    }
+}
@@ -0,0 +1,36 @@
+// RenderBenchmark.java
+/* Time to paint the whole board panel once into an off-screen image, at
+ * each of the benchmark positions. Runs headless.
+ */
+
+package weiqi.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark
+{
+    @Param({"empty", "midgame", "endgame"})
+    public String position;
+
+    private IntSupplier paint;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        paint = Fixtures.get("paint", position);
+    }
+
+    @Benchmark
+    public int paint()
+    {
+        return paint.getAsInt();
+    }
+}
@@ -0,0 +1,45 @@
+// ReplayBenchmark.java
+/* Whole games played through GoEngine move by move: the legality check,
+ * placing the stone, taking off captures and appending to the history.
+ * The score is games per second, and the "moves" secondary result is
+ * moves per second.
+ */
+
+package weiqi.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ReplayBenchmark
+{
+    private IntSupplier replay;
+
+    // moves played, per second
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Moves
+    {
+        public long moves;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        replay = Fixtures.get("replay");
+    }
+
+    @Benchmark
+    public int replay(Moves moves)
+    {
+        int played = replay.getAsInt();
+        moves.moves += played;
+        return played;
+    }
+}
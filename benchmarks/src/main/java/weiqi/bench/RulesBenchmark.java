@@ -0,0 +1,37 @@
+// RulesBenchmark.java
+/* Legality checks at each benchmark position. Every point of the board is
+ * checked per operation, so the score is in checks per second.
+ */
+
+package weiqi.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RulesBenchmark
+{
+    @Param({"empty", "midgame", "endgame"})
+    public String position;
+
+    private IntSupplier legality;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        legality = Fixtures.get("legality", position);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(19 * 19)
+    public int legality()
+    {
+        return legality.getAsInt();
+    }
+}
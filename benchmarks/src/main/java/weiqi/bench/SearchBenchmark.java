@@ -0,0 +1,40 @@
+// SearchBenchmark.java
+/* Move search throughput at each benchmark position, in playouts per
+ * second. The state is shared, so running with -t n puts n threads on one
+ * tree and shows how the search scales across cores.
+ */
+
+package weiqi.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SearchBenchmark
+{
+    private static final int PLAYOUTS = 16; // per operation
+
+    @Param({"empty", "midgame", "endgame"})
+    public String position;
+
+    private IntSupplier playouts;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        playouts = Fixtures.get("playouts", position, PLAYOUTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PLAYOUTS)
+    public int playouts()
+    {
+        return playouts.getAsInt();
+    }
+}